@@ -0,0 +1,223 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Checks that {@link CWLSignatureReader} reads the same properties as loading the complete document and compares
+ * the time both take. Run it as Java application with the plugin's dependencies on the classpath; it fails with
+ * an {@link AssertionError} if a property differs.
+ * <p>
+ * Arguments: CWL files or directories to read (default: generated tools) and the number of measured iterations
+ * (option {@code -n}, default 10), each preceded by as many warm-up iterations.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLSignatureReaderBenchmark {
+    
+    private CWLSignatureReaderBenchmark() { }
+    
+    /**
+     * @param args CWL files or directories and optionally {@code -n} followed by the number of iterations
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(final String[] args) throws IOException {
+        int iterations = 10;
+        Map<String, byte[]> documents = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-n")) {
+                iterations = Integer.parseInt(args[++i]);
+            } else {
+                addDocuments(Paths.get(args[i]), documents);
+            }
+        }
+        if (documents.isEmpty()) {
+            for (int size : new int[] {10, 100, 1000}) {
+                documents.put("generated tool with " + size + " inputs",
+                        createTool(size).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        for (Map.Entry<String, byte[]> e : documents.entrySet()) {
+            assertSignature(e.getKey(), e.getValue());
+        }
+        assertFallback();
+        System.out.println("All signatures equal the loaded documents");
+        
+        long load = 0;
+        long signature = 0;
+        for (int i = 0; i < 2 * iterations; i++) {
+            long start = System.nanoTime();
+            for (byte[] doc : documents.values()) {
+                new Yaml().load(new ByteArrayInputStream(doc));
+            }
+            long loaded = System.nanoTime();
+            for (byte[] doc : documents.values()) {
+                readSignature(doc);
+            }
+            long read = System.nanoTime();
+            if (i >= iterations) {
+                load += loaded - start;
+                signature += read - loaded;
+            }
+        }
+        System.out.printf("%d documents, complete load: %.1f ms, signature: %.1f ms%n", documents.size(),
+                load / 1e6 / iterations, signature / 1e6 / iterations);
+    }
+    
+    private static void addDocuments(final Path p, final Map<String, byte[]> documents) throws IOException {
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(p)) {
+            files = s.filter(f -> f.toString().endsWith(".cwl")).sorted().collect(Collectors.toList());
+        }
+        for (Path f : files) {
+            documents.put(f.toString(), Files.readAllBytes(f));
+        }
+    }
+    
+    private static Map<String, Object> readSignature(final byte[] doc) throws IOException {
+        try (InputStream in = new ByteArrayInputStream(doc)) {
+            Map<String, Object> signature = CWLSignatureReader.read(in, CWLFolderScanner.SIGNATURE_KEYS);
+            if (in.available() > 0) {
+                throw new AssertionError("The signature reader did not consume the document");
+            }
+            return signature;
+        }
+    }
+    
+    private static void assertSignature(final String name, final byte[] doc) throws IOException {
+        Map<String, Object> expected = new LinkedHashMap<>();
+        Object loaded = new Yaml().load(new ByteArrayInputStream(doc));
+        if (!(loaded instanceof Map)) {
+            return;
+        }
+        for (Map.Entry<?, ?> e : ((Map<?, ?>)loaded).entrySet()) {
+            if (CWLFolderScanner.SIGNATURE_KEYS.contains(e.getKey())) {
+                expected.put((String)e.getKey(), e.getValue());
+            }
+        }
+        Map<String, Object> actual;
+        try {
+            actual = readSignature(doc);
+        } catch (IOException e) {
+            // The scanner loads the complete document then
+            System.out.println(name + ": loaded completely, " + e.getMessage());
+            return;
+        }
+        if (!expected.equals(actual)) {
+            throw new AssertionError(String.format("The signature of %s differs:%n%s%n%s", name, expected, actual));
+        }
+    }
+    
+    /**
+     * Documents whose properties refer to anchors outside of them or use merge keys have to be loaded completely.
+     */
+    private static void assertFallback() {
+        String[] documents = {
+            "defaults: &d {type: string}\ninputs:\n  a: *d\noutputs: []\n",
+            "base: &b {type: File}\ninputs:\n  a:\n    <<: *b\n    doc: x\noutputs: []\n"
+        };
+        for (String doc : documents) {
+            try {
+                readSignature(doc.getBytes(StandardCharsets.UTF_8));
+                throw new AssertionError("Expected a complete load for: " + doc);
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+    
+    /**
+     * Creates a tool whose inputs and outputs are a small part of the document, as in tools with embedded scripts.
+     */
+    private static String createTool(final int inputs) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#!/usr/bin/env cwl-runner\ncwlVersion: v1.0\nclass: CommandLineTool\nid: generated\n");
+        sb.append("label: Generated tool\ndoc: |\n  A tool generated for measuring the signature reader.\n");
+        sb.append("requirements:\n  - class: InlineJavascriptRequirement\n");
+        sb.append("inputs:\n");
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < inputs; i++) {
+            String name = "input_" + i;
+            names.add(name);
+            sb.append("  ").append(name).append(":\n");
+            sb.append("    type: ").append(i % 3 == 0 ? "File" : i % 3 == 1 ? "string?" : "int[]").append('\n');
+            sb.append("    doc: \"Input number ").append(i).append(" with unicode ä € 😀\"\n");
+            sb.append("    inputBinding:\n      prefix: --").append(name).append("\n      position: ").append(i)
+                .append('\n');
+        }
+        sb.append("outputs:\n  out:\n    type: stdout\n");
+        sb.append("arguments:\n");
+        for (int i = 0; i < 20 * inputs; i++) {
+            sb.append("  - valueFrom: $(inputs.").append(names.get(i % inputs)).append(")\n");
+            sb.append("    position: ").append(i).append("\n    shellQuote: false\n");
+        }
+        sb.append("s:author:\n");
+        for (int i = 0; i < 5 * inputs; i++) {
+            sb.append("  - class: s:Person\n    s:name: Author ").append(i).append("\n    s:email: mailto:a")
+                .append(i).append("@example.org\n");
+        }
+        sb.append("$namespaces:\n  s: https://schema.org/\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode.port;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+
+import org.knime.core.node.port.PortObjectZipInputStream;
+import org.knime.core.node.port.PortUtil;
+
+/**
+ * Checks that the binary encoding of CWL port objects reproduces every value, including the content stored as
+ * JSON text by earlier versions, and compares the size and speed of the encoding with JSON text. Run it as Java
+ * application with the plugin's dependencies on the classpath; it fails with an {@link AssertionError} if a
+ * value is not reproduced.
+ * <p>
+ * Arguments: the number of File objects in the measured array (default 20000) and the number of measured
+ * iterations (default 10), each preceded by as many warm-up iterations.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLBinaryJsonBenchmark {
+    
+    private CWLBinaryJsonBenchmark() { }
+    
+    /**
+     * @param args the number of File objects and the number of iterations
+     * @throws IOException if a value cannot be encoded or decoded
+     */
+    public static void main(final String[] args) throws IOException {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        for (JsonValue v : createRoundTripValues()) {
+            assertRoundTrip(v);
+            assertLegacyContent(v);
+        }
+        System.out.println("All values reproduced");
+        measure(createFiles(files), iterations);
+    }
+    
+    private static List<JsonValue> createRoundTripValues() {
+        List<JsonValue> values = new ArrayList<>();
+        values.add(JsonValue.NULL);
+        values.add(JsonValue.TRUE);
+        values.add(JsonValue.FALSE);
+        values.add(Json.createArrayBuilder().build());
+        values.add(Json.createObjectBuilder().build());
+        // More distinct keys and short values than fit into the string table, referenced again afterwards
+        JsonObjectBuilder keys = Json.createObjectBuilder();
+        JsonArrayBuilder shortValues = Json.createArrayBuilder();
+        for (int i = 0; i < 6000; i++) {
+            keys.add("k" + i, i);
+            shortValues.add("v" + i);
+        }
+        for (int i = 0; i < 6000; i += 7) {
+            shortValues.add("v" + i);
+        }
+        values.add(Json.createArrayBuilder().add(keys).add(shortValues).add(keys).build());
+        // Strings around the length of the ASCII fast path and longer than the buffers
+        JsonArrayBuilder strings = Json.createArrayBuilder();
+        for (int length : new int[] {0, 1, 16, 17, 127, 128, 129, 4096, (1 << 16) + 3}) {
+            strings.add(repeat("a", length));
+            strings.add(repeat("a", Math.max(0, length - 1)) + "ä");
+            strings.add("€" + repeat("b", length));
+        }
+        strings.add("äöü € 😀 中文 \u0000 \n\t\"\\");
+        strings.add(repeat("😀", 40000));
+        values.add(strings.build());
+        // Integers of every varint length, both signs, and numbers beyond long
+        JsonArrayBuilder numbers = Json.createArrayBuilder();
+        for (int shift = 0; shift < 63; shift++) {
+            long n = 1L << shift;
+            numbers.add(n).add(n - 1).add(-n).add(-n + 1);
+        }
+        numbers.add(Long.MAX_VALUE).add(Long.MIN_VALUE).add(Integer.MAX_VALUE).add(Integer.MIN_VALUE);
+        numbers.add(BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.TEN));
+        numbers.add(new BigDecimal("123456789012345678901234567890.000000000000000000001"));
+        numbers.add(new BigDecimal("0.1")).add(new BigDecimal("-0.0")).add(new BigDecimal("1E+400"));
+        numbers.add(1.5e300).add(-4.9e-324).add(Double.MAX_VALUE).add(0.30000000000000004);
+        values.add(numbers.build());
+        values.add(createFiles(100));
+        return values;
+    }
+    
+    private static JsonValue createFiles(final int n) {
+        JsonArrayBuilder b = Json.createArrayBuilder();
+        for (int i = 0; i < n; i++) {
+            String name = "sample_" + i + ".fastq";
+            b.add(Json.createObjectBuilder()
+                    .add("class", "File")
+                    .add("path", "/data/run/" + name)
+                    .add("location", "file:///data/run/" + name)
+                    .add("basename", name)
+                    .add("nameext", ".fastq")
+                    .add("checksum", "sha1$" + Integer.toHexString(i * 7919) + "0123456789abcdef0123456789abcdef")
+                    .add("size", 1234567L + i)
+                    .add("secondaryFiles", Json.createArrayBuilder()));
+        }
+        return Json.createObjectBuilder().add("reads", b).build().get("reads");
+    }
+    
+    private static void assertRoundTrip(final JsonValue v) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CWLBinaryJson.write(v, out);
+        JsonValue read = CWLBinaryJson.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(v, read, "binary encoding");
+    }
+    
+    /**
+     * Reads a value from a port object zip stream as written by earlier versions and as written now.
+     */
+    private static void assertLegacyContent(final JsonValue v) throws IOException {
+        // Earlier versions wrap the content in an object, as only objects can be written by a JsonWriter
+        byte[] legacy = zip(CWLPortObject.CONTENT_KEY, out -> out.write(Json.createObjectBuilder()
+                .add(CWLPortObject.CONTENT_KEY, v).build().toString().getBytes(StandardCharsets.UTF_8)));
+        try (PortObjectZipInputStream in = PortUtil.getPortObjectZipInputStream(new ByteArrayInputStream(legacy))) {
+            assertEquals(v, CWLPortObject.readContent(in), "legacy content");
+        }
+        byte[] binary = zip(CWLPortObject.BINARY_CONTENT_KEY, out -> CWLBinaryJson.write(v, out));
+        try (PortObjectZipInputStream in = PortUtil.getPortObjectZipInputStream(new ByteArrayInputStream(binary))) {
+            assertEquals(v, CWLPortObject.readContent(in), "binary content");
+        }
+    }
+    
+    private static void measure(final JsonValue v, final int iterations) throws IOException {
+        long writeJson = 0;
+        long writeBinary = 0;
+        long readJson = 0;
+        long readBinary = 0;
+        int sizeJson = 0;
+        int sizeBinary = 0;
+        for (int i = 0; i < 2 * iterations; i++) {
+            long start = System.nanoTime();
+            byte[] json = Json.createObjectBuilder().add(CWLPortObject.CONTENT_KEY, v).build().toString()
+                    .getBytes(StandardCharsets.UTF_8);
+            long jsonWritten = System.nanoTime();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CWLBinaryJson.write(v, out);
+            byte[] binary = out.toByteArray();
+            long binaryWritten = System.nanoTime();
+            Json.createReader(new ByteArrayInputStream(json)).readObject().get(CWLPortObject.CONTENT_KEY);
+            long jsonRead = System.nanoTime();
+            CWLBinaryJson.read(new ByteArrayInputStream(binary));
+            long binaryRead = System.nanoTime();
+            if (i >= iterations) {
+                writeJson += jsonWritten - start;
+                writeBinary += binaryWritten - jsonWritten;
+                readJson += jsonRead - binaryWritten;
+                readBinary += binaryRead - jsonRead;
+            }
+            sizeJson = json.length;
+            sizeBinary = binary.length;
+        }
+        System.out.printf("%-8s %12s %12s %12s%n", "", "bytes", "write ms", "read ms");
+        System.out.printf("%-8s %12d %12.1f %12.1f%n", "JSON", sizeJson, writeJson / 1e6 / iterations,
+                readJson / 1e6 / iterations);
+        System.out.printf("%-8s %12d %12.1f %12.1f%n", "binary", sizeBinary, writeBinary / 1e6 / iterations,
+                readBinary / 1e6 / iterations);
+    }
+    
+    private static byte[] zip(final String entry, final ContentWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.putNextEntry(new ZipEntry(entry));
+            writer.write(out);
+            out.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static void assertEquals(final JsonValue expected, final JsonValue actual, final String what) {
+        if (!expected.equals(actual)) {
+            String s = expected.toString();
+            throw new AssertionError(String.format("The %s does not reproduce %s", what,
+                    s.length() > 100 ? s.substring(0, 100) + "..." : s));
+        }
+    }
+    
+    private static String repeat(final String s, final int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+    
+    private interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+}
@@ -51,6 +51,12 @@ package de.unikn.knime.cwl;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
+import de.unikn.knime.cwl.dynode.CWLRegistry;
+import de.unikn.knime.cwl.execution.CWLMetrics;
+import de.unikn.knime.cwl.execution.CWLRunnerPool;
+import de.unikn.knime.cwl.execution.CWLWorkspaceManager;
+import de.unikn.knime.cwl.preferences.Preferences;
+
 /**
  * The activator class controls the plug-in life cycle.
  * 
@@ -78,6 +84,16 @@ public class Activator extends AbstractUIPlugin {
     public void start(final BundleContext context) throws Exception {
         super.start(context);
         plugin = this;
+        // Deleting the workspaces of crashed sessions may take a while, so it must not delay the start-up
+        Thread gc = new Thread(() -> CWLWorkspaceManager.getInstance().collectOrphans(), "cwl-workspace-gc");
+        gc.setDaemon(true);
+        gc.start();
+        CWLMetrics.getInstance().register();
+        getPreferenceStore().addPropertyChangeListener(e -> {
+            if (Preferences.isScanPreference(e.getProperty())) {
+                CWLRegistry.getInstance().scheduleReload();
+            }
+        });
     }
 
     /**
@@ -86,6 +102,9 @@ public class Activator extends AbstractUIPlugin {
      * @throws Exception when something fails during stopping
      */
     public void stop(final BundleContext context) throws Exception {
+        CWLRunnerPool.getInstance().shutdown();
+        CWLRegistry.getInstance().stopWatching();
+        CWLMetrics.getInstance().unregister();
         plugin = null;
         super.stop(context);
     }
@@ -0,0 +1,272 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import de.unikn.knime.cwl.Activator;
+import de.unikn.knime.cwl.execution.CWLPackedToolCache;
+
+/**
+ * Utilities for CWL tools distributed as zip or jar bundles. The tools inside a bundle are registered under their
+ * location in the zip file system, e.g. {@code jar:file:///tools/set-1.2.zip!/align/bwa.cwl}, and are only
+ * extracted when the cwl-runner needs a real file.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLBundles {
+    
+    private static final String BUNDLE_SCHEME = "jar:";
+    private static final String ENTRY_SEPARATOR = "!/";
+    private static final String EXTRACT_DIR = "bundles";
+    private static final String TMP_SUFFIX = ".tmp";
+    
+    /** Checksums of the bundles by their path, size and modification time. */
+    private static final Map<String, String> CHECKSUMS = new ConcurrentHashMap<>();
+    
+    /** Locks of the extract directories, so that different bundles are extracted concurrently. */
+    private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+    
+    /** Tools that have been extracted together with their dependencies since the start. */
+    private static final Set<Path> EXTRACTED = ConcurrentHashMap.newKeySet();
+    
+    private CWLBundles() { }
+    
+    /**
+     * @param p a path from one of the CWL directory settings
+     * @return true if the path is a zip or jar file whose tools should be registered
+     */
+    static boolean isBundle(final Path p) {
+        String name = p.getFileName() == null ? "" : p.getFileName().toString().toLowerCase(Locale.ENGLISH);
+        return (name.endsWith(".zip") || name.endsWith(".jar")) && Files.isRegularFile(p);
+    }
+    
+    /**
+     * @param location the location of a registered tool
+     * @return true if the tool is inside a bundle
+     */
+    static boolean isBundleLocation(final String location) {
+        return location.startsWith(BUNDLE_SCHEME) && location.contains(ENTRY_SEPARATOR);
+    }
+    
+    /**
+     * @param archive a bundle
+     * @return the prefix of the locations of all tools in the bundle
+     */
+    static String getLocationPrefix(final Path archive) {
+        return BUNDLE_SCHEME + archive.toAbsolutePath().toUri() + ENTRY_SEPARATOR;
+    }
+    
+    /**
+     * @param location the location of a tool inside a bundle
+     * @return the path of the tool inside the bundle, without leading slash
+     */
+    static String getEntryName(final String location) {
+        return location.substring(location.indexOf(ENTRY_SEPARATOR) + ENTRY_SEPARATOR.length());
+    }
+    
+    /**
+     * @param location the location of a tool inside a bundle
+     * @return the path of the bundle
+     * @throws IOException if the location is not a valid bundle location
+     */
+    static Path getArchive(final String location) throws IOException {
+        int sep = location.indexOf(ENTRY_SEPARATOR);
+        try {
+            return Paths.get(new URI(location.substring(BUNDLE_SCHEME.length(), sep)));
+        } catch (URISyntaxException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid location of a CWL tool in a bundle: " + location, e);
+        }
+    }
+    
+    /**
+     * Opens the zip file system of a bundle.
+     * @param archive the bundle
+     * @return the file system, which has to be closed by the caller
+     * @throws IOException if the bundle cannot be opened
+     */
+    static FileSystem open(final Path archive) throws IOException {
+        return FileSystems.newFileSystem(archive, (ClassLoader)null);
+    }
+    
+    /**
+     * Returns a path in the local file system for a tool. The tool is extracted into a cache directory on first
+     * use, together with the documents it references, so that they are available to the cwl-runner as well. Other
+     * tools are returned as they are.
+     * @param location the location of a registered tool
+     * @return the path of a file containing the tool
+     * @throws IOException if the tool cannot be extracted or does not exist in the bundle
+     */
+    static String getLocalPath(final String location) throws IOException {
+        if (!isBundleLocation(location)) {
+            return location;
+        }
+        Path archive = getArchive(location);
+        // A changed bundle gets a new directory, so outdated extracted tools are never used
+        Path dir = getExtractDir(archive);
+        String entry = getEntryName(location);
+        Path target = resolveEntry(dir, entry);
+        synchronized (LOCKS.computeIfAbsent(dir, d -> new Object())) {
+            if (!EXTRACTED.contains(target)) {
+                extract(archive, entry, dir);
+                EXTRACTED.add(target);
+            }
+        }
+        return target.toString();
+    }
+    
+    /**
+     * Extracts a tool and the documents it references. If the tool references files by relative locations,
+     * all files in its directory are extracted, as they cannot be told apart from other files. Files that were
+     * extracted before are kept, they cannot differ as the directory belongs to a single version of the bundle.
+     */
+    private static void extract(final Path archive, final String entry, final Path dir) throws IOException {
+        try (FileSystem fs = open(archive)) {
+            Path root = fs.getPath("/");
+            Path tool = root.resolve(entry).normalize();
+            if (!Files.isRegularFile(tool)) {
+                throw new IOException("The CWL tool " + entry + " does not exist in " + archive);
+            }
+            List<Path> files = new ArrayList<>();
+            if (!CWLPackedToolCache.collectDependencies(tool, files)) {
+                try (Stream<Path> entries = Files.walk(tool.getParent())) {
+                    entries.filter(Files::isRegularFile).forEach(files::add);
+                }
+            }
+            for (Path f : files) {
+                // References to local files outside of the bundle are used where they are
+                if (f.getFileSystem() != fs) {
+                    continue;
+                }
+                Path target = resolveEntry(dir, root.relativize(f).toString());
+                if (!Files.isRegularFile(target)) {
+                    Files.createDirectories(target.getParent());
+                    Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), TMP_SUFFIX);
+                    try {
+                        Files.copy(f, tmp, StandardCopyOption.REPLACE_EXISTING);
+                        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                    } finally {
+                        Files.deleteIfExists(tmp);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Resolves the name of an entry of a bundle against the directory it is extracted to.
+     * @throws IOException if the entry name points outside of the directory, e.g. with {@code ..}
+     */
+    private static Path resolveEntry(final Path dir, final String entry) throws IOException {
+        Path target = dir.resolve(entry).normalize();
+        if (!target.startsWith(dir.normalize()) || target.equals(dir.normalize())) {
+            throw new IOException("Invalid entry in CWL bundle: " + entry);
+        }
+        return target;
+    }
+    
+    /**
+     * @return the directory a bundle is extracted to, named by the checksum of the bundle
+     */
+    private static Path getExtractDir(final Path archive) throws IOException {
+        Activator activator = Activator.getDefault();
+        File base = activator == null ? new File(System.getProperty("java.io.tmpdir"), "knime-cwl-bundles")
+                : new File(activator.getStateLocation().toFile(), EXTRACT_DIR);
+        return base.toPath().resolve(getChecksum(archive));
+    }
+    
+    /**
+     * Computes the MD5 checksum of a bundle. It is only computed again when the size or modification time of the
+     * bundle changes.
+     */
+    private static String getChecksum(final Path archive) throws IOException {
+        String key = archive.toAbsolutePath() + "|" + Files.size(archive) + "|"
+                + Files.getLastModifiedTime(archive).toMillis();
+        String checksum = CHECKSUMS.get(key);
+        if (checksum != null) {
+            return checksum;
+        }
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream is = Files.newInputStream(archive)) {
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+        }
+        checksum = new BigInteger(1, md.digest()).toString(16);
+        CHECKSUMS.put(key, checksum);
+        return checksum;
+    }
+}
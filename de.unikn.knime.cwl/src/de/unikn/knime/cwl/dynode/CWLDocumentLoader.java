@@ -0,0 +1,481 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.binary.Hex;
+import org.yaml.snakeyaml.Yaml;
+
+import de.unikn.knime.cwl.dynode.data.types.CWLType;
+
+/**
+ * Loads the documents CWL tools reference via {@code $import}, e.g. the shared schema files of a
+ * {@code SchemaDefRequirement}, and resolves the named types of a tool's inputs and outputs to their
+ * definitions. Parsed documents are cached process-wide by their location and checksum, so a schema library
+ * shared by many tools is only parsed once per version.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLDocumentLoader {
+    
+    private static final String IMPORT_KEY = "$import";
+    private static final String CLASS_KEY = "class";
+    private static final String TYPES_KEY = "types";
+    private static final String NAME_KEY = "name";
+    private static final String ID_KEY = "id";
+    private static final String TYPE_KEY = "type";
+    private static final String ITEMS_KEY = "items";
+    private static final String FIELDS_KEY = "fields";
+    private static final String SCHEMA_DEF_REQUIREMENT = "SchemaDefRequirement";
+    
+    private static final String OPTIONAL_SUFFIX = "?";
+    private static final String ARRAY_SUFFIX = "[]";
+    private static final String NULL_TYPE = "null";
+    private static final String ARRAY_TYPE = "array";
+    // Not CWL types, but valid as output types
+    private static final Set<String> SPECIAL_TYPES = new HashSet<>(Arrays.asList("stdout", "stderr"));
+    
+    // Parsed documents by the URI of their location
+    private final Map<String, Document> m_documents = new ConcurrentHashMap<>();
+    
+    private CWLDocumentLoader() { }
+    
+    // Private class that will only be initialized on first access by getInstance().
+    // Implicitely synchronized by class loader.
+    private static final class InstanceHolder {
+      static final CWLDocumentLoader INSTANCE = new CWLDocumentLoader();
+    }
+    
+    /**
+     * @return the singleton instance of the document loader
+     */
+    static CWLDocumentLoader getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+    
+    /**
+     * Collects the named types a tool defines in its {@code SchemaDefRequirement}, loading imported schema files.
+     * @param tool the path of the CWL file
+     * @param cwl the top-level properties of the tool, at least its requirements and hints
+     * @return the scope to resolve the types of the tool's inputs and outputs in
+     * @throws IOException if an imported schema file cannot be read
+     */
+    Scope createScope(final Path tool, final Map<?, ?> cwl) throws IOException {
+        Scope scope = new Scope(tool);
+        for (Object req : getSchemaDefRequirements(cwl.get("requirements"), cwl.get("hints"))) {
+            Object types = ((Map<?, ?>)req).get(TYPES_KEY);
+            if (!(types instanceof List)) {
+                continue;
+            }
+            for (Object t : (List<?>)types) {
+                if (t instanceof Map && ((Map<?, ?>)t).get(IMPORT_KEY) instanceof String) {
+                    Path p = scope.resolvePath(tool, (String)((Map<?, ?>)t).get(IMPORT_KEY));
+                    scope.m_types.putAll(scope.load(p).m_namedTypes);
+                } else {
+                    addNamedType(tool, t, null, scope.m_types);
+                }
+            }
+        }
+        return scope;
+    }
+    
+    private static List<Object> getSchemaDefRequirements(final Object... lists) {
+        List<Object> requirements = new ArrayList<>();
+        for (Object l : lists) {
+            if (l instanceof List) {
+                // Objects with a class property
+                for (Object r : (List<?>)l) {
+                    if (r instanceof Map && SCHEMA_DEF_REQUIREMENT.equals(((Map<?, ?>)r).get(CLASS_KEY))) {
+                        requirements.add(r);
+                    }
+                }
+            } else if (l instanceof Map && ((Map<?, ?>)l).get(SCHEMA_DEF_REQUIREMENT) instanceof Map) {
+                // A map from class to requirement
+                requirements.add(((Map<?, ?>)l).get(SCHEMA_DEF_REQUIREMENT));
+            }
+        }
+        return requirements;
+    }
+    
+    private static void addNamedType(final Path base, final Object definition,
+            final Map<String, ResolvedType> resolved, final Map<String, NamedType> types) {
+        if (definition instanceof List) {
+            for (Object d : (List<?>)definition) {
+                addNamedType(base, d, resolved, types);
+            }
+        } else if (definition instanceof Map) {
+            Object name = ((Map<?, ?>)definition).get(NAME_KEY);
+            if (name == null) {
+                name = ((Map<?, ?>)definition).get(ID_KEY);
+            }
+            if (name instanceof String) {
+                String simpleName = toSimpleName((String)name);
+                types.put(simpleName, new NamedType(base, simpleName, definition, types, resolved));
+            }
+        }
+    }
+    
+    /**
+     * Strips the document and namespace parts of a type reference like {@code schema.yml#Sample}.
+     */
+    private static String toSimpleName(final String reference) {
+        String name = reference.substring(reference.lastIndexOf('#') + 1);
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+    
+    private Document getDocument(final Path p) throws IOException {
+        String key = p.toUri().toString();
+        BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        Document doc = m_documents.get(key);
+        if (doc != null && doc.m_size == attrs.size() && doc.m_lastModified == lastModified) {
+            return doc;
+        }
+        byte[] content = Files.readAllBytes(p);
+        String checksum = checksum(content);
+        if (doc != null && doc.m_checksum.equals(checksum)) {
+            // Touched, but not changed
+            doc = new Document(checksum, attrs.size(), lastModified, doc.m_content, doc.m_namedTypes);
+        } else {
+            Object parsed;
+            try (InputStream is = Files.newInputStream(p)) {
+                parsed = new Yaml().load(is);
+            }
+            Map<String, NamedType> namedTypes = new HashMap<>();
+            addNamedType(p, parsed, new ConcurrentHashMap<>(), namedTypes);
+            doc = new Document(checksum, attrs.size(), lastModified, parsed, namedTypes);
+        }
+        m_documents.put(key, doc);
+        return doc;
+    }
+    
+    private static String checksum(final byte[] content) {
+        try {
+            return Hex.encodeHexString(MessageDigest.getInstance("MD5").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * The named types visible to one tool together with the documents they were loaded from.
+     */
+    final class Scope {
+        
+        private final Path m_tool;
+        private final Map<String, NamedType> m_types = new HashMap<>();
+        private final Set<Path> m_dependencies = new LinkedHashSet<>();
+        // Documents loaded by the named types currently being resolved, innermost last
+        private final Deque<Set<Path>> m_collecting = new ArrayDeque<>();
+        // The named type currently being resolved and whether its resolution depended on this scope
+        private NamedType m_resolving;
+        private boolean m_scopeDependent;
+        
+        private Scope(final Path tool) {
+            m_tool = tool;
+        }
+        
+        /**
+         * @return the documents that were loaded for the tool, excluding the tool itself
+         */
+        Set<Path> getDependencies() {
+            return m_dependencies;
+        }
+        
+        /**
+         * Replaces named types and imports in the inputs or outputs of the tool by their definitions.
+         * @param ports the inputs or outputs object from the tool's YAML
+         * @return a copy of the ports with inline types, the given object is not modified
+         * @throws IOException if an imported document cannot be read
+         */
+        Object resolvePorts(final Object ports) throws IOException {
+            return resolvePorts(m_tool, ports);
+        }
+        
+        private Object resolvePorts(final Path base, final Object ports) throws IOException {
+            if (ports instanceof List) {
+                List<Object> resolved = new ArrayList<>();
+                for (Object port : (List<?>)ports) {
+                    resolved.add(resolveType(base, port, new HashSet<>()));
+                }
+                return resolved;
+            } else if (ports instanceof Map) {
+                Map<?, ?> m = (Map<?, ?>)ports;
+                if (m.get(IMPORT_KEY) instanceof String) {
+                    Path p = resolvePath(base, (String)m.get(IMPORT_KEY));
+                    return resolvePorts(p, load(p).m_content);
+                }
+                if (m.containsKey(ID_KEY)) {
+                    return resolveType(base, m, new HashSet<>());
+                }
+                Map<Object, Object> resolved = new LinkedHashMap<>();
+                for (Entry<?, ?> e : m.entrySet()) {
+                    resolved.put(e.getKey(), resolveType(base, e.getValue(), new HashSet<>()));
+                }
+                return resolved;
+            }
+            return ports;
+        }
+        
+        private Object resolveType(final Path base, final Object type, final Set<String> visiting)
+                throws IOException {
+            if (type instanceof String) {
+                return resolveReference(base, (String)type, visiting);
+            } else if (type instanceof List) {
+                List<Object> resolved = new ArrayList<>();
+                for (Object t : (List<?>)type) {
+                    resolved.add(resolveType(base, t, visiting));
+                }
+                return resolved;
+            } else if (!(type instanceof Map)) {
+                return type;
+            }
+            Map<?, ?> m = (Map<?, ?>)type;
+            if (m.get(IMPORT_KEY) instanceof String) {
+                Path p = resolvePath(base, (String)m.get(IMPORT_KEY));
+                return resolveType(p, load(p).m_content, visiting);
+            }
+            Map<Object, Object> resolved = new LinkedHashMap<>(m);
+            if (m.containsKey(TYPE_KEY)) {
+                resolved.put(TYPE_KEY, resolveType(base, m.get(TYPE_KEY), visiting));
+            }
+            if (m.containsKey(ITEMS_KEY)) {
+                resolved.put(ITEMS_KEY, resolveType(base, m.get(ITEMS_KEY), visiting));
+            }
+            Object fields = m.get(FIELDS_KEY);
+            if (fields instanceof List) {
+                resolved.put(FIELDS_KEY, resolveType(base, fields, visiting));
+            } else if (fields instanceof Map) {
+                Map<Object, Object> resolvedFields = new LinkedHashMap<>();
+                for (Entry<?, ?> e : ((Map<?, ?>)fields).entrySet()) {
+                    resolvedFields.put(e.getKey(), resolveType(base, e.getValue(), visiting));
+                }
+                resolved.put(FIELDS_KEY, resolvedFields);
+            }
+            return resolved;
+        }
+        
+        private Object resolveReference(final Path base, final String reference, final Set<String> visiting)
+                throws IOException {
+            if (reference.endsWith(OPTIONAL_SUFFIX)) {
+                String t = reference.substring(0, reference.length() - OPTIONAL_SUFFIX.length());
+                return new ArrayList<>(Arrays.asList(NULL_TYPE, resolveReference(base, t, visiting)));
+            }
+            if (reference.endsWith(ARRAY_SUFFIX)) {
+                String t = reference.substring(0, reference.length() - ARRAY_SUFFIX.length());
+                Map<Object, Object> array = new LinkedHashMap<>();
+                array.put(TYPE_KEY, ARRAY_TYPE);
+                array.put(ITEMS_KEY, resolveReference(base, t, visiting));
+                return array;
+            }
+            if (CWLType.get(reference) != null || SPECIAL_TYPES.contains(reference)) {
+                return reference;
+            }
+            String name = toSimpleName(reference);
+            int hash = reference.indexOf('#');
+            // Types of the document that defines the type being resolved take precedence, they do not depend
+            // on the tool the type is resolved for
+            NamedType named = m_resolving == null ? null : m_resolving.m_siblings.get(name);
+            if (named == null && hash > 0) {
+                Path p = resolvePath(base, reference.substring(0, hash));
+                named = m_types.get(name);
+                if (named == null || !named.m_base.equals(p)) {
+                    // A type from a document that is not listed in the SchemaDefRequirement
+                    named = load(p).m_namedTypes.get(name);
+                }
+            }
+            if (named == null) {
+                named = m_types.get(name);
+                m_scopeDependent = true;
+            }
+            if (named == null || !visiting.add(name)) {
+                // Unknown or recursive types are left as they are and end up as Any
+                m_scopeDependent = true;
+                return reference;
+            }
+            try {
+                return resolveNamedType(named, visiting);
+            } finally {
+                visiting.remove(name);
+            }
+        }
+        
+        /**
+         * Resolves a named type, reusing the definition resolved for another tool if it did not depend on the
+         * types visible to that tool.
+         */
+        private Object resolveNamedType(final NamedType named, final Set<String> visiting) throws IOException {
+            ResolvedType cached = named.m_resolved == null ? null : named.m_resolved.get(named.m_name);
+            if (cached != null) {
+                for (Path p : cached.m_dependencies) {
+                    addDependency(p);
+                }
+                return cached.m_definition;
+            }
+            NamedType outer = m_resolving;
+            boolean outerDependent = m_scopeDependent;
+            Set<Path> dependencies = new LinkedHashSet<>();
+            m_resolving = named;
+            m_scopeDependent = false;
+            m_collecting.addLast(dependencies);
+            try {
+                Object definition = resolveType(named.m_base, named.m_definition, visiting);
+                if (!m_scopeDependent && named.m_resolved != null) {
+                    named.m_resolved.putIfAbsent(named.m_name, new ResolvedType(definition, dependencies));
+                }
+                return definition;
+            } finally {
+                m_collecting.removeLast();
+                m_resolving = outer;
+                m_scopeDependent |= outerDependent;
+            }
+        }
+        
+        private Path resolvePath(final Path base, final String reference) throws IOException {
+            String r = reference;
+            if (r.startsWith("file:")) {
+                r = r.substring("file:".length());
+            } else if (r.matches("^[a-zA-Z][a-zA-Z0-9+.-]+:.*")) {
+                throw new IOException("Remote documents are not supported: " + reference);
+            }
+            return base.resolveSibling(r).normalize();
+        }
+        
+        private Document load(final Path p) throws IOException {
+            addDependency(p);
+            return getDocument(p);
+        }
+        
+        private void addDependency(final Path p) {
+            m_dependencies.add(p);
+            for (Set<Path> dependencies : m_collecting) {
+                dependencies.add(p);
+            }
+        }
+    }
+    
+    /**
+     * A named type and the document it was defined in, which references in its definition are relative to.
+     */
+    private static final class NamedType {
+        
+        private final Path m_base;
+        private final String m_name;
+        private final Object m_definition;
+        // The types defined in the same document
+        private final Map<String, NamedType> m_siblings;
+        // The resolved types of the document by name, null for types defined in a tool
+        private final Map<String, ResolvedType> m_resolved;
+        
+        NamedType(final Path base, final String name, final Object definition, final Map<String, NamedType> siblings,
+                final Map<String, ResolvedType> resolved) {
+            m_base = base;
+            m_name = name;
+            m_definition = definition;
+            m_siblings = siblings;
+            m_resolved = resolved;
+        }
+    }
+    
+    /**
+     * The definition of a named type with all references replaced, shared by the tools using the type, together
+     * with the documents that were loaded to resolve it.
+     */
+    private static final class ResolvedType {
+        
+        private final Object m_definition;
+        private final Set<Path> m_dependencies;
+        
+        ResolvedType(final Object definition, final Set<Path> dependencies) {
+            m_definition = definition;
+            m_dependencies = dependencies;
+        }
+    }
+    
+    /**
+     * A parsed document and the named types it defines.
+     */
+    private static final class Document {
+        
+        private final String m_checksum;
+        private final long m_size;
+        private final long m_lastModified;
+        private final Object m_content;
+        private final Map<String, NamedType> m_namedTypes;
+        
+        Document(final String checksum, final long size, final long lastModified, final Object content,
+                final Map<String, NamedType> namedTypes) {
+            m_checksum = checksum;
+            m_size = size;
+            m_lastModified = lastModified;
+            m_content = content;
+            m_namedTypes = namedTypes;
+        }
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.knime.core.node.NodeLogger;
+import org.yaml.snakeyaml.Yaml;
+
+import de.unikn.knime.cwl.execution.CWLResourceRequirement;
+
+/**
+ * Scans the CWL directories recursively for CWL files. Every directory is listed in its own fork/join task and
+ * files that are not up to date in the {@link CWLToolIndex} are hashed and parsed in parallel.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLFolderScanner {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLFolderScanner.class);
+    
+    /** Reading files from network storage is mostly waiting, so more threads than cores are used. */
+    private static final int PARALLELISM = Math.min(8, 2 * Runtime.getRuntime().availableProcessors());
+    
+    /** The top-level properties of a CWL file that are needed to create its nodes. */
+    static final Set<String> SIGNATURE_KEYS = new HashSet<>(
+            Arrays.asList("id", "label", "doc", "inputs", "outputs", "requirements", "hints"));
+    
+    private final CWLToolIndex m_index;
+    private final int m_maxDepth;
+    private final List<PathMatcher> m_includes;
+    private final List<PathMatcher> m_excludes;
+    
+    private final Map<String, CWLToolInfo> m_tools = new ConcurrentHashMap<>();
+    private final Map<String, String> m_categories = new ConcurrentHashMap<>();
+    private final Queue<String> m_paths = new ConcurrentLinkedQueue<>();
+    private final Queue<String> m_parsed = new ConcurrentLinkedQueue<>();
+    private final Queue<Path> m_directories = new ConcurrentLinkedQueue<>();
+    private Consumer<String> m_progressListener;
+    
+    /**
+     * Creates a new instance of {@code CWLFolderScanner}.
+     * @param index the index to take up-to-date files from and to add parsed files to
+     * @param maxDepth the depth up to which subfolders are scanned, 0 for none
+     * @param includes glob patterns of the files to register
+     * @param excludes glob patterns of the files and folders to skip
+     */
+    CWLFolderScanner(final CWLToolIndex index, final int maxDepth, final String[] includes,
+            final String[] excludes) {
+        m_index = index;
+        m_maxDepth = maxDepth;
+        m_includes = toMatchers(includes);
+        m_excludes = toMatchers(excludes);
+    }
+    
+    private static List<PathMatcher> toMatchers(final String[] patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String p : patterns) {
+            try {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + p));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn(String.format("Ignoring invalid pattern \"%s\"", p), e);
+            }
+        }
+        return matchers;
+    }
+    
+    /**
+     * Sets a listener that is notified about the progress of the scan.
+     * @param listener receives the location of every registered file, called concurrently from the scan threads
+     */
+    void setProgressListener(final Consumer<String> listener) {
+        m_progressListener = listener;
+    }
+    
+    /**
+     * Scans the given directories and bundles and waits for the scan to finish.
+     * @param roots the CWL directories and zip or jar bundles
+     */
+    void scan(final List<Path> roots) {
+        List<DirectoryTask> tasks = new ArrayList<>();
+        List<FileSystem> bundles = new ArrayList<>();
+        Map<Path, BasicFileAttributes> scannedBundles = new HashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        try {
+            for (Path root : roots) {
+                if (!CWLBundles.isBundle(root)) {
+                    tasks.add(new DirectoryTask(root, root, 0, null));
+                    continue;
+                }
+                // Changes to the bundle show up as changes in its folder
+                m_directories.add(root.toAbsolutePath().getParent());
+                if (!registerIndexedBundle(root)) {
+                    try {
+                        // Read before scanning, so a concurrent modification makes the index outdated
+                        scannedBundles.put(root, Files.readAttributes(root, BasicFileAttributes.class));
+                        FileSystem fs = CWLBundles.open(root);
+                        bundles.add(fs);
+                        Path fsRoot = fs.getRootDirectories().iterator().next();
+                        tasks.add(new DirectoryTask(fsRoot, fsRoot, 0, root));
+                    } catch (IOException e) {
+                        LOGGER.error(String.format("Could not open the CWL bundle \"%s\".", root), e);
+                        scannedBundles.remove(root);
+                    }
+                }
+            }
+            tasks.forEach(pool::execute);
+            tasks.forEach(DirectoryTask::join);
+        } finally {
+            pool.shutdown();
+            for (FileSystem fs : bundles) {
+                try {
+                    fs.close();
+                } catch (IOException e) {
+                    LOGGER.debug("Could not close a CWL bundle", e);
+                }
+            }
+        }
+        for (Entry<Path, BasicFileAttributes> e : scannedBundles.entrySet()) {
+            m_index.putBundle(e.getKey(), e.getValue().size(), e.getValue().lastModifiedTime().toMillis());
+        }
+    }
+    
+    /**
+     * Registers the tools of a bundle from the index if the bundle did not change since it was indexed.
+     * @return true if the bundle was up to date in the index
+     */
+    private boolean registerIndexedBundle(final Path bundle) {
+        List<CWLToolInfo> entries = m_index.getBundleEntries(bundle);
+        if (entries == null) {
+            return false;
+        }
+        for (CWLToolInfo info : entries) {
+            register(info, getCategory(info.getPath(), Collections.emptyList()));
+        }
+        return true;
+    }
+    
+    /**
+     * @return the registered tools by their ID
+     */
+    Map<String, CWLToolInfo> getTools() {
+        return m_tools;
+    }
+    
+    /**
+     * @return the category of each registered tool by its ID, the path of its folder relative to the CWL
+     *          directory or an empty string for tools directly in the CWL directory
+     */
+    Map<String, String> getCategories() {
+        return m_categories;
+    }
+    
+    /**
+     * @return the absolute paths of all registered files
+     */
+    List<String> getPaths() {
+        return new ArrayList<>(m_paths);
+    }
+    
+    /**
+     * @return all folders that were scanned
+     */
+    List<Path> getDirectories() {
+        return new ArrayList<>(m_directories);
+    }
+    
+    /**
+     * @return the number of files that had to be parsed because they were not up to date in the index
+     */
+    int getParsedCount() {
+        return m_parsed.size();
+    }
+    
+    private boolean matches(final List<PathMatcher> matchers, final Path root, final Path p) {
+        Path relative = root.relativize(p);
+        for (PathMatcher m : matchers) {
+            // Patterns without a folder only refer to the name, so that *.cwl also matches in subfolders
+            if (m.matches(relative) || m.matches(p.getFileName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void register(final Path root, final Path f, final Path bundle) {
+        String location = bundle == null ? f.toAbsolutePath().toString()
+                : CWLBundles.getLocationPrefix(bundle) + root.relativize(f).toString();
+        CWLToolInfo info;
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(f, BasicFileAttributes.class);
+            long size = attrs.size();
+            long lastModified = attrs.lastModifiedTime().toMillis();
+            info = m_index.get(location, size, lastModified);
+            if (info == null) {
+                info = parse(f, location, size, lastModified);
+                m_index.put(info);
+                m_parsed.add(location);
+            }
+        } catch (IOException | NoSuchAlgorithmException | RuntimeException e) {
+            LOGGER.error("Could not load CWL file " + location);
+            LOGGER.error(e);
+            return;
+        }
+        register(info, toCategory(root.relativize(f).getParent()));
+    }
+    
+    /**
+     * Registers a tool. Of several tools with the same ID, the one with the lexicographically smallest location is
+     * registered, independent of the order in which the scan threads find them.
+     */
+    private void register(final CWLToolInfo info, final String category) {
+        m_paths.add(info.getPath());
+        if (m_progressListener != null) {
+            m_progressListener.accept(info.getPath());
+        }
+        CWLToolInfo[] ignored = new CWLToolInfo[1];
+        CWLToolInfo registered = m_tools.compute(info.getId(), (id, existing) -> {
+            if (existing != null && existing.getPath().compareTo(info.getPath()) <= 0) {
+                ignored[0] = info;
+                return existing;
+            }
+            ignored[0] = existing;
+            m_categories.put(id, category);
+            return info;
+        });
+        if (ignored[0] != null) {
+            LOGGER.warn(String.format("The CWL files \"%s\" and \"%s\" have the same ID, only the first is registered.",
+                    registered.getPath(), ignored[0].getPath()));
+        }
+    }
+    
+    /**
+     * Determines the category of a tool from its location without scanning.
+     * @param location the location of the tool
+     * @param roots the CWL directories and bundles
+     * @return the category of the tool, see {@link #getCategories()}
+     */
+    static String getCategory(final String location, final List<Path> roots) {
+        if (CWLBundles.isBundleLocation(location)) {
+            String entry = CWLBundles.getEntryName(location);
+            int slash = entry.lastIndexOf('/');
+            return slash < 0 ? "" : toCategory(Paths.get(entry.substring(0, slash)));
+        }
+        Path p = Paths.get(location);
+        for (Path root : roots) {
+            Path r = root.toAbsolutePath();
+            if (p.startsWith(r)) {
+                return toCategory(r.relativize(p).getParent());
+            }
+        }
+        return "";
+    }
+    
+    /**
+     * Parses a single CWL file without scanning its folder.
+     * @param location the absolute path of the file or its location in a bundle
+     * @return the information about the tool
+     * @throws IOException if the file cannot be read
+     */
+    static CWLToolInfo parse(final String location) throws IOException {
+        try {
+            if (!CWLBundles.isBundleLocation(location)) {
+                Path f = Paths.get(location);
+                BasicFileAttributes attrs = Files.readAttributes(f, BasicFileAttributes.class);
+                return parse(f, location, attrs.size(), attrs.lastModifiedTime().toMillis());
+            }
+            try (FileSystem fs = CWLBundles.open(CWLBundles.getArchive(location))) {
+                Path f = fs.getPath(CWLBundles.getEntryName(location));
+                BasicFileAttributes attrs = Files.readAttributes(f, BasicFileAttributes.class);
+                return parse(f, location, attrs.size(), attrs.lastModifiedTime().toMillis());
+            }
+        } catch (NoSuchAlgorithmException | RuntimeException e) {
+            throw new IOException("Could not load CWL file " + location, e);
+        }
+    }
+    
+    /**
+     * Converts a folder path into a category path, whose level IDs may only contain lower case letters,
+     * digits, dashes and underscores.
+     */
+    private static String toCategory(final Path folder) {
+        List<String> levels = new ArrayList<>();
+        if (folder == null) {
+            return "";
+        }
+        for (Path p : folder) {
+            String level = p.toString().toLowerCase(Locale.ENGLISH).replaceAll("[^a-z0-9_-]", "_");
+            if (!level.isEmpty()) {
+                levels.add(level);
+            }
+        }
+        return String.join("/", levels);
+    }
+    
+    /**
+     * Parses the properties of a CWL file that are needed for its nodes. Its ID is either the ID given in the file
+     * or its MD5 hash.
+     */
+    private static CWLToolInfo parse(final Path f, final String location, final long size,
+            final long lastModified) throws IOException, NoSuchAlgorithmException {
+        // Size and modification time are read before parsing, so a concurrent modification makes the index entry
+        // outdated rather than wrong
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        Map<String, Object> cwl;
+        try (InputStream is = Files.newInputStream(f);
+             DigestInputStream dis = new DigestInputStream(is, md)) {
+            cwl = CWLSignatureReader.read(dis, SIGNATURE_KEYS);
+        } catch (IOException e) {
+            LOGGER.debug(String.format("Loading the complete CWL file \"%s\": %s", location, e.getMessage()));
+            md.reset();
+            try (InputStream is = Files.newInputStream(f);
+                 DigestInputStream dis = new DigestInputStream(is, md)) {
+                /* Read decorated stream (dis) to EOF as normal... */
+                cwl = new Yaml().load(dis);
+            }
+        }
+        String id = (String)cwl.get("id");
+        if (id == null) {
+            byte[] digest = md.digest();
+            BigInteger bigInt = new BigInteger(1, digest);
+            id = bigInt.toString(16);
+        }
+        Object label = cwl.get("label");
+        Object doc = cwl.get("doc");
+        if (doc instanceof List) {
+            // Since CWL v1.1 the documentation may be a list of strings
+            doc = ((List<?>)doc).stream().map(String::valueOf).collect(Collectors.joining("\n"));
+        }
+        Object inputs = cwl.get("inputs");
+        Object outputs = cwl.get("outputs");
+        Map<String, long[]> dependencies = new HashMap<>();
+        try {
+            CWLDocumentLoader.Scope scope = CWLDocumentLoader.getInstance().createScope(f, cwl);
+            inputs = scope.resolvePorts(inputs);
+            outputs = scope.resolvePorts(outputs);
+            // Documents in bundles are covered by the size and modification time of the bundle
+            if (!CWLBundles.isBundleLocation(location)) {
+                for (Path p : scope.getDependencies()) {
+                    BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                    dependencies.put(p.toAbsolutePath().toString(),
+                            new long[] {attrs.size(), attrs.lastModifiedTime().toMillis()});
+                }
+            }
+        } catch (IOException | ClassCastException e) {
+            LOGGER.warn(String.format("Could not resolve the types imported by the CWL file \"%s\", "
+                    + "the affected ports accept any data: %s", location, e.getMessage()));
+        }
+        return new CWLToolInfo(location, size, lastModified, id,
+                label == null ? null : label.toString(), doc == null ? null : doc.toString(),
+                inputs, outputs, CWLResourceRequirement.fromCWL(cwl), dependencies);
+    }
+    
+    /**
+     * Lists a directory, registers its CWL files and scans its subfolders, each in a task of its own.
+     */
+    private final class DirectoryTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final Path m_root;
+        private final Path m_dir;
+        private final int m_depth;
+        private final Path m_bundle;
+        
+        /**
+         * @param bundle the bundle if the directory is inside its zip file system, otherwise null
+         */
+        DirectoryTask(final Path root, final Path dir, final int depth, final Path bundle) {
+            m_root = root;
+            m_dir = dir;
+            m_depth = depth;
+            m_bundle = bundle;
+        }
+        
+        @Override
+        protected void compute() {
+            List<Path> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(m_dir)) {
+                stream.forEach(children::add);
+            } catch (IOException e) {
+                LOGGER.warn(String.format("Could not list the CWL folder \"%s\".", m_dir), e);
+                return;
+            }
+            if (m_bundle == null) {
+                m_directories.add(m_dir);
+            }
+            List<RecursiveAction> tasks = new ArrayList<>();
+            for (Path p : children) {
+                if (matches(m_excludes, m_root, p)) {
+                    continue;
+                }
+                if (Files.isDirectory(p)) {
+                    if (m_depth < m_maxDepth) {
+                        tasks.add(new DirectoryTask(m_root, p, m_depth + 1, m_bundle));
+                    }
+                } else if (matches(m_includes, m_root, p)) {
+                    tasks.add(new FileTask(m_root, p, m_bundle));
+                }
+            }
+            invokeAll(tasks);
+        }
+    }
+    
+    /**
+     * Registers a single CWL file, parsing it if it is not up to date in the index.
+     */
+    private final class FileTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final Path m_root;
+        private final Path m_file;
+        private final Path m_bundle;
+        
+        FileTask(final Path root, final Path file, final Path bundle) {
+            m_root = root;
+            m_file = file;
+            m_bundle = bundle;
+        }
+        
+        @Override
+        protected void compute() {
+            register(m_root, m_file, m_bundle);
+        }
+    }
+}
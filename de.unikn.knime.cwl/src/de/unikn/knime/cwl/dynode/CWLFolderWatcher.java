@@ -0,0 +1,147 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Watches the CWL directories and their subfolders for changes. The watcher does not interpret the events, it only
+ * notifies a listener that something changed, which then rescans the folders.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLFolderWatcher {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLFolderWatcher.class);
+    
+    private final WatchService m_service;
+    private final Runnable m_listener;
+    private final Map<Path, WatchKey> m_keys = new HashMap<>();
+    private final Thread m_thread;
+    
+    /**
+     * Creates a new instance of {@code CWLFolderWatcher} and starts watching in a daemon thread.
+     * @param listener called on the watcher thread whenever a file in one of the watched folders changed
+     * @throws IOException if the file system cannot be watched
+     */
+    CWLFolderWatcher(final Runnable listener) throws IOException {
+        m_service = FileSystems.getDefault().newWatchService();
+        m_listener = listener;
+        m_thread = new Thread(this::run, "cwl-folder-watcher");
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+    
+    /**
+     * Sets the folders to watch. Folders that were watched before but are not in the given collection any more
+     * are no longer watched.
+     * @param dirs the folders to watch
+     */
+    synchronized void watch(final Collection<Path> dirs) {
+        Set<Path> wanted = new HashSet<>(dirs);
+        for (Iterator<Entry<Path, WatchKey>> it = m_keys.entrySet().iterator(); it.hasNext();) {
+            Entry<Path, WatchKey> e = it.next();
+            if (!wanted.contains(e.getKey()) || !e.getValue().isValid()) {
+                e.getValue().cancel();
+                it.remove();
+            }
+        }
+        for (Path dir : wanted) {
+            if (!m_keys.containsKey(dir)) {
+                try {
+                    m_keys.put(dir, dir.register(m_service, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+                } catch (IOException e) {
+                    LOGGER.warn(String.format("Cannot watch the CWL folder \"%s\" for changes.", dir), e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Stops watching.
+     */
+    void close() {
+        m_thread.interrupt();
+        try {
+            m_service.close();
+        } catch (IOException e) {
+            LOGGER.debug("Could not close the CWL folder watch service", e);
+        }
+    }
+    
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = m_service.take();
+                // The events themselves are not needed, the listener rescans the folders
+                key.pollEvents();
+                key.reset();
+                m_listener.run();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+}
@@ -56,7 +56,9 @@ import javax.swing.BorderFactory;
 import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
 
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeDialogPane;
@@ -84,6 +86,9 @@ public class CWLNodeDialogPane extends NodeDialogPane {
     private JCheckBox[] m_inputEnabledCheckboxes;
     
     private JTextField m_extraArguments = new JTextField();
+    private JCheckBox m_builtinEngine = new JCheckBox("Execute simple command line tools without cwl-runner");
+    
+    private JSpinner m_priority = new JSpinner(new SpinnerNumberModel(0, -100, 100, 1));
     
     private CWLNodeSettings m_settings;
     
@@ -111,6 +116,21 @@ public class CWLNodeDialogPane extends NodeDialogPane {
         gbc.weightx = 2;
         panel.add(m_extraArguments, gbc);
         
+        gbc.gridx = 0;
+        gbc.gridy++;
+        gbc.gridwidth = 2;
+        m_builtinEngine.setToolTipText("Tools with requirements, hints or JavaScript expressions and nodes with "
+                + "extra cwl-runner arguments are always executed by the cwl-runner");
+        panel.add(m_builtinEngine, gbc);
+        
+        gbc.gridy++;
+        gbc.gridwidth = 1;
+        panel.add(new JLabel("Priority when waiting for resources:"), gbc);
+        gbc.gridx++;
+        m_priority.setToolTipText("Executions with a higher priority are started first when the cores or memory "
+                + "configured in the preferences are in use");
+        panel.add(m_priority, gbc);
+        
         return panel;
     }
     
@@ -159,6 +179,8 @@ public class CWLNodeDialogPane extends NodeDialogPane {
             throws NotConfigurableException {
         m_settings.loadSettingsForDialog(settings);
         m_extraArguments.setText(m_settings.getExtraCWLArgs());
+        m_builtinEngine.setSelected(CWLNodeSettings.ENGINE_AUTO.equals(m_settings.getEngine()));
+        m_priority.setValue(m_settings.getPriority());
         for (int i = 0; i < m_inputs.length; i++) {
             if (specs[i] == null) {
                 try {
@@ -191,6 +213,9 @@ public class CWLNodeDialogPane extends NodeDialogPane {
             m_inputFields[i].saveAdditionalSettings(cfg);
         }
         m_settings.setExtraCWLArgs(m_extraArguments.getText());
+        m_settings.setEngine(m_builtinEngine.isSelected()
+                ? CWLNodeSettings.ENGINE_AUTO : CWLNodeSettings.ENGINE_CWL_RUNNER);
+        m_settings.setPriority((Integer)m_priority.getValue());
         m_settings.setInputs(inputs);
         m_settings.setEnabledInputs(enabledInputs);
         m_settings.saveSettings(settings);
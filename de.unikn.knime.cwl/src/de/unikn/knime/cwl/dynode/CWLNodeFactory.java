@@ -49,7 +49,6 @@
 package de.unikn.knime.cwl.dynode;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
@@ -76,7 +75,6 @@ import org.knime.node.v28.OutPortDocument.OutPort;
 import org.knime.node.v28.PortsDocument.Ports;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
-import org.yaml.snakeyaml.Yaml;
 
 import de.unikn.knime.cwl.dynode.data.types.CWLDataType;
 import de.unikn.knime.cwl.dynode.port.CWLPortDescription;
@@ -92,7 +90,10 @@ public class CWLNodeFactory extends NodeFactory<CWLNodeModel> {
     
     private String m_id;
     private String m_name;
+    private CWLToolInfo m_info;
     private String m_file;
+    private String m_label;
+    private String m_doc;
     
     private CWLPortDescription[] m_inputs;
     private CWLPortDescription[] m_outputs;
@@ -107,7 +108,7 @@ public class CWLNodeFactory extends NodeFactory<CWLNodeModel> {
     @Override
     public CWLNodeModel createNodeModel() {
         return new CWLNodeModel(
-                m_file,
+                m_id.substring(CWLNodeSetFactory.ID_PREFIX.length()), m_file,
                 m_inputs, m_outputs);
     }
 
@@ -134,26 +135,29 @@ public class CWLNodeFactory extends NodeFactory<CWLNodeModel> {
     @Override
     public void loadAdditionalFactorySettings(final ConfigRO config) throws InvalidSettingsException {
         m_id = config.getString(CWLNodeSetFactory.ID_CFG_KEY);
-        m_file = CWLRegistry.getInstance()
-                .getPathForHash(m_id.substring(CWLNodeSetFactory.ID_PREFIX.length()));
-        Yaml yaml = new Yaml();
-        File input = new File(m_file);
-        m_name = input.getName();
-        
-        Map<String, Object> cwl;
-        try (FileInputStream fis = new FileInputStream(input)) {
-            cwl = yaml.load(fis);
-        } catch (IOException e) {
-            throw new InvalidSettingsException(
-                    String.format("The CWL file \"%s\" cannot be read.", input.getAbsolutePath()), e);
+        CWLToolInfo info = CWLRegistry.getInstance().findTool(
+                m_id.substring(CWLNodeSetFactory.ID_PREFIX.length()),
+                config.getString(CWLNodeSetFactory.LOCATION_CFG_KEY, null));
+        if (info == null) {
+            throw new InvalidSettingsException(String.format("No CWL file with the ID \"%s\" is registered.", m_id));
         }
-        m_inputs = createPorts(cwl.get("inputs"));
-        m_outputs = createPorts(cwl.get("outputs"));
+        m_info = info;
+        m_file = info.getPath();
+        m_name = new File(m_file).getName();
+        m_label = info.getLabel();
+        m_doc = info.getDoc();
+        m_inputs = info.getInputs();
+        m_outputs = info.getOutputs();
 
         super.loadAdditionalFactorySettings(config);
     }
     
-    private CWLPortDescription[] createPorts(final Object ports) {
+    /**
+     * Creates the port descriptions for the inputs or outputs of a tool.
+     * @param ports the inputs or outputs object from the tool's YAML
+     * @return the port descriptions
+     */
+    public static CWLPortDescription[] createPorts(final Object ports) {
         List<CWLPortDescription> types = new ArrayList<>();
         int index = 0;
         if (ports == null) {
@@ -189,11 +193,17 @@ public class CWLNodeFactory extends NodeFactory<CWLNodeModel> {
     @Override
     public void saveAdditionalFactorySettings(final ConfigWO config) {
         config.addString(CWLNodeSetFactory.ID_CFG_KEY, m_id);
+        config.addString(CWLNodeSetFactory.LOCATION_CFG_KEY, m_file);
         super.saveAdditionalFactorySettings(config);
     }
     
     @Override
     protected NodeDescription createNodeDescription() throws SAXException, IOException, XmlException {
+        // All nodes of a tool share the description
+        return m_info.getNodeDescription(CWLNodeFactory.class, this::buildNodeDescription);
+    }
+    
+    private NodeDescription buildNodeDescription() {
         try {
             KnimeNodeDocument doc = org.knime.node.v28.KnimeNodeDocument.Factory.newInstance();
             Document domDoc = (Document)doc.getDomNode();
@@ -207,13 +217,13 @@ public class CWLNodeFactory extends NodeFactory<CWLNodeModel> {
             node.setIcon("./cwl.png");
             node.setType(KnimeNode.Type.OTHER);
             
-            node.setShortDescription("CWL Tool");
+            node.setShortDescription(m_label == null ? "CWL Tool" : m_label);
             FullDescription fullDescr = node.addNewFullDescription();
             
             // Intro
             Intro intro = fullDescr.addNewIntro();
             intro.addNewP().getDomNode()
-                .appendChild(domDoc.createTextNode("No description available"));
+                .appendChild(domDoc.createTextNode(m_doc == null ? "No description available" : m_doc));
             // Ports
             Ports ports = node.addNewPorts();
             int i = 0;
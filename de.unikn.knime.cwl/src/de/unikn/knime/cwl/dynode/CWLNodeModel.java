@@ -51,8 +51,14 @@ package de.unikn.knime.cwl.dynode;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import javax.json.Json;
 import javax.json.JsonValue;
@@ -61,6 +67,7 @@ import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
@@ -68,11 +75,21 @@ import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import de.unikn.knime.cwl.dynode.data.types.CWLDataType;
+import de.unikn.knime.cwl.dynode.data.types.CWLTypeCompatibility;
+import de.unikn.knime.cwl.dynode.data.types.CWLValueValidator;
 import de.unikn.knime.cwl.dynode.port.CWLPortDescription;
 import de.unikn.knime.cwl.dynode.port.CWLPortObject;
 import de.unikn.knime.cwl.dynode.port.CWLPortObjectSpec;
+import de.unikn.knime.cwl.execution.CWLExecutionHandle;
+import de.unikn.knime.cwl.execution.CWLExecutionMetrics;
+import de.unikn.knime.cwl.execution.CWLExecutionMetrics.Phase;
 import de.unikn.knime.cwl.execution.CWLExecutor;
 import de.unikn.knime.cwl.execution.CWLExecutor.CWLExecutionResult;
+import de.unikn.knime.cwl.execution.CWLMetrics;
+import de.unikn.knime.cwl.execution.CWLResourceScheduler;
+import de.unikn.knime.cwl.execution.CWLResultCache;
+import de.unikn.knime.cwl.execution.CWLWorkspaceManager;
 
 /**
  * Generic node model for CWL tools.
@@ -81,19 +98,29 @@ import de.unikn.knime.cwl.execution.CWLExecutor.CWLExecutionResult;
  */
 public class CWLNodeModel extends NodeModel {
 
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLNodeModel.class);
+    
+    /** Name of the flow variable containing the time in seconds the node waited for resources. */
+    static final String QUEUE_WAIT_VARIABLE = "cwl_queue_wait_seconds";
+
     private CWLNodeSettings m_settings;
+    private String m_toolId;
     private String m_file;
     private CWLPortDescription[] m_inputs;
     private CWLPortDescription[] m_outputs;
+    private final CWLNodeWorkspaces m_workspaces = new CWLNodeWorkspaces();
     
     /**
      * Creates a new {@code CWLNodeModel} with the given number of inputs and outputs.
+     * @param toolId the ID of the tool in the {@link CWLRegistry}
      * @param file the file to execute
      * @param inputs the inputs of the node
      * @param outputs the outputs of the node
      */
-    public CWLNodeModel(final String file, final CWLPortDescription[] inputs, final CWLPortDescription[] outputs) {
+    public CWLNodeModel(final String toolId, final String file,
+            final CWLPortDescription[] inputs, final CWLPortDescription[] outputs) {
         super(createPortTypesArray(inputs, true), createPortTypesArray(outputs, false));
+        m_toolId = toolId;
         m_file = file;
         m_inputs = inputs;
         m_outputs = outputs;
@@ -117,23 +144,232 @@ public class CWLNodeModel extends NodeModel {
             }
         }
         
-        // Execute with configured runner
-        CWLExecutionResult res = CWLExecutor.execute(m_file, inputs, m_settings.getExtraCWLArgs());
+        String invalid = validateInputs(m_inputs, inputs);
+        if (invalid != null) {
+            throw new InvalidSettingsException(invalid);
+        }
+        
+        AtomicLong queueWait = new AtomicLong();
+        CWLExecutionResult res = executeTool(m_toolId, m_file, inputs, m_settings.getExtraCWLArgs(),
+                m_settings.getEngine(), m_settings.getPriority(), queueWait, exec::setMessage, exec);
+        m_workspaces.add(res);
+        pushFlowVariableDouble(QUEUE_WAIT_VARIABLE, queueWait.get() / 1000.0);
         
+        long start = System.nanoTime();
         PortObject[] outputs = new PortObject[m_outputs.length];
         for (int i = 0; i < m_outputs.length; i++) {
-            outputs[i] = CWLPortObject.createOutput(m_outputs[i].getType().getType(),
+            outputs[i] = CWLPortObject.createOutput(m_outputs[i].getType(),
                     res.getOutputJson().get(m_outputs[i].getName()));
         }
+        long constructionNanos = System.nanoTime() - start;
+        CWLMetrics.getInstance().recordPhase(m_toolId, Phase.PORT_OBJECT_CONSTRUCTION, constructionNanos);
         
+        // Results restored from the cache have no metrics
+        CWLExecutionMetrics metrics = res.getMetrics();
+        if (metrics != null) {
+            metrics.add(Phase.PORT_OBJECT_CONSTRUCTION, constructionNanos);
+            pushMetrics(metrics);
+        }
         return outputs;
     }
+    
+    /**
+     * Checks the inputs of a tool against the types of its input ports, so that wrong inputs are reported before
+     * a runner is started. Inputs that are not given are left to the runner, as the tool may have defaults.
+     * @param ports the input ports of the tool
+     * @param inputs the inputs by port name
+     * @return null if all given inputs match their types, otherwise a description of the first mismatch
+     */
+    static String validateInputs(final CWLPortDescription[] ports, final Map<String, JsonValue> inputs) {
+        for (CWLPortDescription port : ports) {
+            JsonValue value = inputs.get(port.getName());
+            if (value != null) {
+                String error = CWLValueValidator.forType(port.getType()).validate(port.getName(), value);
+                if (error != null) {
+                    return "Invalid input " + error;
+                }
+            }
+        }
+        return null;
+    }
+    
+    private void pushMetrics(final CWLExecutionMetrics metrics) {
+        for (Entry<Phase, Long> e : metrics.getPhaseNanos().entrySet()) {
+            pushFlowVariableDouble(String.format("cwl_%s_ms", e.getKey().getKey()), e.getValue() / 1e6);
+        }
+        pushFlowVariableInt("cwl_exit_code", metrics.getExitCode());
+        if (metrics.getPeakRssBytes() >= 0) {
+            pushFlowVariableDouble("cwl_peak_rss_mb", metrics.getPeakRssBytes() / (1024.0 * 1024.0));
+        }
+        if (metrics.getCpuMillis() >= 0) {
+            pushFlowVariableDouble("cwl_cpu_seconds", metrics.getCpuMillis() / 1000.0);
+        }
+        if (metrics.getOutputBytes() >= 0) {
+            pushFlowVariableDouble("cwl_output_bytes", metrics.getOutputBytes());
+        }
+    }
+    
+    /**
+     * Adds the metrics of a finished execution to the {@link CWLMetrics}. Cancelled executions are not recorded.
+     */
+    private static void recordMetrics(final String toolId, final CWLExecutionHandle handle) {
+        if (handle.isDone() && !handle.isCancelled()) {
+            CWLMetrics.getInstance().record(toolId, handle.getMetrics());
+        }
+    }
+
+    /**
+     * Executes a tool, reusing the result of an identical earlier execution if the result cache is enabled.
+     * @param toolId the ID of the tool in the {@link CWLRegistry}
+     * @param location the location of the tool, tools in bundles are extracted when needed
+     * @param inputs the inputs of the tool
+     * @param extraCWLArgs extra arguments for the cwl-runner
+     * @param engine the engine setting, see {@link CWLNodeSettings#getEngine()}
+     * @param priority the priority when waiting for resources, see {@link CWLResourceScheduler}
+     * @param queueWaitMillis the time the execution waited for resources is added to it, may be null
+     * @param progressListener receives the lines the runner logs while executing, may be null
+     * @param exec the execution monitor checked for cancellation
+     * @return the result of the execution
+     * @throws IOException when the tool cannot be executed
+     * @throws InterruptedException when the thread is interrupted while waiting for the tool
+     * @throws CanceledExecutionException when the execution is cancelled
+     */
+    static CWLExecutionResult executeTool(final String toolId, final String location,
+            final Map<String, JsonValue> inputs, final String extraCWLArgs, final String engine, final int priority,
+            final AtomicLong queueWaitMillis, final Consumer<String> progressListener, final ExecutionMonitor exec)
+            throws IOException, InterruptedException, CanceledExecutionException {
+        String file = CWLBundles.getLocalPath(location);
+        // Reuse the result of an identical earlier execution if possible
+        CWLResultCache cache = CWLResultCache.getInstance();
+        String cacheKey = null;
+        if (cache.isEnabled()) {
+            cacheKey = cache.createKey(toolId, file, inputs, CWLExecutor.getRunnerArgs(extraCWLArgs));
+            CWLExecutionResult res = cache.lookup(cacheKey);
+            if (res != null) {
+                return res;
+            }
+        }
+        
+        // Execute with configured runner, the runner's log serves as progress message
+        CWLExecutionHandle handle = CWLExecutor.executeAsync(file, inputs, extraCWLArgs, progressListener,
+                CWLNodeSettings.ENGINE_AUTO.equals(engine), CWLRegistry.getInstance().getResourcesForHash(toolId),
+                priority);
+        CWLExecutionResult res;
+        try {
+            res = handle.waitFor(exec);
+        } finally {
+            if (queueWaitMillis != null) {
+                queueWaitMillis.addAndGet(handle.getQueueWaitMillis());
+            }
+            recordMetrics(toolId, handle);
+        }
+        if (cacheKey != null && res.getExitCode() == 0) {
+            try {
+                cache.store(cacheKey, res);
+            } catch (IOException e) {
+                LOGGER.warn("Could not store result in the CWL result cache", e);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Executes a tool for several input sets in a single cwl-runner call. Input sets whose result is in the
+     * result cache are not executed again.
+     * @param toolId the ID of the tool in the {@link CWLRegistry}
+     * @param location the location of the tool, tools in bundles are extracted when needed
+     * @param inputSets the inputs of the tool, one map per execution
+     * @param extraCWLArgs extra arguments for the cwl-runner
+     * @param priority the priority when waiting for resources, see {@link CWLResourceScheduler}
+     * @param queueWaitMillis the time the execution waited for resources is added to it, may be null
+     * @param progressListener receives the lines the runner logs while executing, may be null
+     * @param exec the execution monitor checked for cancellation
+     * @return the results of the executions in the order of the input sets
+     * @throws IOException when the batch cannot be executed or fails for any of the input sets
+     * @throws InterruptedException when the thread is interrupted while waiting for the tool
+     * @throws CanceledExecutionException when the execution is cancelled
+     */
+    static List<CWLExecutionResult> executeToolBatch(final String toolId, final String location,
+            final List<Map<String, JsonValue>> inputSets, final String extraCWLArgs, final int priority,
+            final AtomicLong queueWaitMillis, final Consumer<String> progressListener, final ExecutionMonitor exec)
+            throws IOException, InterruptedException, CanceledExecutionException {
+        String file = CWLBundles.getLocalPath(location);
+        CWLResultCache cache = CWLResultCache.getInstance();
+        CWLExecutionResult[] results = new CWLExecutionResult[inputSets.size()];
+        String[] cacheKeys = new String[inputSets.size()];
+        List<Integer> pending = new ArrayList<>();
+        boolean success = false;
+        try {
+            for (int i = 0; i < inputSets.size(); i++) {
+                if (cache.isEnabled()) {
+                    cacheKeys[i] = cache.createKey(toolId, file, inputSets.get(i),
+                            CWLExecutor.getRunnerArgs(extraCWLArgs));
+                    results[i] = cache.lookup(cacheKeys[i]);
+                }
+                if (results[i] == null) {
+                    pending.add(i);
+                }
+            }
+            if (pending.isEmpty()) {
+                success = true;
+                return Arrays.asList(results);
+            }
+            
+            List<Map<String, JsonValue>> batch = new ArrayList<>();
+            for (int i : pending) {
+                batch.add(inputSets.get(i));
+            }
+            CWLExecutionHandle handle = CWLExecutor.executeBatchAsync(file, batch, extraCWLArgs, progressListener,
+                    CWLRegistry.getInstance().getResourcesForHash(toolId), priority);
+            CWLExecutionResult res;
+            try {
+                res = handle.waitFor(exec);
+            } finally {
+                if (queueWaitMillis != null) {
+                    queueWaitMillis.addAndGet(handle.getQueueWaitMillis());
+                }
+                recordMetrics(toolId, handle);
+            }
+            List<CWLExecutionResult> batchResults;
+            try {
+                if (res.getExitCode() != 0) {
+                    throw new IOException("Batch execution returned exit code " + res.getExitCode());
+                }
+                batchResults = CWLExecutor.splitBatchResult(res, batch.size());
+            } catch (IOException e) {
+                CWLWorkspaceManager.getInstance().release(res.getWorkspace());
+                throw e;
+            }
+            for (int j = 0; j < pending.size(); j++) {
+                int i = pending.get(j);
+                results[i] = batchResults.get(j);
+                if (cacheKeys[i] != null) {
+                    try {
+                        cache.store(cacheKeys[i], results[i]);
+                    } catch (IOException e) {
+                        LOGGER.warn("Could not store result in the CWL result cache", e);
+                    }
+                }
+            }
+            success = true;
+            return Arrays.asList(results);
+        } finally {
+            if (!success) {
+                // Cache hits were restored into workspaces of their own
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i] != null && !pending.contains(i)) {
+                        CWLWorkspaceManager.getInstance().release(results[i].getWorkspace());
+                    }
+                }
+            }
+        }
+    }
 
     @Override
     protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
         PortObjectSpec[] outSpecs = new PortObjectSpec[m_outputs.length];
         for (int i = 0; i < m_outputs.length; i++) {
-            outSpecs[i] = new CWLPortObjectSpec(m_outputs[i].getType().getType());
+            outSpecs[i] = new CWLPortObjectSpec(m_outputs[i].getType());
         }
         
         // Check if there is a value for every input, either from a port or from the settings.
@@ -142,6 +378,15 @@ public class CWLNodeModel extends NodeModel {
                 throw new InvalidSettingsException(
                         String.format("No value given for input %s (input %d)", m_inputs[i].getName(), i));
             }
+            // Upstream CWL nodes declare the full type of their outputs
+            CWLDataType provided = inSpecs[i] instanceof CWLPortObjectSpec
+                    ? ((CWLPortObjectSpec)inSpecs[i]).getDataType() : null;
+            if (provided != null && !CWLTypeCompatibility.isCompatible(provided, m_inputs[i].getType())) {
+                throw new InvalidSettingsException(String.format(
+                        "Input %s (input %d) expects %s, but the connected output provides %s",
+                        m_inputs[i].getName(), i, m_inputs[i].getType().toHumanReadableString(),
+                        provided.toHumanReadableString()));
+            }
         }
         return outSpecs;
     }
@@ -149,13 +394,13 @@ public class CWLNodeModel extends NodeModel {
     @Override
     protected void loadInternals(final File nodeInternDir, final ExecutionMonitor exec)
             throws IOException, CanceledExecutionException {
-        
+        m_workspaces.load(nodeInternDir);
     }
 
     @Override
     protected void saveInternals(final File nodeInternDir, final ExecutionMonitor exec)
             throws IOException, CanceledExecutionException {
-        
+        m_workspaces.save(nodeInternDir);
     }
 
     @Override
@@ -176,6 +421,13 @@ public class CWLNodeModel extends NodeModel {
 
     @Override
     protected void reset() {
+        // Downstream nodes referencing the output files have been reset already
+        m_workspaces.deleteAll();
+    }
+    
+    @Override
+    protected void onDispose() {
+        m_workspaces.releaseAll();
     }
 
     private static final PortType[] createPortTypesArray(final CWLPortDescription[] ports, final boolean optional) {
@@ -67,12 +67,16 @@ public class CWLNodeSetFactory implements NodeSetFactory {
     /** Config entry key for the factory id. */
     public static final String ID_CFG_KEY = "id";
     
+    /** Config entry key for the location of the CWL file, used to find it before the registry is populated. */
+    public static final String LOCATION_CFG_KEY = "location";
+    
     /** Prefix for CWL file ids. */
     public static final String ID_PREFIX = "org.knime.cwl.";
 
     @Override
     public String getCategoryPath(final String id) {
-        return "/cwl";
+        String category = CWLRegistry.getInstance().getCategoryForHash(id.substring(ID_PREFIX.length()));
+        return category.isEmpty() ? "/cwl" : "/cwl/" + category;
     }
     
     @Override
@@ -95,6 +99,7 @@ public class CWLNodeSetFactory implements NodeSetFactory {
     public ConfigRO getAdditionalSettings(final String id) {
         NodeSettings ns = new NodeSettings("");
         ns.addString(ID_CFG_KEY, id);
+        ns.addString(LOCATION_CFG_KEY, CWLRegistry.getInstance().getPathForHash(id.substring(ID_PREFIX.length())));
         return ns;
     }
 }
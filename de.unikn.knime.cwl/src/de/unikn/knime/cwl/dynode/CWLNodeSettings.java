@@ -56,6 +56,8 @@ import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.config.Config;
 
+import de.unikn.knime.cwl.execution.CWLResourceScheduler;
+
 /**
  * Settings for CWL nodes.
  * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
@@ -67,11 +69,20 @@ public class CWLNodeSettings {
     private static final String CFG_ENABLED_INPUTS = "enabledInputs";
     private static final String CFG_EDITOR_CONFIGS = "editorConfigs";
     private static final String CFG_EXTRA_CWL_ARGS = "extraArgs";
+    private static final String CFG_ENGINE = "engine";
+    private static final String CFG_PRIORITY = "priority";
+    
+    /** Engine setting for executing the tool with the cwl-runner configured in the preferences. */
+    public static final String ENGINE_CWL_RUNNER = "cwl-runner";
+    /** Engine setting for executing simple tools with the built-in engine and all others with the cwl-runner. */
+    public static final String ENGINE_AUTO = "auto";
     
     private String[] m_inputs;
     private boolean[] m_enabledInputs;
     private Config m_editorConfigs = new NodeSettings(CFG_EDITOR_CONFIGS);
     private String m_extraCWLArgs = "";
+    private String m_engine = ENGINE_CWL_RUNNER;
+    private int m_priority = CWLResourceScheduler.PRIORITY_NORMAL;
     
     /**
      * Creates a new instance of {@code CWLNodeSettings}.
@@ -97,6 +108,34 @@ public class CWLNodeSettings {
         m_extraCWLArgs = extraCWLArgs;
     }
     
+    /**
+     * @return the engine executing the tool, either {@link #ENGINE_CWL_RUNNER} or {@link #ENGINE_AUTO}
+     */
+    public String getEngine() {
+        return m_engine;
+    }
+    
+    /**
+     * @param engine the engine executing the tool, either {@link #ENGINE_CWL_RUNNER} or {@link #ENGINE_AUTO}
+     */
+    public void setEngine(final String engine) {
+        m_engine = engine;
+    }
+    
+    /**
+     * @return the priority of the node's executions when waiting for resources
+     */
+    public int getPriority() {
+        return m_priority;
+    }
+    
+    /**
+     * @param priority the priority of the node's executions when waiting for resources
+     */
+    public void setPriority(final int priority) {
+        m_priority = priority;
+    }
+    
     /**
      * @return the input values configured in the settings dialog
      */
@@ -147,6 +186,8 @@ public class CWLNodeSettings {
         settings.addStringArray(CFG_INPUTS, m_inputs);
         settings.addBooleanArray(CFG_ENABLED_INPUTS, m_enabledInputs);
         settings.addString(CFG_EXTRA_CWL_ARGS, m_extraCWLArgs);
+        settings.addString(CFG_ENGINE, m_engine);
+        settings.addInt(CFG_PRIORITY, m_priority);
         Config cfg = settings.addConfig(CFG_EDITOR_CONFIGS);
         m_editorConfigs.copyTo(cfg);
     }
@@ -161,6 +202,9 @@ public class CWLNodeSettings {
         m_enabledInputs = settings.getBooleanArray(CFG_ENABLED_INPUTS);
         m_editorConfigs = settings.getConfig(CFG_EDITOR_CONFIGS);
         m_extraCWLArgs = settings.getString(CFG_EXTRA_CWL_ARGS);
+        // Added later, older workflows always use the cwl-runner
+        m_engine = settings.getString(CFG_ENGINE, ENGINE_CWL_RUNNER);
+        m_priority = settings.getInt(CFG_PRIORITY, CWLResourceScheduler.PRIORITY_NORMAL);
     }
 
     /**
@@ -171,6 +215,8 @@ public class CWLNodeSettings {
         m_inputs = settings.getStringArray(CFG_INPUTS, new String[0]);
         m_enabledInputs = settings.getBooleanArray(CFG_ENABLED_INPUTS, new boolean[0]);
         m_extraCWLArgs = settings.getString(CFG_EXTRA_CWL_ARGS, "");
+        m_engine = settings.getString(CFG_ENGINE, ENGINE_CWL_RUNNER);
+        m_priority = settings.getInt(CFG_PRIORITY, CWLResourceScheduler.PRIORITY_NORMAL);
         try {
             m_editorConfigs = settings.getConfig(CFG_EDITOR_CONFIGS);
         } catch (InvalidSettingsException e) {
@@ -0,0 +1,144 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.unikn.knime.cwl.execution.CWLExecutor.CWLExecutionResult;
+import de.unikn.knime.cwl.execution.CWLWorkspaceManager;
+
+/**
+ * The workspaces containing the output files of a node. They are in use as long as the node is executed.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLNodeWorkspaces {
+    
+    /** File in the node's internals directory listing its workspaces. */
+    private static final String WORKSPACES_FILE = "workspaces.txt";
+    
+    private final Set<Path> m_workspaces = new LinkedHashSet<>();
+    
+    /**
+     * Takes over the workspace of a result.
+     * @param result the result of an execution for the node
+     */
+    synchronized void add(final CWLExecutionResult result) {
+        if (result.getWorkspace() != null) {
+            m_workspaces.add(result.getWorkspace());
+        }
+    }
+    
+    /**
+     * Deletes all workspaces, called when the node is reset.
+     */
+    void deleteAll() {
+        for (Path ws : clear()) {
+            CWLWorkspaceManager.getInstance().delete(ws);
+        }
+    }
+    
+    /**
+     * Releases all workspaces, called when the node is disposed.
+     */
+    void releaseAll() {
+        for (Path ws : clear()) {
+            CWLWorkspaceManager.getInstance().release(ws);
+        }
+    }
+    
+    private synchronized List<Path> clear() {
+        List<Path> workspaces = new ArrayList<>(m_workspaces);
+        m_workspaces.clear();
+        return workspaces;
+    }
+    
+    /**
+     * Saves the list of workspaces and keeps them beyond the current session.
+     * @param nodeInternDir the node's internals directory
+     * @throws IOException when the list cannot be written
+     */
+    synchronized void save(final File nodeInternDir) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Path ws : m_workspaces) {
+            CWLWorkspaceManager.getInstance().keep(ws);
+            lines.add(ws.toString());
+        }
+        Files.write(new File(nodeInternDir, WORKSPACES_FILE).toPath(), lines, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Loads the list of workspaces of a saved node and marks them as in use.
+     * @param nodeInternDir the node's internals directory
+     * @throws IOException when the list cannot be read
+     */
+    synchronized void load(final File nodeInternDir) throws IOException {
+        File file = new File(nodeInternDir, WORKSPACES_FILE);
+        if (!file.isFile()) {
+            // Saved before workspaces were tracked
+            return;
+        }
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                Path ws = Paths.get(line.trim());
+                CWLWorkspaceManager.getInstance().adopt(ws);
+                m_workspaces.add(ws);
+            }
+        }
+    }
+}
@@ -50,21 +50,31 @@ package de.unikn.knime.cwl.dynode;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.math.BigInteger;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.knime.core.node.NodeLogger;
-import org.yaml.snakeyaml.Yaml;
 
+import de.unikn.knime.cwl.Activator;
+import de.unikn.knime.cwl.execution.CWLResourceRequirement;
 import de.unikn.knime.cwl.preferences.Preferences;
 
 /**
@@ -98,59 +108,246 @@ public final class CWLRegistry {
         return Preferences.getCWLRootPaths();
     }
     
-    private Map<String, String> m_files = null;
+    private static final String INDEX_FILE = "tool-index.json";
+    
+    private static final long RELOAD_DELAY_MILLIS = 1000;
+    
+    // Readers only ever see complete snapshots, rescans publish a new one without blocking them
+    private final AtomicReference<Snapshot> m_snapshot = new AtomicReference<>();
+    
+    // Serializes scans
+    private final Object m_scanLock = new Object();
+    
+    // Readers only wait for it until the first snapshot is published
+    private final Object m_initLock = new Object();
+    
+    private CWLToolIndex m_index;
+    
+    private CWLFolderWatcher m_watcher;
+    
+    private boolean m_watching = true;
+    
+    private final ScheduledExecutorService m_reloadExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cwl-registry-reload");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    private final Object m_reloadLock = new Object();
+    
+    private ScheduledFuture<?> m_pendingReload;
+    
+    // The scan started in the background when the registry was initialized from the index
+    private volatile Job m_initialScan;
+    
+    // Tools looked up individually while the initial scan is running
+    private final Map<String, CWLToolInfo> m_onDemand = new ConcurrentHashMap<>();
+    
+    /**
+     * Returns the current snapshot of the registered CWL files, initializing the registry on first access.
+     * @return the snapshot
+     */
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = m_snapshot.get();
+        if (snapshot == null) {
+            synchronized (m_initLock) {
+                snapshot = m_snapshot.get();
+                if (snapshot == null) {
+                    initialize();
+                    snapshot = m_snapshot.get();
+                }
+            }
+        }
+        return snapshot;
+    }
     
     /**
-     * Reads all registered CWL directories and builds a map with MD5 hashes as keys and file paths as values.
-     * @return a map with MD5 hashes of the files as keys and the file paths as values.
+     * Publishes the tools of the persistent {@link CWLToolIndex} right away and scans the CWL directories in a
+     * background job, so that slow storage does not block the start-up. Without an index, e.g. on the first
+     * start, there is nothing to show yet and the directories are scanned right away.
      */
-    private Map<String, String> getNamedFiles() {
-        if (m_files == null) {
-            m_files = new HashMap<>();
-            for (String folder : getCWLFolders()) {
-                File root = new File(folder);
-                if (root.exists()) {
-                    File[] cwls = root.listFiles((dir, name) -> name.endsWith(".cwl"));
-                    for (File cwl : cwls) {
-                        try {
-                            String md5 = getFileID(cwl);
-                            m_files.put(md5, cwl.getAbsolutePath());
-                        } catch (IOException | NoSuchAlgorithmException e) {
-                            LOGGER.error("Could not load CWL file " + cwl.getAbsolutePath());
-                            LOGGER.error(e);
-                        }
+    private void initialize() {
+        synchronized (m_scanLock) {
+            m_index = new CWLToolIndex(getIndexFile());
+            m_index.load();
+        }
+        Collection<CWLToolInfo> indexed = m_index.getEntries();
+        if (indexed.isEmpty()) {
+            scan(null);
+            return;
+        }
+        List<Path> roots = getRoots();
+        Map<String, CWLToolInfo> tools = new HashMap<>();
+        Map<String, String> categories = new HashMap<>();
+        for (CWLToolInfo info : indexed) {
+            if (tools.putIfAbsent(info.getId(), info) == null) {
+                categories.put(info.getId(), CWLFolderScanner.getCategory(info.getPath(), roots));
+            }
+        }
+        m_snapshot.set(new Snapshot(tools, categories));
+        
+        Job job = new Job("Scanning CWL folders") {
+            @Override
+            protected IStatus run(final IProgressMonitor monitor) {
+                monitor.beginTask("Scanning CWL folders", IProgressMonitor.UNKNOWN);
+                AtomicInteger count = new AtomicInteger();
+                Set<String> before = getSnapshot().m_tools.keySet();
+                scan(location -> {
+                    synchronized (monitor) {
+                        monitor.subTask(String.format("%d CWL files found", count.incrementAndGet()));
+                        monitor.worked(1);
                     }
-                } else {
-                    LOGGER.warn(String.format("Configured CWL folder \"%s\" does not exist.", root.getAbsolutePath()));
+                });
+                m_onDemand.clear();
+                if (!before.equals(getSnapshot().m_tools.keySet())) {
+                    LOGGER.info("The registered CWL tools changed since the last start, "
+                            + "restart KNIME to update the node repository.");
+                }
+                monitor.done();
+                return Status.OK_STATUS;
+            }
+        };
+        job.setPriority(Job.LONG);
+        m_initialScan = job;
+        job.schedule();
+    }
+    
+    private static List<Path> getRoots() {
+        List<Path> roots = new ArrayList<>();
+        for (String folder : getCWLFolders()) {
+            File root = new File(folder);
+            if (root.exists()) {
+                roots.add(root.toPath());
+            } else {
+                LOGGER.warn(String.format("Configured CWL folder \"%s\" does not exist.", root.getAbsolutePath()));
+            }
+        }
+        return roots;
+    }
+    
+    /**
+     * Scans all registered CWL directories and replaces the registered tools. Files that did not change since
+     * they were last parsed are taken from the persistent {@link CWLToolIndex} instead of being parsed again.
+     * @param progressListener receives the location of every registered file, may be null
+     */
+    private void scan(final Consumer<String> progressListener) {
+        synchronized (m_scanLock) {
+            CWLFolderScanner scanner = new CWLFolderScanner(m_index, Preferences.getScanDepth(),
+                    Preferences.getScanIncludes(), Preferences.getScanExcludes());
+            scanner.setProgressListener(progressListener);
+            scanner.scan(getRoots());
+            List<String> paths = scanner.getPaths();
+            LOGGER.debug(String.format("Registered %d CWL files, %d of them had to be parsed",
+                    paths.size(), scanner.getParsedCount()));
+            m_index.retain(paths);
+            m_index.save();
+            m_snapshot.set(new Snapshot(scanner.getTools(), scanner.getCategories()));
+            watch(scanner.getDirectories());
+        }
+    }
+    
+    /**
+     * Looks up a tool that may not have been found by the background scan yet. If the location of the tool is
+     * known, e.g. from a saved workflow, only that file is read, otherwise the lookup waits for the scan.
+     * @param hash the hash of the file
+     * @param location the location the tool had when the workflow was saved, may be null
+     * @return the information about the tool or null if it is not registered
+     */
+    CWLToolInfo findTool(final String hash, final String location) {
+        CWLToolInfo info = getToolForHash(hash);
+        Job initialScan = m_initialScan;
+        if (info != null || initialScan == null || initialScan.getState() == Job.NONE) {
+            return info;
+        }
+        if (location != null) {
+            try {
+                info = CWLFolderScanner.parse(location);
+                if (hash.equals(info.getId())) {
+                    m_onDemand.put(hash, info);
+                    return info;
                 }
+            } catch (IOException e) {
+                LOGGER.debug(String.format("Could not look up the CWL file \"%s\"", location), e);
+            }
+        }
+        try {
+            initialScan.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return getToolForHash(hash);
+    }
+    
+    private void watch(final List<Path> dirs) {
+        if (!m_watching) {
+            return;
+        }
+        if (m_watcher == null) {
+            try {
+                m_watcher = new CWLFolderWatcher(this::scheduleReload);
+            } catch (IOException e) {
+                LOGGER.warn("Cannot watch the CWL folders, changed CWL files are only picked up after a restart", e);
+                m_watching = false;
+                return;
+            }
+        }
+        m_watcher.watch(dirs);
+    }
+    
+    /**
+     * Rescans the CWL directories after a short delay. Further calls within the delay postpone the rescan, so a
+     * burst of changes, e.g. when a folder of tools is copied, only causes a single rescan.
+     */
+    public void scheduleReload() {
+        synchronized (m_reloadLock) {
+            if (m_reloadExecutor.isShutdown()) {
+                return;
+            }
+            if (m_pendingReload != null) {
+                m_pendingReload.cancel(false);
             }
+            m_pendingReload = m_reloadExecutor.schedule(this::reload, RELOAD_DELAY_MILLIS, TimeUnit.MILLISECONDS);
         }
-        return m_files;
-    }
-    
-    private String getFileID(final File f) throws IOException, NoSuchAlgorithmException {
-        MessageDigest md = MessageDigest.getInstance("MD5");
-        String id = null;
-        try (InputStream is = Files.newInputStream(Paths.get(f.toURI()));
-             DigestInputStream dis = new DigestInputStream(is, md)) {
-            /* Read decorated stream (dis) to EOF as normal... */
-            Yaml cwlYaml = new Yaml();
-            Map<String, Object> cwl = cwlYaml.load(dis);
-            id = (String)cwl.get("id");
+    }
+    
+    /**
+     * Rescans the CWL directories. Tools whose files were removed are unregistered and the ports of changed tools
+     * are read again by nodes created afterwards.
+     */
+    public void reload() {
+        getSnapshot();
+        try {
+            scan(null);
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not rescan the CWL folders", e);
         }
-        if (id == null) {
-            byte[] digest = md.digest();
-            BigInteger bigInt = new BigInteger(1, digest);
-            id = bigInt.toString(16);
+    }
+    
+    /**
+     * Stops watching the CWL directories for changes.
+     */
+    public void stopWatching() {
+        m_reloadExecutor.shutdownNow();
+        synchronized (m_scanLock) {
+            m_watching = false;
+            if (m_watcher != null) {
+                m_watcher.close();
+                m_watcher = null;
+            }
         }
-        return id;
+    }
+    
+    private static File getIndexFile() {
+        // Outside of a running workbench, e.g. in tests, the index is not persisted
+        Activator activator = Activator.getDefault();
+        return activator == null ? null : new File(activator.getStateLocation().toFile(), INDEX_FILE);
     }
     
     /**
      * @return a set of hashes of the registered CWL files.
      */
     public Set<String> getHashes() {
-        return Collections.unmodifiableSet(getNamedFiles().keySet());
+        return getSnapshot().m_tools.keySet();
     }
     
     /**
@@ -159,6 +356,51 @@ public final class CWLRegistry {
      * @return the file path matching the hash
      */
     public String getPathForHash(final String hash) {
-        return getNamedFiles().get(hash);
+        CWLToolInfo info = getToolForHash(hash);
+        return info == null ? null : info.getPath();
+    }
+    
+    /**
+     * Retrieves the category of the tool with the given hash, which is the path of the folder it was found in
+     * relative to the CWL directory.
+     * @param hash the hash of the file
+     * @return the category path without leading slash, an empty string if the tool is not in a subfolder
+     */
+    public String getCategoryForHash(final String hash) {
+        return getSnapshot().m_categories.getOrDefault(hash, "");
+    }
+    
+    /**
+     * Retrieves the indexed information about the tool with the given hash.
+     * @param hash the hash of the file
+     * @return the information or null if the hash is unknown
+     */
+    CWLToolInfo getToolForHash(final String hash) {
+        CWLToolInfo info = getSnapshot().m_tools.get(hash);
+        return info == null ? m_onDemand.get(hash) : info;
+    }
+    
+    /**
+     * Retrieves the resources the tool with the given hash declares in its {@code ResourceRequirement}.
+     * @param hash the hash of the file
+     * @return the resources of the tool, {@link CWLResourceRequirement#DEFAULT} if the hash is unknown
+     */
+    public CWLResourceRequirement getResourcesForHash(final String hash) {
+        CWLToolInfo info = getToolForHash(hash);
+        return info == null ? CWLResourceRequirement.DEFAULT : info.getResources();
+    }
+    
+    /**
+     * An immutable view of the registered CWL files at one point in time.
+     */
+    private static final class Snapshot {
+        
+        private final Map<String, CWLToolInfo> m_tools;
+        private final Map<String, String> m_categories;
+        
+        Snapshot(final Map<String, CWLToolInfo> tools, final Map<String, String> categories) {
+            m_tools = Collections.unmodifiableMap(new HashMap<>(tools));
+            m_categories = Collections.unmodifiableMap(new HashMap<>(categories));
+        }
     }
 }
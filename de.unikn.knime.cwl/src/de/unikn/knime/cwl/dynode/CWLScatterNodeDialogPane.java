@@ -0,0 +1,241 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.NotConfigurableException;
+import org.knime.core.node.port.PortObjectSpec;
+
+import de.unikn.knime.cwl.dynode.port.CWLPortDescription;
+
+/**
+ * Settings panel for CWL table scatter nodes.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public class CWLScatterNodeDialogPane extends NodeDialogPane {
+
+    private static final String NO_COLUMN = "";
+    
+    private static final String[] FAILURE_POLICIES = new String[] {
+            CWLScatterNodeSettings.FAILURE_FAIL_NODE,
+            CWLScatterNodeSettings.FAILURE_MISSING_VALUES,
+            CWLScatterNodeSettings.FAILURE_SKIP_ROW
+    };
+    
+    private static final String[] FAILURE_POLICY_LABELS = new String[] {
+            "Fail the node",
+            "Output missing values and the error message",
+            "Skip the row"
+    };
+    
+    private CWLPortDescription[] m_inputs;
+    private JComboBox<String>[] m_inputColumns;
+    
+    private JSpinner m_parallelism = new JSpinner(new SpinnerNumberModel(1, 1, 1024, 1));
+    private JSpinner m_batchSize = new JSpinner(new SpinnerNumberModel(1, 1, 100000, 1));
+    private JCheckBox m_keepOrder = new JCheckBox("Keep the order of the input rows");
+    private JComboBox<String> m_failurePolicy = new JComboBox<>(FAILURE_POLICY_LABELS);
+    private JTextField m_extraArguments = new JTextField();
+    private JCheckBox m_builtinEngine = new JCheckBox("Execute simple command line tools without cwl-runner");
+    
+    private CWLScatterNodeSettings m_settings;
+    
+    /**
+     * Creates a new instance of {@code CWLScatterNodeDialogPane}.
+     * @param inputs the inputs to the CWL file represented by this panel
+     */
+    @SuppressWarnings("unchecked")
+    public CWLScatterNodeDialogPane(final CWLPortDescription[] inputs) {
+        m_inputs = inputs;
+        m_settings = new CWLScatterNodeSettings(inputs.length);
+        m_inputColumns = new JComboBox[inputs.length];
+        addTab("Inputs", createInputTab());
+        addTab("Execution", createExecutionTab());
+    }
+    
+    private JPanel createInputTab() {
+        JPanel panel = new JPanel(new GridBagLayout());
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.weightx = 1;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        for (CWLPortDescription port : m_inputs) {
+            gbc.gridx = 0;
+            gbc.weightx = 1;
+            panel.add(new JLabel(String.format("%s%s:", port.getName(),
+                    port.getType().isOptional() ? " (optional)" : "")), gbc);
+            gbc.gridx++;
+            gbc.weightx = 2;
+            m_inputColumns[port.getIndex()] = new JComboBox<>();
+            panel.add(m_inputColumns[port.getIndex()], gbc);
+            gbc.gridy++;
+        }
+        return panel;
+    }
+    
+    private JPanel createExecutionTab() {
+        JPanel panel = new JPanel(new GridBagLayout());
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.weightx = 1;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        
+        panel.add(new JLabel("Concurrent invocations:"), gbc);
+        gbc.gridx++;
+        gbc.weightx = 2;
+        panel.add(m_parallelism, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy++;
+        gbc.weightx = 1;
+        panel.add(new JLabel("Rows per cwl-runner call:"), gbc);
+        gbc.gridx++;
+        gbc.weightx = 2;
+        m_batchSize.setToolTipText("Rows of a batch are executed by a single cwl-runner call running a generated "
+                + "scatter workflow, the built-in engine is not used for batches");
+        panel.add(m_batchSize, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy++;
+        gbc.weightx = 1;
+        panel.add(new JLabel("If an invocation fails:"), gbc);
+        gbc.gridx++;
+        gbc.weightx = 2;
+        panel.add(m_failurePolicy, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy++;
+        gbc.weightx = 1;
+        panel.add(new JLabel("Extra cwl-runner arguments:"), gbc);
+        gbc.gridx++;
+        gbc.weightx = 2;
+        panel.add(m_extraArguments, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy++;
+        gbc.gridwidth = 2;
+        panel.add(m_keepOrder, gbc);
+        gbc.gridy++;
+        m_builtinEngine.setToolTipText("Tools with requirements, hints or JavaScript expressions and nodes with "
+                + "extra cwl-runner arguments are always executed by the cwl-runner");
+        panel.add(m_builtinEngine, gbc);
+        
+        return panel;
+    }
+    
+    @Override
+    protected void loadSettingsFrom(final NodeSettingsRO settings, final PortObjectSpec[] specs)
+            throws NotConfigurableException {
+        DataTableSpec spec = (DataTableSpec)specs[0];
+        if (spec == null) {
+            throw new NotConfigurableException("No input table available");
+        }
+        m_settings.loadSettingsForDialog(settings);
+        String[] columns = m_settings.getInputColumns();
+        for (int i = 0; i < m_inputs.length; i++) {
+            m_inputColumns[i].removeAllItems();
+            m_inputColumns[i].addItem(NO_COLUMN);
+            for (DataColumnSpec col : spec) {
+                m_inputColumns[i].addItem(col.getName());
+            }
+            String selected = i < columns.length ? columns[i] : NO_COLUMN;
+            if (selected.isEmpty() && spec.containsName(m_inputs[i].getName())) {
+                selected = m_inputs[i].getName();
+            }
+            m_inputColumns[i].setSelectedItem(selected);
+        }
+        m_parallelism.setValue(m_settings.getParallelism());
+        m_batchSize.setValue(m_settings.getBatchSize());
+        m_keepOrder.setSelected(m_settings.isKeepOrder());
+        for (int i = 0; i < FAILURE_POLICIES.length; i++) {
+            if (FAILURE_POLICIES[i].equals(m_settings.getFailurePolicy())) {
+                m_failurePolicy.setSelectedIndex(i);
+            }
+        }
+        m_extraArguments.setText(m_settings.getExtraCWLArgs());
+        m_builtinEngine.setSelected(CWLNodeSettings.ENGINE_AUTO.equals(m_settings.getEngine()));
+    }
+    
+    @Override
+    protected void saveSettingsTo(final NodeSettingsWO settings) throws InvalidSettingsException {
+        String[] columns = new String[m_inputs.length];
+        for (int i = 0; i < m_inputs.length; i++) {
+            Object selected = m_inputColumns[i].getSelectedItem();
+            columns[i] = selected == null ? NO_COLUMN : selected.toString();
+        }
+        m_settings.setInputColumns(columns);
+        m_settings.setParallelism((Integer)m_parallelism.getValue());
+        m_settings.setBatchSize((Integer)m_batchSize.getValue());
+        m_settings.setKeepOrder(m_keepOrder.isSelected());
+        m_settings.setFailurePolicy(FAILURE_POLICIES[m_failurePolicy.getSelectedIndex()]);
+        m_settings.setExtraCWLArgs(m_extraArguments.getText());
+        m_settings.setEngine(m_builtinEngine.isSelected()
+                ? CWLNodeSettings.ENGINE_AUTO : CWLNodeSettings.ENGINE_CWL_RUNNER);
+        m_settings.saveSettings(settings);
+    }
+}
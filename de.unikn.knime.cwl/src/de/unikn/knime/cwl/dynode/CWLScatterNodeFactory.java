@@ -0,0 +1,218 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+
+import org.apache.xmlbeans.XmlException;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeDescription;
+import org.knime.core.node.NodeDescription28Proxy;
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeView;
+import org.knime.core.node.config.ConfigRO;
+import org.knime.core.node.config.ConfigWO;
+import org.knime.node.v28.FullDescriptionDocument.FullDescription;
+import org.knime.node.v28.InPortDocument.InPort;
+import org.knime.node.v28.IntroDocument.Intro;
+import org.knime.node.v28.KnimeNodeDocument;
+import org.knime.node.v28.KnimeNodeDocument.KnimeNode;
+import org.knime.node.v28.OutPortDocument.OutPort;
+import org.knime.node.v28.PortsDocument.Ports;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import de.unikn.knime.cwl.dynode.port.CWLPortDescription;
+
+/**
+ * A node factory for table scatter nodes from CWL files.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public class CWLScatterNodeFactory extends NodeFactory<CWLScatterNodeModel> {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLScatterNodeFactory.class);
+    
+    private String m_id;
+    private String m_name;
+    private CWLToolInfo m_info;
+    private String m_file;
+    private String m_label;
+    private String m_doc;
+    
+    private CWLPortDescription[] m_inputs;
+    private CWLPortDescription[] m_outputs;
+    
+    /**
+     * Default constructor that enables lazy loading.
+     */
+    public CWLScatterNodeFactory() {
+        super(true);
+    }
+    
+    @Override
+    public CWLScatterNodeModel createNodeModel() {
+        return new CWLScatterNodeModel(
+                m_id.substring(CWLScatterNodeSetFactory.ID_PREFIX.length()), m_file,
+                m_inputs, m_outputs);
+    }
+
+    @Override
+    protected int getNrNodeViews() {
+        return 0;
+    }
+
+    @Override
+    public NodeView<CWLScatterNodeModel> createNodeView(final int viewIndex, final CWLScatterNodeModel nodeModel) {
+        return null;
+    }
+
+    @Override
+    protected boolean hasDialog() {
+        return true;
+    }
+
+    @Override
+    protected NodeDialogPane createNodeDialogPane() {
+        return new CWLScatterNodeDialogPane(m_inputs);
+    }
+    
+    @Override
+    public void loadAdditionalFactorySettings(final ConfigRO config) throws InvalidSettingsException {
+        m_id = config.getString(CWLNodeSetFactory.ID_CFG_KEY);
+        CWLToolInfo info = CWLRegistry.getInstance().findTool(
+                m_id.substring(CWLScatterNodeSetFactory.ID_PREFIX.length()),
+                config.getString(CWLNodeSetFactory.LOCATION_CFG_KEY, null));
+        if (info == null) {
+            throw new InvalidSettingsException(String.format("No CWL file with the ID \"%s\" is registered.", m_id));
+        }
+        m_info = info;
+        m_file = info.getPath();
+        m_name = new File(m_file).getName() + " (Table Scatter)";
+        m_label = info.getLabel();
+        m_doc = info.getDoc();
+        m_inputs = info.getInputs();
+        m_outputs = info.getOutputs();
+
+        super.loadAdditionalFactorySettings(config);
+    }
+    
+    @Override
+    public void saveAdditionalFactorySettings(final ConfigWO config) {
+        config.addString(CWLNodeSetFactory.ID_CFG_KEY, m_id);
+        config.addString(CWLNodeSetFactory.LOCATION_CFG_KEY, m_file);
+        super.saveAdditionalFactorySettings(config);
+    }
+    
+    @Override
+    protected NodeDescription createNodeDescription() throws SAXException, IOException, XmlException {
+        // All nodes of a tool share the description
+        return m_info.getNodeDescription(CWLScatterNodeFactory.class, this::buildNodeDescription);
+    }
+    
+    private NodeDescription buildNodeDescription() {
+        try {
+            KnimeNodeDocument doc = org.knime.node.v28.KnimeNodeDocument.Factory.newInstance();
+            Document domDoc = (Document)doc.getDomNode();
+
+            // Node
+            KnimeNode node = doc.addNewKnimeNode();
+            node.setDeprecated(false);
+
+            node.setName(m_name);
+            
+            node.setIcon("./cwl.png");
+            node.setType(KnimeNode.Type.OTHER);
+            
+            node.setShortDescription(m_label == null
+                    ? "CWL Tool executed once per table row" : m_label + " (executed once per table row)");
+            FullDescription fullDescr = node.addNewFullDescription();
+            
+            // Intro
+            Intro intro = fullDescr.addNewIntro();
+            intro.addNewP().getDomNode()
+                .appendChild(domDoc.createTextNode("Executes the tool once for every row of the input table. "
+                        + "The values of the tool's inputs are taken from the selected columns, invocations run "
+                        + "concurrently. Every tool output becomes a JSON column of the output table."));
+            if (m_doc != null) {
+                intro.addNewP().getDomNode().appendChild(domDoc.createTextNode(m_doc));
+            }
+            
+            StringBuilder inputs = new StringBuilder("Tool inputs: ");
+            for (int i = 0; i < m_inputs.length; i++) {
+                inputs.append(i > 0 ? ", " : "").append(String.format("%s (%s)",
+                        m_inputs[i].getName(), m_inputs[i].getType().toHumanReadableString()));
+            }
+            intro.addNewP().getDomNode().appendChild(domDoc.createTextNode(inputs.toString()));
+            
+            // Ports
+            Ports ports = node.addNewPorts();
+            InPort ip = ports.addNewInPort();
+            ip.setIndex(BigInteger.ZERO);
+            ip.setName("Inputs");
+            ip.getDomNode().appendChild(domDoc.createTextNode(
+                    "A table with one row per invocation and columns for the tool's inputs."));
+            
+            OutPort op = ports.addNewOutPort();
+            op.setIndex(BigInteger.ZERO);
+            op.setName("Outputs");
+            op.getDomNode().appendChild(domDoc.createTextNode(
+                    "A table with one JSON column per tool output and the row keys of the input table."));
+
+            return new NodeDescription28Proxy(doc);
+        } catch (Exception e) {
+            LOGGER.error("Dynamic node description instantiation failed", e);
+        }
+        return null;
+    }
+}
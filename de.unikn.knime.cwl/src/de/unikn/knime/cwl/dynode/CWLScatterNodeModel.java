@@ -0,0 +1,473 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import org.knime.core.data.BooleanValue;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.LongValue;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.json.JSONCell;
+import org.knime.core.data.json.JSONCellFactory;
+import org.knime.core.data.json.JSONValue;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+
+import de.unikn.knime.cwl.dynode.data.types.CWLDataType;
+import de.unikn.knime.cwl.dynode.data.types.CWLType;
+import de.unikn.knime.cwl.dynode.data.types.CWLUnionType;
+import de.unikn.knime.cwl.dynode.port.CWLPortDescription;
+import de.unikn.knime.cwl.execution.CWLExecutionMetrics.Phase;
+import de.unikn.knime.cwl.execution.CWLExecutor.CWLExecutionResult;
+import de.unikn.knime.cwl.execution.CWLMetrics;
+import de.unikn.knime.cwl.execution.CWLResourceScheduler;
+
+/**
+ * Node model running a CWL tool once per row of the input table. The invocations run concurrently,
+ * their outputs are written to JSON columns as they finish. Optionally, several rows are executed
+ * by a single cwl-runner call.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public class CWLScatterNodeModel extends NodeModel {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLScatterNodeModel.class);
+    
+    /** Name of the column containing the error message of failed invocations. */
+    private static final String ERROR_COLUMN = "Error";
+    
+    /** Interval in which the node checks for cancellation while waiting for invocations. */
+    private static final long POLL_INTERVAL_MILLIS = 200;
+    
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    
+    private CWLScatterNodeSettings m_settings;
+    private String m_toolId;
+    private String m_file;
+    private CWLPortDescription[] m_inputs;
+    private CWLPortDescription[] m_outputs;
+    private final CWLNodeWorkspaces m_workspaces = new CWLNodeWorkspaces();
+    
+    /**
+     * Creates a new {@code CWLScatterNodeModel}.
+     * @param toolId the ID of the tool in the {@link CWLRegistry}
+     * @param file the file to execute
+     * @param inputs the inputs of the tool
+     * @param outputs the outputs of the tool
+     */
+    public CWLScatterNodeModel(final String toolId, final String file,
+            final CWLPortDescription[] inputs, final CWLPortDescription[] outputs) {
+        super(new PortType[] {BufferedDataTable.TYPE}, new PortType[] {BufferedDataTable.TYPE});
+        m_toolId = toolId;
+        m_file = file;
+        m_inputs = inputs;
+        m_outputs = outputs;
+        m_settings = new CWLScatterNodeSettings(m_inputs.length);
+    }
+    
+    @Override
+    protected PortObject[] execute(final PortObject[] inObjects, final ExecutionContext exec) throws Exception {
+        BufferedDataTable table = (BufferedDataTable)inObjects[0];
+        int[] columnIndices = getColumnIndices(table.getDataTableSpec());
+        BufferedDataContainer container = exec.createDataContainer(createOutputSpec());
+        String failurePolicy = m_settings.getFailurePolicy();
+        long total = table.size();
+        
+        int parallelism = m_settings.getParallelism();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "cwl-scatter-" + THREAD_COUNT.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        CompletionService<List<Invocation>> completion = new ExecutorCompletionService<>(pool);
+        // Completed invocations waiting for their predecessors if the input order is kept
+        TreeMap<Long, Invocation> pending = new TreeMap<>();
+        long nextToWrite = 0;
+        long submitted = 0;
+        long done = 0;
+        long failed = 0;
+        int batchSize = m_settings.getBatchSize();
+        AtomicLong queueWait = new AtomicLong();
+        try (CloseableRowIterator iter = table.iterator()) {
+            while (iter.hasNext() || done < submitted) {
+                // Only convert a limited number of rows ahead, so that memory does not grow with the table
+                while (iter.hasNext() && submitted - done < 2L * parallelism * batchSize) {
+                    List<Invocation> batch = new ArrayList<>();
+                    while (iter.hasNext() && batch.size() < batchSize) {
+                        DataRow row = iter.next();
+                        Invocation inv = new Invocation(submitted++, row.getKey(), createInputs(row, columnIndices));
+                        // Rows with wrong inputs fail right away instead of failing in the runner
+                        inv.m_error = CWLNodeModel.validateInputs(m_inputs, inv.m_inputs);
+                        batch.add(inv);
+                    }
+                    completion.submit(() -> runBatch(batch, queueWait, exec));
+                }
+                exec.checkCanceled();
+                Future<List<Invocation>> f = completion.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (f == null) {
+                    continue;
+                }
+                for (Invocation inv : getInvocations(f)) {
+                    done++;
+                    if (inv.m_error != null) {
+                        failed++;
+                        if (failurePolicy.equals(CWLScatterNodeSettings.FAILURE_FAIL_NODE)) {
+                            throw new IOException(String.format("Execution for row %s failed: %s",
+                                    inv.m_key, inv.m_error));
+                        }
+                    }
+                    if (m_settings.isKeepOrder()) {
+                        pending.put(inv.m_index, inv);
+                        while (!pending.isEmpty() && pending.firstKey() == nextToWrite) {
+                            addRow(container, pending.pollFirstEntry().getValue(), failurePolicy);
+                            nextToWrite++;
+                        }
+                    } else {
+                        addRow(container, inv, failurePolicy);
+                    }
+                }
+                final long finished = done;
+                exec.setProgress(finished / (double)total,
+                        String.format("Finished %d of %d invocations", finished, total));
+            }
+        } finally {
+            // Interrupting the remaining invocations cancels and kills their runners
+            pool.shutdownNow();
+        }
+        container.close();
+        pushFlowVariableDouble(CWLNodeModel.QUEUE_WAIT_VARIABLE, queueWait.get() / 1000.0);
+        if (failed > 0) {
+            setWarningMessage(String.format("%d of %d invocations failed", failed, total));
+        }
+        return new PortObject[] {container.getTable()};
+    }
+    
+    private void addRow(final BufferedDataContainer container, final Invocation inv, final String failurePolicy) {
+        if (inv.m_error != null && failurePolicy.equals(CWLScatterNodeSettings.FAILURE_SKIP_ROW)) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean errorColumn = failurePolicy.equals(CWLScatterNodeSettings.FAILURE_MISSING_VALUES);
+        DataCell[] cells = new DataCell[m_outputs.length + (errorColumn ? 1 : 0)];
+        for (int i = 0; i < m_outputs.length; i++) {
+            JsonValue v = inv.m_output == null ? null : inv.m_output.get(m_outputs[i].getName());
+            cells[i] = v == null ? DataType.getMissingCell() : JSONCellFactory.create(v);
+        }
+        if (errorColumn) {
+            cells[m_outputs.length] = inv.m_error == null ? DataType.getMissingCell() : new StringCell(inv.m_error);
+        }
+        container.addRowToTable(new DefaultRow(inv.m_key, cells));
+        CWLMetrics.getInstance().recordPhase(m_toolId, Phase.PORT_OBJECT_CONSTRUCTION, System.nanoTime() - start);
+    }
+    
+    /**
+     * Runs the invocations of a batch in a single cwl-runner call. If that fails, the invocations are run
+     * one by one, so that the failure policy applies to the rows that actually fail.
+     */
+    private List<Invocation> runBatch(final List<Invocation> batch, final AtomicLong queueWait,
+            final ExecutionMonitor exec)
+            throws InterruptedException, CanceledExecutionException {
+        List<Invocation> valid = new ArrayList<>();
+        for (Invocation inv : batch) {
+            if (inv.m_error == null) {
+                valid.add(inv);
+            }
+        }
+        if (valid.size() > 1) {
+            List<Map<String, JsonValue>> inputSets = new ArrayList<>();
+            for (Invocation inv : valid) {
+                inputSets.add(inv.m_inputs);
+            }
+            try {
+                List<CWLExecutionResult> results = CWLNodeModel.executeToolBatch(m_toolId, m_file, inputSets,
+                        m_settings.getExtraCWLArgs(), CWLResourceScheduler.PRIORITY_NORMAL, queueWait, null, exec);
+                for (int i = 0; i < valid.size(); i++) {
+                    valid.get(i).m_output = results.get(i).getOutputJson();
+                    m_workspaces.add(results.get(i));
+                }
+                return batch;
+            } catch (IOException e) {
+                LOGGER.warn(String.format("Batch execution for rows %s to %s failed, executing rows separately: %s",
+                        valid.get(0).m_key, valid.get(valid.size() - 1).m_key, e.getMessage()), e);
+            }
+        }
+        for (Invocation inv : valid) {
+            inv.run(queueWait, exec);
+        }
+        return batch;
+    }
+    
+    private static List<Invocation> getInvocations(final Future<List<Invocation>> f) throws Exception {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception)e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    private Map<String, JsonValue> createInputs(final DataRow row, final int[] columnIndices) {
+        Map<String, JsonValue> inputs = new HashMap<>();
+        for (int i = 0; i < m_inputs.length; i++) {
+            if (columnIndices[i] < 0) {
+                continue;
+            }
+            DataCell cell = row.getCell(columnIndices[i]);
+            if (!cell.isMissing()) {
+                inputs.put(m_inputs[i].getName(), toJson(cell, m_inputs[i].getType()));
+            }
+        }
+        return inputs;
+    }
+    
+    /**
+     * Converts a cell to the JSON value of a tool input. Strings given for File or Directory
+     * inputs are interpreted as paths.
+     */
+    private static JsonValue toJson(final DataCell cell, final CWLDataType type) {
+        if (cell instanceof JSONValue) {
+            return ((JSONValue)cell).getJsonValue();
+        }
+        // Scalars can only be created via a builder in JSON-P 1.0
+        JsonArrayBuilder b = Json.createArrayBuilder();
+        if (cell instanceof BooleanValue) {
+            b.add(((BooleanValue)cell).getBooleanValue());
+        } else if (cell instanceof LongValue) {
+            b.add(((LongValue)cell).getLongValue());
+        } else if (cell instanceof DoubleValue) {
+            b.add(((DoubleValue)cell).getDoubleValue());
+        } else {
+            String s = cell instanceof StringValue ? ((StringValue)cell).getStringValue() : cell.toString();
+            CWLDataType t = type instanceof CWLUnionType && ((CWLUnionType)type).nullable() != null
+                    ? ((CWLUnionType)type).nullable() : type;
+            if (t.getType() == CWLType.FILE || t.getType() == CWLType.DIRECTORY) {
+                return Json.createObjectBuilder()
+                        .add("class", t.getType() == CWLType.FILE ? "File" : "Directory")
+                        .add("path", s)
+                        .build();
+            }
+            b.add(s);
+        }
+        return b.build().get(0);
+    }
+    
+    private int[] getColumnIndices(final DataTableSpec spec) throws InvalidSettingsException {
+        int[] indices = new int[m_inputs.length];
+        String[] columns = m_settings.getInputColumns();
+        if (columns.length == m_inputs.length && Arrays.stream(columns).allMatch(String::isEmpty)) {
+            // Nothing configured yet, use the columns named like the inputs without changing the settings
+            columns = columns.clone();
+            for (int i = 0; i < m_inputs.length; i++) {
+                if (spec.containsName(m_inputs[i].getName())) {
+                    columns[i] = m_inputs[i].getName();
+                }
+            }
+        }
+        for (int i = 0; i < m_inputs.length; i++) {
+            String col = i < columns.length ? columns[i] : "";
+            if (col.isEmpty()) {
+                if (!m_inputs[i].getType().isOptional()) {
+                    throw new InvalidSettingsException(
+                            String.format("No column selected for input %s", m_inputs[i].getName()));
+                }
+                indices[i] = -1;
+            } else {
+                indices[i] = spec.findColumnIndex(col);
+                if (indices[i] < 0) {
+                    throw new InvalidSettingsException(String.format("Column %s selected for input %s does not exist",
+                            col, m_inputs[i].getName()));
+                }
+            }
+        }
+        return indices;
+    }
+    
+    private DataTableSpec createOutputSpec() {
+        boolean errorColumn = m_settings.getFailurePolicy().equals(CWLScatterNodeSettings.FAILURE_MISSING_VALUES);
+        DataColumnSpec[] cols = new DataColumnSpec[m_outputs.length + (errorColumn ? 1 : 0)];
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < m_outputs.length; i++) {
+            names.add(m_outputs[i].getName());
+            cols[i] = new DataColumnSpecCreator(m_outputs[i].getName(), JSONCell.TYPE).createSpec();
+        }
+        if (errorColumn) {
+            String name = ERROR_COLUMN;
+            for (int i = 1; names.contains(name); i++) {
+                name = String.format("%s (#%d)", ERROR_COLUMN, i);
+            }
+            cols[m_outputs.length] = new DataColumnSpecCreator(name, StringCell.TYPE).createSpec();
+        }
+        return new DataTableSpec(cols);
+    }
+
+    @Override
+    protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+        DataTableSpec spec = (DataTableSpec)inSpecs[0];
+        getColumnIndices(spec);
+        return new PortObjectSpec[] {createOutputSpec()};
+    }
+    
+    @Override
+    protected void loadInternals(final File nodeInternDir, final ExecutionMonitor exec)
+            throws IOException, CanceledExecutionException {
+        m_workspaces.load(nodeInternDir);
+    }
+
+    @Override
+    protected void saveInternals(final File nodeInternDir, final ExecutionMonitor exec)
+            throws IOException, CanceledExecutionException {
+        m_workspaces.save(nodeInternDir);
+    }
+
+    @Override
+    protected void saveSettingsTo(final NodeSettingsWO settings) {
+        m_settings.saveSettings(settings);
+    }
+
+    @Override
+    protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+        CWLScatterNodeSettings s = new CWLScatterNodeSettings(m_inputs.length);
+        s.loadSettings(settings);
+    }
+
+    @Override
+    protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+        m_settings.loadSettings(settings);
+    }
+
+    @Override
+    protected void reset() {
+        // Downstream nodes referencing the output files have been reset already
+        m_workspaces.deleteAll();
+    }
+    
+    @Override
+    protected void onDispose() {
+        m_workspaces.releaseAll();
+    }
+    
+    /**
+     * A single invocation of the tool for one row of the input table.
+     */
+    private final class Invocation {
+        private final long m_index;
+        private final RowKey m_key;
+        private final Map<String, JsonValue> m_inputs;
+        private JsonObject m_output;
+        private String m_error;
+        
+        Invocation(final long index, final RowKey key, final Map<String, JsonValue> inputs) {
+            m_index = index;
+            m_key = key;
+            m_inputs = inputs;
+        }
+        
+        Invocation run(final AtomicLong queueWait, final ExecutionMonitor exec)
+                throws InterruptedException, CanceledExecutionException {
+            try {
+                CWLExecutionResult res = CWLNodeModel.executeTool(m_toolId, m_file, m_inputs,
+                        m_settings.getExtraCWLArgs(), m_settings.getEngine(), CWLResourceScheduler.PRIORITY_NORMAL,
+                        queueWait, null, exec);
+                m_output = res.getOutputJson();
+                m_workspaces.add(res);
+            } catch (IOException e) {
+                LOGGER.debug("Execution for row " + m_key + " failed", e);
+                m_error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.util.Arrays;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+
+/**
+ * Settings for CWL table scatter nodes.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public class CWLScatterNodeSettings {
+    
+    private static final String CFG_INPUT_COLUMNS = "inputColumns";
+    private static final String CFG_PARALLELISM = "parallelism";
+    private static final String CFG_KEEP_ORDER = "keepOrder";
+    private static final String CFG_FAILURE_POLICY = "failurePolicy";
+    private static final String CFG_EXTRA_CWL_ARGS = "extraArgs";
+    private static final String CFG_ENGINE = "engine";
+    private static final String CFG_BATCH_SIZE = "batchSize";
+    
+    /** Failure policy: the node fails as soon as one invocation fails. */
+    public static final String FAILURE_FAIL_NODE = "failNode";
+    /** Failure policy: a failed invocation results in missing output cells and an error message. */
+    public static final String FAILURE_MISSING_VALUES = "missingValues";
+    /** Failure policy: rows of failed invocations are omitted from the output. */
+    public static final String FAILURE_SKIP_ROW = "skipRow";
+    
+    private String[] m_inputColumns;
+    private int m_parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean m_keepOrder = true;
+    private String m_failurePolicy = FAILURE_FAIL_NODE;
+    private String m_extraCWLArgs = "";
+    private String m_engine = CWLNodeSettings.ENGINE_CWL_RUNNER;
+    private int m_batchSize = 1;
+    
+    /**
+     * Creates a new instance of {@code CWLScatterNodeSettings}.
+     * @param numInputs the number of inputs the tool has
+     */
+    public CWLScatterNodeSettings(final int numInputs) {
+        m_inputColumns = new String[numInputs];
+        Arrays.fill(m_inputColumns, "");
+    }
+    
+    /**
+     * @return for every tool input the column providing its value, empty if the input is not set
+     */
+    public String[] getInputColumns() {
+        return m_inputColumns;
+    }
+    
+    /**
+     * @param inputColumns for every tool input the column providing its value, empty if the input is not set
+     */
+    public void setInputColumns(final String[] inputColumns) {
+        m_inputColumns = inputColumns;
+    }
+    
+    /**
+     * @return the maximum number of concurrent invocations
+     */
+    public int getParallelism() {
+        return m_parallelism;
+    }
+    
+    /**
+     * @param parallelism the maximum number of concurrent invocations
+     */
+    public void setParallelism(final int parallelism) {
+        m_parallelism = parallelism;
+    }
+    
+    /**
+     * @return whether the output rows are in the order of the input rows instead of the order of completion
+     */
+    public boolean isKeepOrder() {
+        return m_keepOrder;
+    }
+    
+    /**
+     * @param keepOrder whether the output rows are in the order of the input rows
+     */
+    public void setKeepOrder(final boolean keepOrder) {
+        m_keepOrder = keepOrder;
+    }
+    
+    /**
+     * @return what happens if an invocation fails, one of the {@code FAILURE_*} constants
+     */
+    public String getFailurePolicy() {
+        return m_failurePolicy;
+    }
+    
+    /**
+     * @param failurePolicy what happens if an invocation fails, one of the {@code FAILURE_*} constants
+     */
+    public void setFailurePolicy(final String failurePolicy) {
+        m_failurePolicy = failurePolicy;
+    }
+    
+    /**
+     * @return extra arguments for the cwl-runner
+     */
+    public String getExtraCWLArgs() {
+        return m_extraCWLArgs;
+    }
+    
+    /**
+     * @param extraCWLArgs extra arguments for the cwl-runner
+     */
+    public void setExtraCWLArgs(final String extraCWLArgs) {
+        m_extraCWLArgs = extraCWLArgs;
+    }
+    
+    /**
+     * @return the engine executing the tool, see {@link CWLNodeSettings#getEngine()}
+     */
+    public String getEngine() {
+        return m_engine;
+    }
+    
+    /**
+     * @param engine the engine executing the tool, see {@link CWLNodeSettings#getEngine()}
+     */
+    public void setEngine(final String engine) {
+        m_engine = engine;
+    }
+    
+    /**
+     * @return the number of rows executed by a single cwl-runner call, 1 to execute every row separately
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+    
+    /**
+     * @param batchSize the number of rows executed by a single cwl-runner call
+     */
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+    
+    /**
+     * Saves this settings object to node settings.
+     * @param settings the node settings to save to
+     */
+    public void saveSettings(final NodeSettingsWO settings) {
+        settings.addStringArray(CFG_INPUT_COLUMNS, m_inputColumns);
+        settings.addInt(CFG_PARALLELISM, m_parallelism);
+        settings.addBoolean(CFG_KEEP_ORDER, m_keepOrder);
+        settings.addString(CFG_FAILURE_POLICY, m_failurePolicy);
+        settings.addString(CFG_EXTRA_CWL_ARGS, m_extraCWLArgs);
+        settings.addString(CFG_ENGINE, m_engine);
+        settings.addInt(CFG_BATCH_SIZE, m_batchSize);
+    }
+
+    /**
+     * Loads settings from node settings.
+     * @param settings the node settings to load from
+     * @throws InvalidSettingsException if the settings cannot be loaded or are invalid
+     */
+    public void loadSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+        m_inputColumns = settings.getStringArray(CFG_INPUT_COLUMNS);
+        m_parallelism = settings.getInt(CFG_PARALLELISM);
+        m_keepOrder = settings.getBoolean(CFG_KEEP_ORDER);
+        m_failurePolicy = settings.getString(CFG_FAILURE_POLICY);
+        m_extraCWLArgs = settings.getString(CFG_EXTRA_CWL_ARGS);
+        m_engine = settings.getString(CFG_ENGINE);
+        // Added later, nodes saved before execute every row separately
+        m_batchSize = settings.getInt(CFG_BATCH_SIZE, 1);
+        if (m_parallelism < 1) {
+            throw new InvalidSettingsException("The number of concurrent invocations must be at least 1");
+        }
+        if (m_batchSize < 1) {
+            throw new InvalidSettingsException("The batch size must be at least 1");
+        }
+        if (!Arrays.asList(FAILURE_FAIL_NODE, FAILURE_MISSING_VALUES, FAILURE_SKIP_ROW).contains(m_failurePolicy)) {
+            throw new InvalidSettingsException("Unknown failure policy " + m_failurePolicy);
+        }
+    }
+
+    /**
+     * Loads settings with defaults from node settings.
+     * @param settings the node settings to load from
+     */
+    public void loadSettingsForDialog(final NodeSettingsRO settings) {
+        m_inputColumns = settings.getStringArray(CFG_INPUT_COLUMNS, m_inputColumns);
+        m_parallelism = settings.getInt(CFG_PARALLELISM, m_parallelism);
+        m_keepOrder = settings.getBoolean(CFG_KEEP_ORDER, m_keepOrder);
+        m_failurePolicy = settings.getString(CFG_FAILURE_POLICY, m_failurePolicy);
+        m_extraCWLArgs = settings.getString(CFG_EXTRA_CWL_ARGS, m_extraCWLArgs);
+        m_engine = settings.getString(CFG_ENGINE, m_engine);
+        m_batchSize = settings.getInt(CFG_BATCH_SIZE, m_batchSize);
+    }
+}
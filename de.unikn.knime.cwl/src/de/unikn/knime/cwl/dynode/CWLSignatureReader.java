@@ -0,0 +1,223 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * Reads selected top-level properties of a CWL document from the YAML event stream. Only the values of the
+ * requested properties are turned into objects, everything else, like embedded schemas or the steps of packed
+ * workflows, is skipped without building an object graph. Reading stops as soon as all requested properties were
+ * found, the rest of the stream is then only drained, e.g. for a digest computed over it.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLSignatureReader {
+    
+    private static final int DRAIN_BUFFER_SIZE = 8192;
+    
+    private final Iterator<Event> m_events;
+    private final Resolver m_resolver = new Resolver();
+    private final ScalarConstructor m_constructor = new ScalarConstructor();
+    private final Map<String, Object> m_anchors = new HashMap<>();
+    
+    private CWLSignatureReader(final InputStream in) {
+        m_events = new Yaml().parse(new UnicodeReader(in)).iterator();
+    }
+    
+    /**
+     * Reads the given top-level properties of a CWL document and consumes the stream to its end.
+     * @param in the stream of the document, is not closed
+     * @param keys the properties to read
+     * @return the values of the properties that are present, as SnakeYAML would have loaded them
+     * @throws IOException if the stream cannot be read or the properties cannot be read without constructing the
+     *          whole document, e.g. because they refer to anchors defined elsewhere
+     */
+    static Map<String, Object> read(final InputStream in, final Set<String> keys) throws IOException {
+        try {
+            return readKeys(in, keys);
+        } catch (YAMLException e) {
+            // Anything the events cannot be composed to is left to a complete load of the document
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+    
+    private static Map<String, Object> readKeys(final InputStream in, final Set<String> keys) throws IOException {
+        Map<String, Object> result = new HashMap<>();
+        CWLSignatureReader reader = new CWLSignatureReader(in);
+        reader.next(Event.ID.StreamStart);
+        reader.next(Event.ID.DocumentStart);
+        reader.next(Event.ID.MappingStart);
+        while (result.size() < keys.size()) {
+            Event key = reader.m_events.next();
+            if (key.is(Event.ID.MappingEnd)) {
+                break;
+            }
+            if (!key.is(Event.ID.Scalar)) {
+                throw new IOException("The document contains a top-level key that is not a string");
+            }
+            String name = ((ScalarEvent)key).getValue();
+            if (keys.contains(name)) {
+                result.put(name, reader.compose(reader.m_events.next()));
+            } else {
+                reader.skip(reader.m_events.next());
+            }
+        }
+        // The parser reads ahead, so the rest of the stream has to be consumed directly
+        byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+        while (in.read(buffer) >= 0) {
+            // Only drained
+        }
+        return result;
+    }
+    
+    private void next(final Event.ID expected) throws IOException {
+        Event e = m_events.next();
+        if (!e.is(expected)) {
+            throw new IOException(String.format("Expected %s but found %s", expected, e));
+        }
+    }
+    
+    private Object compose(final Event e) throws IOException {
+        Object value;
+        if (e.is(Event.ID.Alias)) {
+            String anchor = ((AliasEvent)e).getAnchor();
+            if (!m_anchors.containsKey(anchor)) {
+                // Defined in a skipped part of the document
+                throw new IOException("Unknown anchor " + anchor);
+            }
+            return m_anchors.get(anchor);
+        } else if (e.is(Event.ID.Scalar)) {
+            value = constructScalar((ScalarEvent)e);
+        } else if (e.is(Event.ID.SequenceStart)) {
+            List<Object> list = new ArrayList<>();
+            for (Event item = m_events.next(); !item.is(Event.ID.SequenceEnd); item = m_events.next()) {
+                list.add(compose(item));
+            }
+            value = list;
+        } else if (e.is(Event.ID.MappingStart)) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (Event key = m_events.next(); !key.is(Event.ID.MappingEnd); key = m_events.next()) {
+                Object k = compose(key);
+                map.put(k, compose(m_events.next()));
+            }
+            value = map;
+        } else {
+            throw new IOException("Unexpected YAML event " + e);
+        }
+        String anchor = ((NodeEvent)e).getAnchor();
+        if (anchor != null) {
+            m_anchors.put(anchor, value);
+        }
+        return value;
+    }
+    
+    private void skip(final Event e) {
+        int depth = 0;
+        Event current = e;
+        while (true) {
+            if (current.is(Event.ID.MappingStart) || current.is(Event.ID.SequenceStart)) {
+                depth++;
+            } else if (current.is(Event.ID.MappingEnd) || current.is(Event.ID.SequenceEnd)) {
+                depth--;
+            }
+            if (depth == 0) {
+                return;
+            }
+            current = m_events.next();
+        }
+    }
+    
+    /**
+     * Resolves the tag of a scalar the same way SnakeYAML's composer does and constructs its value. Merge keys
+     * are only flattened when a whole mapping node is constructed, so they cannot be read from the events.
+     */
+    private Object constructScalar(final ScalarEvent e) throws IOException {
+        String tag = e.getTag();
+        Tag nodeTag = tag == null || tag.equals("!")
+                ? m_resolver.resolve(NodeId.scalar, e.getValue(), e.getImplicit().canOmitTagInPlainScalar())
+                : new Tag(tag);
+        if (Tag.MERGE.equals(nodeTag)) {
+            throw new IOException("The document uses merge keys");
+        }
+        return m_constructor.construct(new ScalarNode(nodeTag, e.getValue(), e.getStartMark(), e.getEndMark(),
+                e.getScalarStyle()));
+    }
+    
+    /**
+     * Gives access to the construction of single scalars.
+     */
+    private static final class ScalarConstructor extends SafeConstructor {
+        
+        Object construct(final ScalarNode node) {
+            return constructObject(node);
+        }
+    }
+}
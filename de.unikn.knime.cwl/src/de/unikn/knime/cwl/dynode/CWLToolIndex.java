@@ -0,0 +1,390 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import org.knime.core.node.NodeLogger;
+
+import de.unikn.knime.cwl.execution.CWLResourceRequirement;
+
+/**
+ * A persistent index of the parsed CWL files, so that the files do not have to be parsed again each time KNIME
+ * starts. Entries are keyed by the absolute path of the file and are only valid as long as the size and
+ * modification time of the file do not change.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLToolIndex {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLToolIndex.class);
+    
+    /** Incremented whenever the information stored for a tool changes. */
+    private static final int VERSION = 4;
+    
+    private static final String TMP_SUFFIX = ".tmp";
+    
+    private static final String VERSION_KEY = "version";
+    private static final String TOOLS_KEY = "tools";
+    private static final String BUNDLES_KEY = "bundles";
+    private static final String PATH_KEY = "path";
+    private static final String SIZE_KEY = "size";
+    private static final String LAST_MODIFIED_KEY = "lastModified";
+    private static final String ID_KEY = "id";
+    private static final String LABEL_KEY = "label";
+    private static final String DOC_KEY = "doc";
+    private static final String INPUTS_KEY = "inputs";
+    private static final String OUTPUTS_KEY = "outputs";
+    private static final String CORES_KEY = "cores";
+    private static final String RAM_KEY = "ramMB";
+    private static final String TMPDIR_KEY = "tmpdirMB";
+    private static final String OUTDIR_KEY = "outdirMB";
+    private static final String DEPENDENCIES_KEY = "dependencies";
+    
+    private final File m_file;
+    // Looked up and filled concurrently by the folder scan
+    private final Map<String, CWLToolInfo> m_entries = new ConcurrentHashMap<>();
+    // Size and modification time of the zip or jar bundles by the location prefix of their tools
+    private final Map<String, long[]> m_bundles = new ConcurrentHashMap<>();
+    private volatile boolean m_modified;
+    
+    /**
+     * Creates a new instance of {@code CWLToolIndex}.
+     * @param file the file the index is stored in or null if it should not be persisted
+     */
+    CWLToolIndex(final File file) {
+        m_file = file;
+    }
+    
+    /**
+     * Reads the index from its file. A missing, outdated or corrupt index is treated as empty.
+     */
+    void load() {
+        if (m_file == null || !m_file.isFile()) {
+            return;
+        }
+        JsonObject index;
+        try (Reader r = Files.newBufferedReader(m_file.toPath(), StandardCharsets.UTF_8)) {
+            index = Json.createReader(r).readObject();
+        } catch (IOException | JsonException e) {
+            LOGGER.warn("Could not read the CWL tool index, all CWL files are parsed again", e);
+            return;
+        }
+        if (index.getInt(VERSION_KEY, 0) != VERSION) {
+            LOGGER.debug("The CWL tool index was written by a different version and is rebuilt");
+            return;
+        }
+        try {
+            for (JsonValue v : index.getJsonArray(TOOLS_KEY)) {
+                CWLToolInfo info = fromJson((JsonObject)v);
+                m_entries.put(info.getPath(), info);
+            }
+            JsonArray bundles = index.getJsonArray(BUNDLES_KEY);
+            if (bundles != null) {
+                for (JsonObject b : bundles.getValuesAs(JsonObject.class)) {
+                    m_bundles.put(b.getString(PATH_KEY), new long[] {
+                        b.getJsonNumber(SIZE_KEY).longValue(), b.getJsonNumber(LAST_MODIFIED_KEY).longValue()});
+                }
+            }
+        } catch (ClassCastException | NullPointerException e) {
+            LOGGER.warn("The CWL tool index is corrupt, all CWL files are parsed again", e);
+            m_entries.clear();
+            m_bundles.clear();
+        }
+    }
+    
+    /**
+     * Writes the index to its file if it has been modified since it was loaded.
+     */
+    void save() {
+        if (m_file == null || !m_modified) {
+            return;
+        }
+        JsonArrayBuilder tools = Json.createArrayBuilder();
+        for (CWLToolInfo info : m_entries.values()) {
+            tools.add(toJson(info));
+        }
+        JsonArrayBuilder bundles = Json.createArrayBuilder();
+        for (Entry<String, long[]> e : m_bundles.entrySet()) {
+            bundles.add(Json.createObjectBuilder().add(PATH_KEY, e.getKey())
+                    .add(SIZE_KEY, e.getValue()[0]).add(LAST_MODIFIED_KEY, e.getValue()[1]));
+        }
+        JsonObject index = Json.createObjectBuilder().add(VERSION_KEY, VERSION)
+                .add(TOOLS_KEY, tools).add(BUNDLES_KEY, bundles).build();
+        File tmp = new File(m_file.getParentFile(), m_file.getName() + TMP_SUFFIX);
+        try {
+            Files.createDirectories(m_file.getParentFile().toPath());
+            try (Writer w = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                Json.createWriter(w).writeObject(index);
+            }
+            Files.move(tmp.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            m_modified = false;
+        } catch (IOException e) {
+            LOGGER.warn("Could not write the CWL tool index", e);
+        }
+    }
+    
+    /**
+     * Looks up the entry for a file.
+     * @param location the absolute path of the CWL file or its location in a bundle
+     * @param size the current size of the file
+     * @param lastModified the current modification time of the file
+     * @return the entry or null if the file or a schema file it imports is not indexed or has changed since it
+     *          was indexed
+     */
+    CWLToolInfo get(final String location, final long size, final long lastModified) {
+        CWLToolInfo info = m_entries.get(location);
+        if (info != null && info.getSize() == size && info.getLastModified() == lastModified
+                && info.areDependenciesCurrent()) {
+            return info;
+        }
+        return null;
+    }
+    
+    /**
+     * @return all entries of the index, whether or not they are up to date
+     */
+    Collection<CWLToolInfo> getEntries() {
+        return Collections.unmodifiableCollection(m_entries.values());
+    }
+    
+    /**
+     * Looks up the entries of all tools in a zip or jar bundle.
+     * @param bundle the bundle
+     * @return the entries or null if the bundle is not indexed or has changed since it was indexed
+     */
+    List<CWLToolInfo> getBundleEntries(final Path bundle) {
+        String prefix = CWLBundles.getLocationPrefix(bundle);
+        long[] stamp = m_bundles.get(prefix);
+        try {
+            if (stamp == null || stamp[0] != Files.size(bundle)
+                    || stamp[1] != Files.getLastModifiedTime(bundle).toMillis()) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return m_entries.values().stream().filter(i -> i.getPath().startsWith(prefix)).collect(Collectors.toList());
+    }
+    
+    /**
+     * Marks a zip or jar bundle as indexed. Its tools have to be added with {@link #put(CWLToolInfo)}.
+     * @param bundle the bundle
+     * @param size the size of the bundle when it was scanned
+     * @param lastModified the modification time of the bundle when it was scanned
+     */
+    void putBundle(final Path bundle, final long size, final long lastModified) {
+        m_bundles.put(CWLBundles.getLocationPrefix(bundle), new long[] {size, lastModified});
+        m_modified = true;
+    }
+    
+    /**
+     * Adds or replaces the entry for a file.
+     * @param info the entry
+     */
+    void put(final CWLToolInfo info) {
+        m_entries.put(info.getPath(), info);
+        m_modified = true;
+    }
+    
+    /**
+     * Removes the entries of all files and bundles that are not registered any more.
+     * @param paths the paths of the files that are still registered
+     */
+    void retain(final Iterable<String> paths) {
+        Map<String, CWLToolInfo> retained = new HashMap<>();
+        for (String p : paths) {
+            CWLToolInfo info = m_entries.get(p);
+            if (info != null) {
+                retained.put(p, info);
+            }
+        }
+        if (retained.size() != m_entries.size()) {
+            m_entries.clear();
+            m_entries.putAll(retained);
+            m_modified = true;
+        }
+        // Bundles without registered tools are scanned again, which is cheap as they are empty
+        if (m_bundles.keySet().removeIf(b -> retained.keySet().stream().noneMatch(p -> p.startsWith(b)))) {
+            m_modified = true;
+        }
+    }
+    
+    private static JsonObject toJson(final CWLToolInfo info) {
+        JsonObjectBuilder b = Json.createObjectBuilder()
+                .add(PATH_KEY, info.getPath())
+                .add(SIZE_KEY, info.getSize())
+                .add(LAST_MODIFIED_KEY, info.getLastModified())
+                .add(ID_KEY, info.getId())
+                .add(INPUTS_KEY, toJsonValue(info.getRawInputs()))
+                .add(OUTPUTS_KEY, toJsonValue(info.getRawOutputs()))
+                .add(CORES_KEY, info.getResources().getCores())
+                .add(RAM_KEY, info.getResources().getRamMB())
+                .add(TMPDIR_KEY, info.getResources().getTmpdirMB())
+                .add(OUTDIR_KEY, info.getResources().getOutdirMB());
+        if (info.getLabel() != null) {
+            b.add(LABEL_KEY, info.getLabel());
+        }
+        if (info.getDoc() != null) {
+            b.add(DOC_KEY, info.getDoc());
+        }
+        JsonArrayBuilder deps = Json.createArrayBuilder();
+        for (Entry<String, long[]> e : info.getDependencies().entrySet()) {
+            deps.add(Json.createObjectBuilder().add(PATH_KEY, e.getKey())
+                    .add(SIZE_KEY, e.getValue()[0]).add(LAST_MODIFIED_KEY, e.getValue()[1]));
+        }
+        b.add(DEPENDENCIES_KEY, deps);
+        return b.build();
+    }
+    
+    private static CWLToolInfo fromJson(final JsonObject o) {
+        CWLResourceRequirement resources = new CWLResourceRequirement(
+                o.getJsonNumber(CORES_KEY).longValue(),
+                o.getJsonNumber(RAM_KEY).longValue(),
+                o.getJsonNumber(TMPDIR_KEY).longValue(),
+                o.getJsonNumber(OUTDIR_KEY).longValue());
+        Map<String, long[]> dependencies = new LinkedHashMap<>();
+        for (JsonObject d : o.getJsonArray(DEPENDENCIES_KEY).getValuesAs(JsonObject.class)) {
+            dependencies.put(d.getString(PATH_KEY), new long[] {
+                d.getJsonNumber(SIZE_KEY).longValue(), d.getJsonNumber(LAST_MODIFIED_KEY).longValue()});
+        }
+        return new CWLToolInfo(o.getString(PATH_KEY), o.getJsonNumber(SIZE_KEY).longValue(),
+                o.getJsonNumber(LAST_MODIFIED_KEY).longValue(), o.getString(ID_KEY),
+                o.getString(LABEL_KEY, null), o.getString(DOC_KEY, null),
+                toYAMLObject(o.get(INPUTS_KEY)), toYAMLObject(o.get(OUTPUTS_KEY)), resources, dependencies);
+    }
+    
+    private static JsonValue toJsonValue(final Object o) {
+        if (o instanceof Map) {
+            JsonObjectBuilder b = Json.createObjectBuilder();
+            for (Entry<?, ?> e : ((Map<?, ?>)o).entrySet()) {
+                b.add(e.getKey().toString(), toJsonValue(e.getValue()));
+            }
+            return b.build();
+        }
+        JsonArrayBuilder b = Json.createArrayBuilder();
+        if (o instanceof List) {
+            for (Object item : (List<?>)o) {
+                b.add(toJsonValue(item));
+            }
+            return b.build();
+        }
+        // Scalars can only be created via a builder in JSON-P 1.0
+        if (o == null) {
+            b.addNull();
+        } else if (o instanceof Boolean) {
+            b.add((Boolean)o);
+        } else if (o instanceof Integer || o instanceof Long) {
+            b.add(((Number)o).longValue());
+        } else if (o instanceof Number) {
+            b.add(((Number)o).doubleValue());
+        } else {
+            b.add(o.toString());
+        }
+        return b.build().get(0);
+    }
+    
+    /**
+     * Converts a JSON value back to the objects SnakeYAML creates, which is what the port creation expects.
+     */
+    private static Object toYAMLObject(final JsonValue v) {
+        switch (v.getValueType()) {
+            case OBJECT:
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (Entry<String, JsonValue> e : ((JsonObject)v).entrySet()) {
+                    map.put(e.getKey(), toYAMLObject(e.getValue()));
+                }
+                return map;
+            case ARRAY:
+                List<Object> list = new ArrayList<>();
+                for (JsonValue item : (JsonArray)v) {
+                    list.add(toYAMLObject(item));
+                }
+                return list;
+            case STRING:
+                return ((JsonString)v).getString();
+            case NUMBER:
+                JsonNumber n = (JsonNumber)v;
+                return n.isIntegral() ? (Object)n.longValue() : (Object)n.doubleValue();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+}
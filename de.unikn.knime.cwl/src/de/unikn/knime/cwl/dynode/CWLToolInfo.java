@@ -0,0 +1,242 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.knime.core.node.NodeDescription;
+
+import de.unikn.knime.cwl.dynode.port.CWLPortDescription;
+import de.unikn.knime.cwl.execution.CWLResourceRequirement;
+
+/**
+ * The information about a registered CWL file that is needed to create its nodes, as stored in the
+ * {@link CWLToolIndex}.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLToolInfo {
+    
+    private final String m_path;
+    private final long m_size;
+    private final long m_lastModified;
+    private final String m_id;
+    private final String m_label;
+    private final String m_doc;
+    private final Object m_inputs;
+    private final Object m_outputs;
+    private final CWLResourceRequirement m_resources;
+    // Size and modification time of the imported documents by their path
+    private final Map<String, long[]> m_dependencies;
+    
+    // Built on first use and shared by all nodes of the tool, a changed file gets a new CWLToolInfo
+    private volatile CWLPortDescription[] m_inputPorts;
+    private volatile CWLPortDescription[] m_outputPorts;
+    private final Map<Class<?>, NodeDescription> m_descriptions = new ConcurrentHashMap<>();
+    
+    /**
+     * Creates a new instance of {@code CWLToolInfo}.
+     * @param path the absolute path of the CWL file
+     * @param size the size of the file when it was parsed
+     * @param lastModified the modification time of the file when it was parsed
+     * @param id the ID of the tool, either given in the file or its MD5 hash
+     * @param label the label of the tool or null
+     * @param doc the documentation of the tool or null
+     * @param inputs the inputs object from the tool's YAML
+     * @param outputs the outputs object from the tool's YAML
+     * @param resources the resources declared by the tool
+     * @param dependencies the size and modification time of the documents the tool's types were imported from,
+     *          by their absolute path
+     */
+    CWLToolInfo(final String path, final long size, final long lastModified, final String id, final String label,
+            final String doc, final Object inputs, final Object outputs, final CWLResourceRequirement resources,
+            final Map<String, long[]> dependencies) {
+        m_path = path;
+        m_size = size;
+        m_lastModified = lastModified;
+        m_id = id;
+        m_label = label;
+        m_doc = doc;
+        m_inputs = inputs;
+        m_outputs = outputs;
+        m_resources = resources;
+        m_dependencies = Collections.unmodifiableMap(dependencies);
+    }
+    
+    /**
+     * @return the absolute path of the CWL file
+     */
+    String getPath() {
+        return m_path;
+    }
+    
+    /**
+     * @return the size of the file when it was parsed
+     */
+    long getSize() {
+        return m_size;
+    }
+    
+    /**
+     * @return the modification time of the file when it was parsed
+     */
+    long getLastModified() {
+        return m_lastModified;
+    }
+    
+    /**
+     * @return the ID of the tool, either given in the file or its MD5 hash
+     */
+    String getId() {
+        return m_id;
+    }
+    
+    /**
+     * @return the label of the tool or null if it has none
+     */
+    String getLabel() {
+        return m_label;
+    }
+    
+    /**
+     * @return the documentation of the tool or null if it has none
+     */
+    String getDoc() {
+        return m_doc;
+    }
+    
+    /**
+     * @return the inputs object from the tool's YAML
+     */
+    Object getRawInputs() {
+        return m_inputs;
+    }
+    
+    /**
+     * @return the outputs object from the tool's YAML
+     */
+    Object getRawOutputs() {
+        return m_outputs;
+    }
+    
+    /**
+     * @return the port descriptions of the tool's inputs
+     */
+    CWLPortDescription[] getInputs() {
+        CWLPortDescription[] ports = m_inputPorts;
+        if (ports == null) {
+            ports = CWLNodeFactory.createPorts(m_inputs);
+            m_inputPorts = ports;
+        }
+        return ports.clone();
+    }
+    
+    /**
+     * @return the port descriptions of the tool's outputs
+     */
+    CWLPortDescription[] getOutputs() {
+        CWLPortDescription[] ports = m_outputPorts;
+        if (ports == null) {
+            ports = CWLNodeFactory.createPorts(m_outputs);
+            m_outputPorts = ports;
+        }
+        return ports.clone();
+    }
+    
+    /**
+     * Returns the node description of the tool for a kind of node, creating it on first use.
+     * @param factory the class of the factory creating the nodes
+     * @param create creates the description, may return null if it cannot be created
+     * @return the description or null if it could not be created
+     */
+    NodeDescription getNodeDescription(final Class<?> factory, final Supplier<NodeDescription> create) {
+        return m_descriptions.computeIfAbsent(factory, f -> create.get());
+    }
+    
+    /**
+     * @return the resources declared in the tool's {@code ResourceRequirement}
+     */
+    CWLResourceRequirement getResources() {
+        return m_resources;
+    }
+    
+    /**
+     * @return the size and modification time of the documents the tool's types were imported from,
+     *          by their absolute path
+     */
+    Map<String, long[]> getDependencies() {
+        return m_dependencies;
+    }
+    
+    /**
+     * Checks whether the documents the tool's types were imported from are unchanged.
+     * @return true if all imported documents have the size and modification time they had when the tool was parsed
+     */
+    boolean areDependenciesCurrent() {
+        for (Entry<String, long[]> e : m_dependencies.entrySet()) {
+            try {
+                Path p = Paths.get(e.getKey());
+                if (Files.size(p) != e.getValue()[0] || Files.getLastModifiedTime(p).toMillis() != e.getValue()[1]) {
+                    return false;
+                }
+            } catch (IOException ex) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -55,14 +55,17 @@ package de.unikn.knime.cwl.dynode.data.types;
  */
 public class CWLArrayType implements CWLDataType {
     
-    private CWLDataType m_itemType;
+    private final CWLDataType m_itemType;
+    private final int m_hashCode;
     
     /**
-     * Constructs a new instance of a CWL array type.
+     * Constructs a new instance of a CWL array type. Use {@link CWLDataType#fromString(String)} or
+     * {@link CWLDataType#fromYAMLObject(Object)} to get a shared instance.
      * @param itemType the type of the array items
      */
     public CWLArrayType(final CWLDataType itemType) {
         m_itemType = itemType;
+        m_hashCode = 31 * m_itemType.hashCode();
     }
     
     /**
@@ -74,15 +77,19 @@ public class CWLArrayType implements CWLDataType {
     
     @Override
     public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (!(obj instanceof CWLArrayType)) {
             return false;
         }
-        return ((CWLArrayType)obj).getItemType().equals(m_itemType);
+        CWLArrayType other = (CWLArrayType)obj;
+        return other.m_hashCode == m_hashCode && other.getItemType().equals(m_itemType);
     }
     
     @Override
     public int hashCode() {
-        return 31 * m_itemType.hashCode();
+        return m_hashCode;
     }
     
     @Override
@@ -51,11 +51,20 @@ package de.unikn.knime.cwl.dynode.data.types;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
 
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
 /**
  * A data type for data being passed between CWL tools.
  * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
@@ -69,6 +78,8 @@ public interface CWLDataType {
     static final String ENUM_SYMBOLS_KEY = "symbols";
     /** YAML/JSON key for the record fields property. */
     static final String RECORD_FIELDS_KEY = "fields";
+    /** YAML/JSON key for the name property of record fields. */
+    static final String RECORD_FIELD_NAME_KEY = "name";
     /** YAML/JSON key for the array items property. */
     static final String ARRAY_ITEMS_KEY = "items";
     
@@ -78,7 +89,7 @@ public interface CWLDataType {
     public CWLType getType();
     
     /**
-     * Creates a data type from a YAML type object.
+     * Creates a data type from a YAML type object. Structurally equal types are represented by the same instance.
      * @param o the object representing the type
      * @return a CWLDataType for the given object
      */
@@ -93,7 +104,7 @@ public interface CWLDataType {
             if (type instanceof String) {
                 if (CWLType.get((String)type) == CWLType.ARRAY) {
                     Object items = om.get(ARRAY_ITEMS_KEY);
-                    return new CWLArrayType(fromYAMLObject(items));
+                    return CWLTypeInterner.intern(new CWLArrayType(fromYAMLObject(items)));
                 } else if (CWLType.get((String)type) == CWLType.RECORD) {
                     Object fieldsObj = om.get(RECORD_FIELDS_KEY);
                     Map<String, CWLDataType> recordFields = new HashMap<>();
@@ -107,13 +118,21 @@ public interface CWLDataType {
                     } else {
                         List<?> fields = (List<?>)fieldsObj;
                         for (Object f : fields) {
-                            recordFields.put(f.toString(), CWLAnyType.getInstance());
+                            if (f instanceof Map<?, ?> && ((Map<?, ?>)f).get(RECORD_FIELD_NAME_KEY) instanceof String) {
+                                // A field object with name and type properties
+                                String name = (String)((Map<?, ?>)f).get(RECORD_FIELD_NAME_KEY);
+                                recordFields.put(name.substring(name.lastIndexOf('/') + 1),
+                                        fromYAMLObject(((Map<?, ?>)f).get(TYPE_KEY)));
+                            } else {
+                                recordFields.put(f.toString(), CWLAnyType.getInstance());
+                            }
                         }
                     }
-                    return new CWLRecordType(recordFields);
+                    return CWLTypeInterner.intern(new CWLRecordType(recordFields));
                 } else if (CWLType.get((String)type) == CWLType.ENUM) {
                     List<?> symbols = (List<?>)om.get(ENUM_SYMBOLS_KEY);
-                    return new CWLEnumType(symbols.stream().map(s -> (String)s).collect(Collectors.toList()));
+                    return CWLTypeInterner.intern(
+                            new CWLEnumType(symbols.stream().map(s -> (String)s).collect(Collectors.toList())));
                 }
                 return fromYAMLObject(om.get(TYPE_KEY));
             } else {
@@ -122,30 +141,106 @@ public interface CWLDataType {
         } else if (o instanceof List<?>) {
             // Union type
             List<?> l = (List<?>)o;
-            return new CWLUnionType(l.stream().map(t -> fromYAMLObject(t)).collect(Collectors.toSet()));
+            return CWLTypeInterner.intern(
+                    new CWLUnionType(l.stream().map(t -> fromYAMLObject(t)).collect(Collectors.toSet())));
         } else {
             throw new IllegalArgumentException("Unsupported type for conversion to CWL type");
         }
     }
     
     /**
-     * Creates a data type from a string representation.
+     * Creates a data type from a string representation. Structurally equal types are represented by the same
+     * instance and strings that were parsed before are not parsed again.
      * @param s the string representing the CWL data type
      * @return a data type object
      */
     public static CWLDataType fromString(final String s) {
+        CWLDataType known = CWLTypeInterner.getForSymbol(s);
+        if (known != null) {
+            return known;
+        }
+        CWLDataType type;
         if (s.endsWith("?")) {
             // Nullables are represented by union sets with null type and one other type
-            String type = s.substring(0, s.length() - 1);
+            String t = s.substring(0, s.length() - 1);
             List<CWLDataType> types = new ArrayList<>();
-            types.add(fromString(type));
+            types.add(fromString(t));
             types.add(CWLNullType.getInstance());
-            return new CWLUnionType(new HashSet<>(types));
+            type = new CWLUnionType(new HashSet<>(types));
         } else if (s.endsWith("[]")) {
             String items = s.substring(0, s.length() - 2);
-            return new CWLArrayType(CWLDataType.fromString(items));
+            type = new CWLArrayType(CWLDataType.fromString(items));
         } else {
-            return CWLSimpleDataType.fromSymbol(s);
+            type = CWLSimpleDataType.fromSymbol(s);
+        }
+        return CWLTypeInterner.putForSymbol(s, type);
+    }
+    
+    /**
+     * Converts a data type to JSON in the form of a CWL type declaration, which
+     * {@link #fromJson(JsonValue)} converts back.
+     * @param type the data type
+     * @return the JSON representation of the type
+     */
+    public static JsonValue toJson(final CWLDataType type) {
+        switch (type.getType()) {
+            case ARRAY:
+                return Json.createObjectBuilder().add(TYPE_KEY, CWLType.ARRAY.symbol())
+                        .add(ARRAY_ITEMS_KEY, toJson(((CWLArrayType)type).getItemType())).build();
+            case RECORD:
+                JsonObjectBuilder fields = Json.createObjectBuilder();
+                for (Entry<String, CWLDataType> e : ((CWLRecordType)type).getFields().entrySet()) {
+                    fields.add(e.getKey(), toJson(e.getValue()));
+                }
+                return Json.createObjectBuilder().add(TYPE_KEY, CWLType.RECORD.symbol())
+                        .add(RECORD_FIELDS_KEY, fields).build();
+            case ENUM:
+                JsonArrayBuilder symbols = Json.createArrayBuilder();
+                ((CWLEnumType)type).getSymbols().forEach(symbols::add);
+                return Json.createObjectBuilder().add(TYPE_KEY, CWLType.ENUM.symbol())
+                        .add(ENUM_SYMBOLS_KEY, symbols).build();
+            case UNION:
+                JsonArrayBuilder types = Json.createArrayBuilder();
+                for (CWLDataType t : ((CWLUnionType)type).getTypes()) {
+                    types.add(toJson(t));
+                }
+                return types.build();
+            default:
+                // Scalars can only be created via a builder in JSON-P 1.0
+                return Json.createArrayBuilder().add(type.getType().symbol()).build().get(0);
+        }
+    }
+    
+    /**
+     * Creates a data type from its JSON representation.
+     * @param json a CWL type declaration in JSON, e.g. as created by {@link #toJson(CWLDataType)}
+     * @return a CWLDataType for the given JSON
+     */
+    public static CWLDataType fromJson(final JsonValue json) {
+        return fromYAMLObject(toYAMLObject(json));
+    }
+    
+    /**
+     * Converts a JSON value to the objects SnakeYAML creates.
+     */
+    static Object toYAMLObject(final JsonValue json) {
+        switch (json.getValueType()) {
+            case OBJECT:
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (Entry<String, JsonValue> e : ((JsonObject)json).entrySet()) {
+                    map.put(e.getKey(), toYAMLObject(e.getValue()));
+                }
+                return map;
+            case ARRAY:
+                List<Object> list = new ArrayList<>();
+                for (JsonValue v : (JsonArray)json) {
+                    list.add(toYAMLObject(v));
+                }
+                return list;
+            case STRING:
+                return ((JsonString)json).getString();
+            default:
+                return json.toString();
         }
     }
     
@@ -48,6 +48,7 @@
  */
 package de.unikn.knime.cwl.dynode.data.types;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -58,14 +59,17 @@ import java.util.List;
  */
 public class CWLEnumType implements CWLDataType {
     
-    private List<String> m_symbols;
+    private final List<String> m_symbols;
+    private final int m_hashCode;
     
     /**
-     * Constructs a new CWL enum types with the given symbols.
+     * Constructs a new CWL enum types with the given symbols. Use {@link CWLDataType#fromYAMLObject(Object)}
+     * to get a shared instance.
      * @param symbols the symbols contained in the enum
      */
     public CWLEnumType(final List<String> symbols) {
-        m_symbols = Collections.unmodifiableList(symbols);
+        m_symbols = Collections.unmodifiableList(new ArrayList<>(symbols));
+        m_hashCode = 31 * m_symbols.hashCode();
     }
     
     /**
@@ -77,16 +81,19 @@ public class CWLEnumType implements CWLDataType {
     
     @Override
     public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (!(obj instanceof CWLEnumType)) {
             return false;
         }
         CWLEnumType other = (CWLEnumType)obj;
-        return other.getSymbols().equals(getSymbols());
+        return other.m_hashCode == m_hashCode && other.getSymbols().equals(getSymbols());
     }
     
     @Override
     public int hashCode() {
-        return 31 * m_symbols.hashCode();
+        return m_hashCode;
     }
     
     @Override
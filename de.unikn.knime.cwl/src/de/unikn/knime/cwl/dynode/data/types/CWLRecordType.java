@@ -49,6 +49,7 @@
 package de.unikn.knime.cwl.dynode.data.types;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -61,14 +62,17 @@ import java.util.stream.StreamSupport;
  */
 public class CWLRecordType implements CWLDataType {
     
-    private Map<String, CWLDataType> m_fields;
+    private final Map<String, CWLDataType> m_fields;
+    private final int m_hashCode;
     
     /**
-     * Constructs a new instance of a CWL record type with a set of fields.
+     * Constructs a new instance of a CWL record type with a set of fields. Use
+     * {@link CWLDataType#fromYAMLObject(Object)} to get a shared instance.
      * @param fields the fields of the record
      */
     public CWLRecordType(final Map<String, CWLDataType> fields) {
-        m_fields = Collections.unmodifiableMap(fields);
+        m_fields = Collections.unmodifiableMap(new LinkedHashMap<>(fields));
+        m_hashCode = 31 * m_fields.hashCode();
     }
     
     /**
@@ -80,16 +84,19 @@ public class CWLRecordType implements CWLDataType {
     
     @Override
     public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (!(obj instanceof CWLRecordType)) {
             return false;
         }
         CWLRecordType other = (CWLRecordType)obj;
-        return other.getFields().equals(getFields());
+        return other.m_hashCode == m_hashCode && other.getFields().equals(getFields());
     }
     
     @Override
     public int hashCode() {
-        return 31 * m_fields.hashCode();
+        return m_hashCode;
     }
     
     @Override
@@ -58,7 +58,7 @@ public class CWLSimpleDataType implements CWLDataType {
     private static final String STDOUT = "stdout";
     private static final String STDERR = "stderr";
     
-    private CWLType m_type;
+    private final CWLType m_type;
     
     /**
      * Default constructor for implementing classes.
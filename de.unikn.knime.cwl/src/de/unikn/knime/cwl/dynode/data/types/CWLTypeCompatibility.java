@@ -0,0 +1,160 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode.data.types;
+
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Checks whether values of one data type can be passed to an input of another data type, so that incompatible
+ * connections are rejected when a workflow is configured. The check is lenient: it only fails if no value
+ * of the provided type can match the expected type. Values that may match, e.g. an optional output for a
+ * required input or a string for an enum, are left to the validation of the actual value.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLTypeCompatibility {
+    
+    private CWLTypeCompatibility() { }
+    
+    /**
+     * Checks whether values of a type can be passed to an input of another type.
+     * @param provided the type of the values, e.g. the declared type of an upstream output
+     * @param expected the declared type of the input
+     * @return false if no value of the provided type can match the expected type
+     */
+    public static boolean isCompatible(final CWLDataType provided, final CWLDataType expected) {
+        if (provided == expected || provided.equals(expected)) {
+            return true;
+        }
+        CWLType p = provided.getType();
+        CWLType e = expected.getType();
+        if (p == CWLType.ANY || e == CWLType.ANY) {
+            return true;
+        }
+        if (p == CWLType.UNION) {
+            // Null members are ignored, a missing value is reported when the node executes
+            for (CWLDataType t : ((CWLUnionType)provided).getTypes()) {
+                if (t.getType() != CWLType.NULL && isCompatible(t, expected)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (e == CWLType.UNION) {
+            for (CWLDataType t : ((CWLUnionType)expected).getTypes()) {
+                if (isCompatible(provided, t)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        switch (e) {
+            case INT:
+                // Whether a long value is in range is only known when the node executes
+                return p == CWLType.INT || p == CWLType.LONG;
+            case LONG:
+                return p == CWLType.INT || p == CWLType.LONG;
+            case FLOAT:
+            case DOUBLE:
+                return p == CWLType.INT || p == CWLType.LONG || p == CWLType.FLOAT || p == CWLType.DOUBLE;
+            case STRING:
+                // Enum values are strings
+                return p == CWLType.STRING || p == CWLType.ENUM;
+            case ENUM:
+                if (p == CWLType.STRING) {
+                    return true;
+                }
+                return p == CWLType.ENUM && haveCommonSymbol((CWLEnumType)provided, (CWLEnumType)expected);
+            case ARRAY:
+                return p == CWLType.ARRAY && isCompatible(((CWLArrayType)provided).getItemType(),
+                        ((CWLArrayType)expected).getItemType());
+            case RECORD:
+                return p == CWLType.RECORD && isCompatible((CWLRecordType)provided, (CWLRecordType)expected);
+            default:
+                return p == e;
+        }
+    }
+    
+    private static boolean isCompatible(final CWLRecordType provided, final CWLRecordType expected) {
+        for (Entry<String, CWLDataType> field : expected.getFields().entrySet()) {
+            CWLDataType providedField = provided.getFields().get(field.getKey());
+            if (providedField == null) {
+                // Fields of unknown type may have a default
+                if (!field.getValue().isOptional() && field.getValue().getType() != CWLType.ANY) {
+                    return false;
+                }
+            } else if (!isCompatible(providedField, field.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean haveCommonSymbol(final CWLEnumType provided, final CWLEnumType expected) {
+        Set<String> symbols = new HashSet<>();
+        for (String s : expected.getSymbols()) {
+            symbols.add(toSimpleSymbol(s));
+        }
+        for (String s : provided.getSymbols()) {
+            if (symbols.contains(toSimpleSymbol(s))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Strips the qualification with the name of the type from an enum symbol, e.g. #Kind/normal.
+     */
+    private static String toSimpleSymbol(final String symbol) {
+        return symbol.substring(Math.max(symbol.lastIndexOf('#'), symbol.lastIndexOf('/')) + 1);
+    }
+}
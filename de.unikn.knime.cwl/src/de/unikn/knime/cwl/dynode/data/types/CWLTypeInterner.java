@@ -0,0 +1,100 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode.data.types;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonicalizes structurally equal data types into a single instance, so that the types of the ports of all
+ * nodes share their instances and parsing a type string that was seen before is a lookup.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLTypeInterner {
+    
+    // The number of distinct types is bounded by the types used in the registered tools
+    private static final Map<CWLDataType, CWLDataType> TYPES = new ConcurrentHashMap<>();
+    private static final Map<String, CWLDataType> SYMBOLS = new ConcurrentHashMap<>();
+    
+    private CWLTypeInterner() { }
+    
+    /**
+     * Returns the canonical instance of a type.
+     * @param type the type
+     * @param <T> the class of the type
+     * @return the instance equal to the given type that was interned first
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends CWLDataType> T intern(final T type) {
+        CWLDataType existing = TYPES.putIfAbsent(type, type);
+        return existing == null ? type : (T)existing;
+    }
+    
+    /**
+     * Looks up the type parsed from a type string before.
+     * @param symbol the type string, e.g. {@code File[]?}
+     * @return the type or null if the string has not been parsed yet
+     */
+    static CWLDataType getForSymbol(final String symbol) {
+        return SYMBOLS.get(symbol);
+    }
+    
+    /**
+     * Remembers the type parsed from a type string.
+     * @param symbol the type string
+     * @param type the type parsed from the string
+     * @return the canonical instance of the type
+     */
+    static CWLDataType putForSymbol(final String symbol, final CWLDataType type) {
+        CWLDataType interned = intern(type);
+        SYMBOLS.putIfAbsent(symbol, interned);
+        return interned;
+    }
+}
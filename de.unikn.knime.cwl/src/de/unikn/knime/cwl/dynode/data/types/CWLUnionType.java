@@ -49,6 +49,8 @@
 package de.unikn.knime.cwl.dynode.data.types;
 
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -59,14 +61,30 @@ import java.util.stream.Collectors;
  */
 public class CWLUnionType implements CWLDataType {
     
-    private Set<CWLDataType> m_types;
+    private final Set<CWLDataType> m_types;
+    private final int m_hashCode;
+    // Derived from the immutable set of types once instead of on every call
+    private final Set<CWLType> m_memberTypes = EnumSet.noneOf(CWLType.class);
+    private final boolean m_containsNull;
+    private final CWLDataType m_nullable;
     
     /**
-     * Constructs a new instance of a CWL union type with a set of types.
+     * Constructs a new instance of a CWL union type with a set of types. Use
+     * {@link CWLDataType#fromString(String)} or {@link CWLDataType#fromYAMLObject(Object)} to get a shared instance.
      * @param types the types contained in the union
      */
     public CWLUnionType(final Set<CWLDataType> types) {
-        m_types = Collections.unmodifiableSet(types);
+        m_types = Collections.unmodifiableSet(new HashSet<>(types));
+        m_hashCode = 31 * m_types.hashCode();
+        CWLDataType nonNull = null;
+        for (CWLDataType dt : m_types) {
+            m_memberTypes.add(dt.getType());
+            if (dt.getType() != CWLType.NULL) {
+                nonNull = dt;
+            }
+        }
+        m_containsNull = m_types.contains(CWLNullType.getInstance());
+        m_nullable = m_types.size() == 2 && m_containsNull ? nonNull : null;
     }
     
     /**
@@ -80,7 +98,7 @@ public class CWLUnionType implements CWLDataType {
      * @return true if the union is nullable, i.e. contains the null type
      */
     public boolean containsNull() {
-        return m_types.contains(CWLNullType.getInstance());
+        return m_containsNull;
     }
     
     /**
@@ -88,14 +106,7 @@ public class CWLUnionType implements CWLDataType {
      * @return the nullable type or null if this union does not represent a nullable type
      */
     public CWLDataType nullable() {
-        if (m_types.size() == 2 && containsNull()) {
-            for (CWLDataType dt : m_types) {
-                if (dt.getType() != CWLType.NULL) {
-                    return dt;
-                }
-            }
-        }
-        return null;
+        return m_nullable;
     }
     
     /**
@@ -104,12 +115,7 @@ public class CWLUnionType implements CWLDataType {
      * @return true if the type is contained in the union
      */
     public boolean containsType(final CWLType type) {
-        for (CWLDataType dt : m_types) {
-            if (dt.getType() == type) {
-                return true;
-            }
-        }
-        return false;
+        return m_memberTypes.contains(type);
     }
     
     /**
@@ -118,26 +124,24 @@ public class CWLUnionType implements CWLDataType {
      * @return true if the type is contained in the union
      */
     public boolean containsType(final CWLDataType type) {
-        for (CWLDataType dt : m_types) {
-            if (dt.equals(type)) {
-                return true;
-            }
-        }
-        return false;
+        return m_types.contains(type);
     }
     
     @Override
     public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (!(obj instanceof CWLUnionType)) {
             return false;
         }
         CWLUnionType other = (CWLUnionType)obj;
-        return other.getTypes().equals(getTypes());
+        return other.m_hashCode == m_hashCode && other.getTypes().equals(getTypes());
     }
     
     @Override
     public int hashCode() {
-        return 31 * m_types.hashCode();
+        return m_hashCode;
     }
     
     @Override
@@ -164,6 +168,6 @@ public class CWLUnionType implements CWLDataType {
     
     @Override
     public boolean isOptional() {
-        return containsNull();
+        return m_containsNull;
     }
 }
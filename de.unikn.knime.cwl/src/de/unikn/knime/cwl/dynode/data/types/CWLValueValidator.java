@@ -0,0 +1,307 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode.data.types;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.JsonValue.ValueType;
+
+/**
+ * Checks whether a JSON value matches a CWL data type, so that wrong inputs are reported before a runner is
+ * started. The type is compiled once into a tree of checks with precomputed enum symbol sets and record field
+ * tables; a value is then checked in a single pass and a mismatch is reported with the path to the offending
+ * part of the value. Use {@link #forType(CWLDataType)} to get the shared validator of a type.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLValueValidator {
+    
+    private static final Map<CWLDataType, CWLValueValidator> VALIDATORS = new ConcurrentHashMap<>();
+    
+    private static final String CLASS_KEY = "class";
+    private static final String FILE_CLASS = "File";
+    private static final String DIRECTORY_CLASS = "Directory";
+    
+    private final CWLDataType m_type;
+    private final Check m_check;
+    
+    private CWLValueValidator(final CWLDataType type) {
+        m_type = type;
+        m_check = compile(type);
+    }
+    
+    /**
+     * Returns the validator for a type, compiling it on first use.
+     * @param type the type values are checked against
+     * @return the validator
+     */
+    public static CWLValueValidator forType(final CWLDataType type) {
+        CWLValueValidator validator = VALIDATORS.get(type);
+        if (validator == null) {
+            // Compiled outside of the map, as compiling nested types looks up further validators
+            validator = new CWLValueValidator(type);
+            CWLValueValidator existing = VALIDATORS.putIfAbsent(type, validator);
+            if (existing != null) {
+                validator = existing;
+            }
+        }
+        return validator;
+    }
+    
+    /**
+     * @return the type values are checked against
+     */
+    public CWLDataType getType() {
+        return m_type;
+    }
+    
+    /**
+     * Checks a value.
+     * @param name the name of the value used in the error message, e.g. the name of the input
+     * @param value the value
+     * @return null if the value matches the type, otherwise a message describing the mismatch, starting with
+     *          the path of the offending part, e.g. {@code sample.reads[2]: expected File but found string}
+     */
+    public String validate(final String name, final JsonValue value) {
+        String error = m_check.check(value);
+        return error == null ? null : name + error;
+    }
+    
+    /**
+     * A compiled check. Returns null for a matching value and otherwise the error message, prefixed with
+     * the path relative to the checked value, so that paths are only built for mismatches.
+     */
+    @FunctionalInterface
+    private interface Check {
+        String check(JsonValue value);
+    }
+    
+    private static Check compile(final CWLDataType type) {
+        switch (type.getType()) {
+            case NULL:
+                return kind(type, v -> v.getValueType() == ValueType.NULL);
+            case BOOLEAN:
+                return kind(type, v -> v.getValueType() == ValueType.TRUE || v.getValueType() == ValueType.FALSE);
+            case INT:
+                return kind(type, v -> v.getValueType() == ValueType.NUMBER && ((JsonNumber)v).isIntegral()
+                        && ((JsonNumber)v).bigIntegerValue().bitLength() < Integer.SIZE);
+            case LONG:
+                return kind(type, v -> v.getValueType() == ValueType.NUMBER && ((JsonNumber)v).isIntegral()
+                        && ((JsonNumber)v).bigIntegerValue().bitLength() < Long.SIZE);
+            case FLOAT:
+            case DOUBLE:
+                return kind(type, v -> v.getValueType() == ValueType.NUMBER);
+            case STRING:
+                return kind(type, v -> v.getValueType() == ValueType.STRING);
+            case FILE:
+                return kind(type, v -> isClass(v, FILE_CLASS, "location", "path", "contents"));
+            case DIRECTORY:
+                return kind(type, v -> isClass(v, DIRECTORY_CLASS, "location", "path", "listing"));
+            case ANY:
+                return kind(type, v -> v.getValueType() != ValueType.NULL);
+            case ENUM:
+                return compileEnum((CWLEnumType)type);
+            case ARRAY:
+                return compileArray((CWLArrayType)type);
+            case RECORD:
+                return compileRecord((CWLRecordType)type);
+            case UNION:
+                return compileUnion((CWLUnionType)type);
+            default:
+                return v -> null;
+        }
+    }
+    
+    private static Check kind(final CWLDataType type, final Predicate<JsonValue> matches) {
+        return v -> matches.test(v) ? null : mismatch(type, v);
+    }
+    
+    private static boolean isClass(final JsonValue v, final String cls, final String... keys) {
+        if (v.getValueType() != ValueType.OBJECT) {
+            return false;
+        }
+        JsonObject o = (JsonObject)v;
+        JsonValue c = o.get(CLASS_KEY);
+        if (!(c instanceof JsonString) || !cls.equals(((JsonString)c).getString())) {
+            return false;
+        }
+        for (String k : keys) {
+            if (o.containsKey(k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static Check compileEnum(final CWLEnumType type) {
+        Set<String> symbols = new HashSet<>();
+        for (String s : type.getSymbols()) {
+            symbols.add(s);
+            // Symbols may be qualified with the name of the type, e.g. #Kind/normal
+            symbols.add(s.substring(Math.max(s.lastIndexOf('#'), s.lastIndexOf('/')) + 1));
+        }
+        return v -> {
+            if (v.getValueType() != ValueType.STRING) {
+                return mismatch(type, v);
+            }
+            String s = ((JsonString)v).getString();
+            return symbols.contains(s) ? null : String.format(": \"%s\" is not one of %s", s, type.getSymbols());
+        };
+    }
+    
+    private static Check compileArray(final CWLArrayType type) {
+        CWLValueValidator items = forType(type.getItemType());
+        return v -> {
+            if (v.getValueType() != ValueType.ARRAY) {
+                return mismatch(type, v);
+            }
+            JsonArray a = (JsonArray)v;
+            for (int i = 0; i < a.size(); i++) {
+                String error = items.m_check.check(a.get(i));
+                if (error != null) {
+                    return "[" + i + "]" + error;
+                }
+            }
+            return null;
+        };
+    }
+    
+    private static Check compileRecord(final CWLRecordType type) {
+        List<String> names = new ArrayList<>();
+        List<CWLValueValidator> fields = new ArrayList<>();
+        for (Entry<String, CWLDataType> e : type.getFields().entrySet()) {
+            names.add(e.getKey());
+            fields.add(forType(e.getValue()));
+        }
+        String[] fieldNames = names.toArray(new String[names.size()]);
+        CWLValueValidator[] fieldValidators = fields.toArray(new CWLValueValidator[fields.size()]);
+        return v -> {
+            if (v.getValueType() != ValueType.OBJECT) {
+                return mismatch(type, v);
+            }
+            JsonObject o = (JsonObject)v;
+            for (int i = 0; i < fieldNames.length; i++) {
+                JsonValue field = o.get(fieldNames[i]);
+                CWLDataType fieldType = fieldValidators[i].m_type;
+                if (field == null) {
+                    // Fields of unknown type may have a default the runner fills in
+                    if (!fieldType.isOptional() && fieldType.getType() != CWLType.ANY) {
+                        return "." + fieldNames[i] + ": required field is missing";
+                    }
+                    continue;
+                }
+                String error = fieldValidators[i].m_check.check(field);
+                if (error != null) {
+                    return "." + fieldNames[i] + error;
+                }
+            }
+            return null;
+        };
+    }
+    
+    private static Check compileUnion(final CWLUnionType type) {
+        boolean containsNull = type.containsNull();
+        if (type.nullable() != null) {
+            // Optional values are checked against the single other type, which gives precise error paths
+            CWLValueValidator nonNull = forType(type.nullable());
+            return v -> v.getValueType() == ValueType.NULL ? null : nonNull.m_check.check(v);
+        }
+        List<CWLValueValidator> members = new ArrayList<>();
+        for (CWLDataType t : type.getTypes()) {
+            members.add(forType(t));
+        }
+        CWLValueValidator[] memberValidators = members.toArray(new CWLValueValidator[members.size()]);
+        return v -> {
+            if (containsNull && v.getValueType() == ValueType.NULL) {
+                return null;
+            }
+            for (CWLValueValidator m : memberValidators) {
+                if (m.m_check.check(v) == null) {
+                    return null;
+                }
+            }
+            return mismatch(type, v);
+        };
+    }
+    
+    private static String mismatch(final CWLDataType expected, final JsonValue v) {
+        return String.format(": expected %s but found %s", expected.toHumanReadableString(), describe(v));
+    }
+    
+    private static String describe(final JsonValue v) {
+        switch (v.getValueType()) {
+            case OBJECT:
+                JsonValue c = ((JsonObject)v).get(CLASS_KEY);
+                return c instanceof JsonString ? ((JsonString)c).getString() : "object";
+            case ARRAY:
+                return "array";
+            case STRING:
+                return "string \"" + ((JsonString)v).getString() + "\"";
+            case NUMBER:
+                return "number " + v;
+            case TRUE:
+            case FALSE:
+                return "boolean";
+            default:
+                return "null";
+        }
+    }
+}
@@ -0,0 +1,473 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.dynode.port;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * Compact binary encoding of JSON values for storing the content of CWL port objects. Values are written as
+ * a tag byte followed by their payload; integers are variable-length encoded and short strings, such as the
+ * keys {@code class}, {@code path} or {@code location} repeated in every File object, are written once and
+ * referenced by their index in a string table afterwards.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLBinaryJson {
+    
+    /** Version of the encoding, written after the magic bytes. */
+    static final int VERSION = 1;
+    
+    private static final byte[] MAGIC = {'C', 'W', 'L', 'B'};
+    
+    private static final int TAG_NULL = 0;
+    private static final int TAG_TRUE = 1;
+    private static final int TAG_FALSE = 2;
+    private static final int TAG_INTEGER = 3;
+    private static final int TAG_DECIMAL = 4;
+    private static final int TAG_STRING = 5;
+    // A string that is added to the string table
+    private static final int TAG_STRING_DEF = 6;
+    private static final int TAG_STRING_REF = 7;
+    private static final int TAG_ARRAY = 8;
+    private static final int TAG_OBJECT = 9;
+    
+    // All keys go into the string table, but only short values such as "File" or an enum symbol, as longer
+    // ones are mostly unique paths or checksums that would only make writing slower
+    private static final int MAX_TABLE_VALUE_LENGTH = 16;
+    private static final int MAX_TABLE_SIZE = 4096;
+    
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    private static final JsonBuilderFactory FACTORY = Json.createBuilderFactory(null);
+    
+    private CWLBinaryJson() { }
+    
+    /**
+     * Writes a value. The stream is flushed, but not closed.
+     * @param value the value
+     * @param out the stream to write to
+     * @throws IOException if the value cannot be written
+     */
+    static void write(final JsonValue value, final OutputStream out) throws IOException {
+        Writer w = new Writer(out);
+        for (byte b : MAGIC) {
+            w.writeByte(b);
+        }
+        w.writeByte(VERSION);
+        w.write(value);
+        w.flush();
+    }
+    
+    /**
+     * Reads a value written by {@link #write(JsonValue, OutputStream)}.
+     * @param in the stream to read from
+     * @return the value
+     * @throws IOException if the stream does not contain an encoded value of a supported version
+     */
+    static JsonValue read(final InputStream in) throws IOException {
+        Reader r = new Reader(in);
+        for (byte b : MAGIC) {
+            if (r.readByte() != (b & 0xFF)) {
+                throw new IOException("Not a binary CWL port object");
+            }
+        }
+        int version = r.readByte();
+        if (version > VERSION) {
+            throw new IOException("The CWL port object was written by a newer version (" + version + ")");
+        }
+        return r.read();
+    }
+    
+    private static final class Writer {
+        
+        private final OutputStream m_out;
+        private final Map<String, Integer> m_strings = new HashMap<>();
+        private final byte[] m_buffer = new byte[BUFFER_SIZE];
+        private int m_pos;
+        
+        Writer(final OutputStream out) {
+            m_out = out;
+        }
+        
+        void write(final JsonValue value) throws IOException {
+            switch (value.getValueType()) {
+                case NULL:
+                    writeByte(TAG_NULL);
+                    break;
+                case TRUE:
+                    writeByte(TAG_TRUE);
+                    break;
+                case FALSE:
+                    writeByte(TAG_FALSE);
+                    break;
+                case NUMBER:
+                    writeNumber((JsonNumber)value);
+                    break;
+                case STRING:
+                    writeString(((JsonString)value).getString(), false);
+                    break;
+                case ARRAY:
+                    JsonArray array = (JsonArray)value;
+                    writeByte(TAG_ARRAY);
+                    writeVarLong(array.size());
+                    for (JsonValue item : array) {
+                        write(item);
+                    }
+                    break;
+                default:
+                    JsonObject object = (JsonObject)value;
+                    writeByte(TAG_OBJECT);
+                    writeVarLong(object.size());
+                    for (Entry<String, JsonValue> e : object.entrySet()) {
+                        writeString(e.getKey(), true);
+                        write(e.getValue());
+                    }
+            }
+        }
+        
+        private void writeNumber(final JsonNumber number) throws IOException {
+            BigDecimal d = number.bigDecimalValue();
+            if (number.isIntegral() && d.precision() - d.scale() <= 18) {
+                // Fits into a long
+                writeByte(TAG_INTEGER);
+                long l = d.longValueExact();
+                writeVarLong((l << 1) ^ (l >> 63));
+            } else {
+                // Kept as text, so that the value is restored exactly
+                writeByte(TAG_DECIMAL);
+                writeUTF8(d.toString());
+            }
+        }
+        
+        private void writeString(final String s, final boolean key) throws IOException {
+            if (!key && s.length() > MAX_TABLE_VALUE_LENGTH) {
+                writeByte(TAG_STRING);
+                writeUTF8(s);
+                return;
+            }
+            Integer index = m_strings.get(s);
+            if (index != null) {
+                writeByte(TAG_STRING_REF);
+                writeVarLong(index);
+            } else if (m_strings.size() < MAX_TABLE_SIZE) {
+                m_strings.put(s, m_strings.size());
+                writeByte(TAG_STRING_DEF);
+                writeUTF8(s);
+            } else {
+                writeByte(TAG_STRING);
+                writeUTF8(s);
+            }
+        }
+        
+        private void writeUTF8(final String s) throws IOException {
+            int len = s.length();
+            if (len < 0x80 && len + 1 <= m_buffer.length - m_pos) {
+                // Most strings are short and ASCII only, so they can be copied into the buffer directly
+                int start = m_pos;
+                m_buffer[m_pos++] = (byte)len;
+                int i = 0;
+                for (; i < len; i++) {
+                    char c = s.charAt(i);
+                    if (c >= 0x80) {
+                        break;
+                    }
+                    m_buffer[m_pos++] = (byte)c;
+                }
+                if (i == len) {
+                    return;
+                }
+                m_pos = start;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            if (bytes.length > m_buffer.length - m_pos) {
+                flush();
+                m_out.write(bytes);
+            } else {
+                System.arraycopy(bytes, 0, m_buffer, m_pos, bytes.length);
+                m_pos += bytes.length;
+            }
+        }
+        
+        void writeByte(final int b) throws IOException {
+            if (m_pos == m_buffer.length) {
+                flush();
+            }
+            m_buffer[m_pos++] = (byte)b;
+        }
+        
+        void flush() throws IOException {
+            m_out.write(m_buffer, 0, m_pos);
+            m_pos = 0;
+            m_out.flush();
+        }
+        
+        private void writeVarLong(final long value) throws IOException {
+            long v = value;
+            while ((v & ~0x7FL) != 0) {
+                writeByte((int)((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            writeByte((int)v);
+        }
+    }
+    
+    private static final class Reader {
+        
+        private final InputStream m_in;
+        private final List<String> m_strings = new ArrayList<>();
+        private final byte[] m_buffer = new byte[BUFFER_SIZE];
+        private int m_pos;
+        private int m_limit;
+        
+        Reader(final InputStream in) {
+            m_in = in;
+        }
+        
+        int readByte() throws IOException {
+            if (m_pos == m_limit) {
+                fill();
+            }
+            return m_buffer[m_pos++] & 0xFF;
+        }
+        
+        private void fill() throws IOException {
+            int n;
+            do {
+                n = m_in.read(m_buffer, 0, m_buffer.length);
+            } while (n == 0);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of binary CWL port object");
+            }
+            m_pos = 0;
+            m_limit = n;
+        }
+        
+        JsonValue read() throws IOException {
+            int tag = readByte();
+            switch (tag) {
+                case TAG_NULL:
+                    return JsonValue.NULL;
+                case TAG_TRUE:
+                    return JsonValue.TRUE;
+                case TAG_FALSE:
+                    return JsonValue.FALSE;
+                case TAG_ARRAY:
+                    return readArray();
+                case TAG_OBJECT:
+                    return readObject();
+                default:
+                    // Scalars can only be created via a builder in JSON-P 1.0
+                    JsonArrayBuilder b = FACTORY.createArrayBuilder();
+                    addTo(b, tag);
+                    return b.build().get(0);
+            }
+        }
+        
+        private JsonArray readArray() throws IOException {
+            JsonArrayBuilder b = FACTORY.createArrayBuilder();
+            for (long i = readVarLong(); i > 0; i--) {
+                addTo(b, readByte());
+            }
+            return b.build();
+        }
+        
+        private JsonObject readObject() throws IOException {
+            JsonObjectBuilder b = FACTORY.createObjectBuilder();
+            for (long i = readVarLong(); i > 0; i--) {
+                String key = readString(readByte());
+                int tag = readByte();
+                switch (tag) {
+                    case TAG_NULL:
+                        b.addNull(key);
+                        break;
+                    case TAG_TRUE:
+                        b.add(key, true);
+                        break;
+                    case TAG_FALSE:
+                        b.add(key, false);
+                        break;
+                    case TAG_INTEGER:
+                        b.add(key, readInteger());
+                        break;
+                    case TAG_DECIMAL:
+                        b.add(key, new BigDecimal(readUTF8()));
+                        break;
+                    case TAG_STRING:
+                    case TAG_STRING_DEF:
+                    case TAG_STRING_REF:
+                        b.add(key, readString(tag));
+                        break;
+                    case TAG_ARRAY:
+                        b.add(key, readArray());
+                        break;
+                    case TAG_OBJECT:
+                        b.add(key, readObject());
+                        break;
+                    default:
+                        throw new IOException("Invalid tag " + tag + " in binary CWL port object");
+                }
+            }
+            return b.build();
+        }
+        
+        private void addTo(final JsonArrayBuilder b, final int tag) throws IOException {
+            switch (tag) {
+                case TAG_NULL:
+                    b.addNull();
+                    break;
+                case TAG_TRUE:
+                    b.add(true);
+                    break;
+                case TAG_FALSE:
+                    b.add(false);
+                    break;
+                case TAG_INTEGER:
+                    b.add(readInteger());
+                    break;
+                case TAG_DECIMAL:
+                    b.add(new BigDecimal(readUTF8()));
+                    break;
+                case TAG_STRING:
+                case TAG_STRING_DEF:
+                case TAG_STRING_REF:
+                    b.add(readString(tag));
+                    break;
+                case TAG_ARRAY:
+                    b.add(readArray());
+                    break;
+                case TAG_OBJECT:
+                    b.add(readObject());
+                    break;
+                default:
+                    throw new IOException("Invalid tag " + tag + " in binary CWL port object");
+            }
+        }
+        
+        private long readInteger() throws IOException {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+        
+        private String readString(final int tag) throws IOException {
+            if (tag == TAG_STRING_REF) {
+                long index = readVarLong();
+                if (index >= m_strings.size()) {
+                    throw new IOException("Invalid string reference in binary CWL port object");
+                }
+                return m_strings.get((int)index);
+            }
+            if (tag != TAG_STRING && tag != TAG_STRING_DEF) {
+                throw new IOException("Expected a string in binary CWL port object, found tag " + tag);
+            }
+            String s = readUTF8();
+            if (tag == TAG_STRING_DEF) {
+                m_strings.add(s);
+            }
+            return s;
+        }
+        
+        private String readUTF8() throws IOException {
+            long length = readVarLong();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Invalid string length in binary CWL port object");
+            }
+            int len = (int)length;
+            if (len <= m_limit - m_pos) {
+                String s = new String(m_buffer, m_pos, len, StandardCharsets.UTF_8);
+                m_pos += len;
+                return s;
+            }
+            byte[] bytes = new byte[len];
+            int off = 0;
+            while (off < len) {
+                if (m_pos == m_limit) {
+                    fill();
+                }
+                int n = Math.min(len - off, m_limit - m_pos);
+                System.arraycopy(m_buffer, m_pos, bytes, off, n);
+                m_pos += n;
+                off += n;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        private long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                v |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new EOFException("Invalid variable-length integer in binary CWL port object");
+        }
+    }
+}
@@ -49,11 +49,14 @@
 package de.unikn.knime.cwl.dynode.port;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.zip.ZipEntry;
 
 import javax.json.Json;
 import javax.json.JsonException;
+import javax.json.JsonStructure;
 import javax.json.JsonValue;
+import javax.json.JsonWriter;
 import javax.swing.JComponent;
 
 import org.knime.core.node.port.PortObject;
@@ -201,9 +204,31 @@ public class CWLPortObject implements PortObject {
         }
     }
     
-    /** The key for the storage of the content. */
+    /**
+     * Creates a port object wrapping the given CWL value of the given type. The spec of the port object carries
+     * the full type, so that downstream nodes can check it when they are configured.
+     * @param t the object's type, e.g. the declared type of the tool output the value was produced by
+     * @param val the object's value
+     * @return a port object wrapping the value
+     */
+    public static final PortObject createOutput(final CWLDataType t, final JsonValue val) {
+        PortObject po = createOutput(t.getType(), val);
+        if (po instanceof CWLPortObject) {
+            CWLPortObject cwl = (CWLPortObject)po;
+            cwl.m_spec = new CWLPortObjectSpec(cwl.m_spec.getType(), t);
+        }
+        return po;
+    }
+    
+    // Number of characters of the content shown in the summary
+    private static final int SUMMARY_LENGTH = 20;
+    
+    /** The key for the storage of the content as JSON text, as written by earlier versions. */
     protected static final String CONTENT_KEY = "content";
     
+    /** The key for the storage of the content in the binary encoding. */
+    protected static final String BINARY_CONTENT_KEY = "content.bin";
+    
     /** Convenience accessor for the port type. */
     public static final PortType TYPE = PortTypeRegistry.getInstance().getPortType(CWLPortObject.class);
     
@@ -236,9 +261,25 @@ public class CWLPortObject implements PortObject {
     
     @Override
     public String getSummary() {
-        String s = m_content.toString();
-        if (s.length() > 20) {
-            s = s.substring(0, 20) + "...";
+        String s;
+        if (m_content instanceof JsonStructure) {
+            // Only the start of large arrays and records is written, instead of the whole document
+            SummaryWriter w = new SummaryWriter();
+            JsonWriter writer = Json.createWriter(w);
+            try {
+                writer.write((JsonStructure)m_content);
+                writer.close();
+            } catch (JsonException e) {
+                if (!w.isFull()) {
+                    throw e;
+                }
+            }
+            s = w.toString();
+        } else {
+            s = m_content.toString();
+        }
+        if (s.length() > SUMMARY_LENGTH) {
+            s = s.substring(0, SUMMARY_LENGTH) + "...";
         }
         return s;
     }
@@ -283,9 +324,30 @@ public class CWLPortObject implements PortObject {
      * @throws IOException when the document cannot be saved.
      */
     public void saveTo(final PortObjectZipOutputStream out) throws IOException {
-        ZipEntry content = new ZipEntry(CONTENT_KEY);
+        ZipEntry content = new ZipEntry(BINARY_CONTENT_KEY);
         out.putNextEntry(content);
-        out.write(Json.createObjectBuilder().add("content", m_content).build().toString().getBytes());
+        CWLBinaryJson.write(m_content, out);
+    }
+    
+    /**
+     * Reads the content written by {@link #saveTo(PortObjectZipOutputStream)}. Content stored as JSON text by
+     * earlier versions is read as well.
+     * 
+     * @param in the stream to read the content from
+     * @return the content
+     * @throws IOException when the content cannot be read
+     * @throws JsonException when the content is stored as JSON text that cannot be parsed
+     */
+    protected static JsonValue readContent(final PortObjectZipInputStream in) throws IOException, JsonException {
+        ZipEntry content = in.getNextEntry();
+        if (content == null) {
+            throw new IOException("The CWL port object has no content");
+        }
+        if (content.getName().equals(BINARY_CONTENT_KEY)) {
+            return CWLBinaryJson.read(in);
+        }
+        assert content.getName().equals(CONTENT_KEY);
+        return Json.createReader(in).readObject().get("content");
     }
     
     /**
@@ -298,8 +360,69 @@ public class CWLPortObject implements PortObject {
      */
     public static CWLPortObject loadFromJson(final PortObjectZipInputStream in)
             throws IOException, JsonException {
-        ZipEntry content = in.getNextEntry();
-        assert content.getName().equals(CONTENT_KEY);
-        return new CWLPortObject(Json.createReader(in).readObject().get("content"));
+        return new CWLPortObject(readContent(in));
+    }
+    
+    /**
+     * Loads the CWLPortObject from an input stream and keeps the full data type of the spec it was saved with.
+     * 
+     * @param in the InputStream to load the JSON from
+     * @param spec the spec the port object was saved with, may be null
+     * @return a CWLPortObject that is initialized from the JSON in the given stream
+     * @throws IOException when the document cannot be loaded
+     * @throws JsonException when the document's JSON cannot be parsed
+     */
+    public static CWLPortObject loadFromJson(final PortObjectZipInputStream in, final CWLPortObjectSpec spec)
+            throws IOException, JsonException {
+        return restoreSpec(loadFromJson(in), spec);
+    }
+    
+    /**
+     * Sets the full data type of a loaded port object to the one of the spec it was saved with.
+     * 
+     * @param po the loaded port object
+     * @param spec the spec the port object was saved with, may be null
+     * @param <T> the type of the port object
+     * @return the port object
+     */
+    protected static <T extends CWLPortObject> T restoreSpec(final T po, final CWLPortObjectSpec spec) {
+        if (spec != null && spec.getDataType() != null) {
+            CWLPortObject cwl = po;
+            cwl.m_spec = new CWLPortObjectSpec(cwl.m_spec.getType(), spec.getDataType());
+        }
+        return po;
+    }
+    
+    /**
+     * Collects the characters needed for the summary and fails once it has enough, so that writing stops.
+     */
+    private static final class SummaryWriter extends Writer {
+        
+        private final StringBuilder m_text = new StringBuilder();
+        
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) throws IOException {
+            if (isFull()) {
+                throw new IOException("Summary complete");
+            }
+            m_text.append(cbuf, off, Math.min(len, SUMMARY_LENGTH + 1 - m_text.length()));
+        }
+        
+        boolean isFull() {
+            return m_text.length() > SUMMARY_LENGTH;
+        }
+        
+        @Override
+        public void flush() {
+        }
+        
+        @Override
+        public void close() {
+        }
+        
+        @Override
+        public String toString() {
+            return m_text.toString();
+        }
     }
 }
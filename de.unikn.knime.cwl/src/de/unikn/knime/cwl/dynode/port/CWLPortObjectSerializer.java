@@ -74,6 +74,6 @@ public class CWLPortObjectSerializer extends PortObjectSerializer<CWLPortObject>
     @Override
     public CWLPortObject loadPortObject(final PortObjectZipInputStream in, final PortObjectSpec spec,
             final ExecutionMonitor exec) throws IOException, CanceledExecutionException {
-        return CWLPortObject.loadFromJson(in);
+        return CWLPortObject.loadFromJson(in, (CWLPortObjectSpec)spec);
     }
 }
@@ -49,9 +49,14 @@
 package de.unikn.knime.cwl.dynode.port;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.zip.ZipEntry;
 
+import javax.json.Json;
+import javax.json.JsonException;
+
 import javax.swing.JComponent;
 
 import org.apache.commons.io.IOUtils;
@@ -59,6 +64,7 @@ import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortObjectSpecZipInputStream;
 import org.knime.core.node.port.PortObjectSpecZipOutputStream;
 
+import de.unikn.knime.cwl.dynode.data.types.CWLDataType;
 import de.unikn.knime.cwl.dynode.data.types.CWLType;
 
 /**
@@ -69,15 +75,35 @@ import de.unikn.knime.cwl.dynode.data.types.CWLType;
 public class CWLPortObjectSpec implements PortObjectSpec {
 
     private static final String TYPE_KEY = "TYPE";
+    private static final String DATA_TYPE_KEY = "DATA_TYPE";
     
     private CWLType m_type;
+    private CWLDataType m_dataType;
     
     /**
-     * Creates a new instance of {@code CWLPortObjectSpec}.
+     * Creates a new instance of {@code CWLPortObjectSpec} without a structural type.
      * @param type the type stored in the port object
      */
     public CWLPortObjectSpec(final CWLType type) {
+        this(type, null);
+    }
+    
+    /**
+     * Creates a new instance of {@code CWLPortObjectSpec}.
+     * @param dataType the full type of the data stored in the port object, e.g. the declared type of a tool output
+     */
+    public CWLPortObjectSpec(final CWLDataType dataType) {
+        this(dataType.getType(), dataType);
+    }
+    
+    /**
+     * Creates a new instance of {@code CWLPortObjectSpec}.
+     * @param type the type stored in the port object
+     * @param dataType the full type of the data stored in the port object or null if it is not known
+     */
+    public CWLPortObjectSpec(final CWLType type, final CWLDataType dataType) {
         m_type = type;
+        m_dataType = dataType;
     }
     
     @Override
@@ -92,6 +118,14 @@ public class CWLPortObjectSpec implements PortObjectSpec {
         return m_type;
     }
     
+    /**
+     * @return the full type of the data stored in the port object, including item types, record fields and
+     *          enum symbols, or null if only {@link #getType()} is known
+     */
+    public CWLDataType getDataType() {
+        return m_dataType;
+    }
+    
     /**
      * Saves the PFAPortObjectSpec to an output stream.
      * 
@@ -102,6 +136,10 @@ public class CWLPortObjectSpec implements PortObjectSpec {
         ZipEntry typeEntry = new ZipEntry(TYPE_KEY);
         out.putNextEntry(typeEntry);
         out.write(m_type.toString().getBytes(Charset.defaultCharset()));
+        if (m_dataType != null) {
+            out.putNextEntry(new ZipEntry(DATA_TYPE_KEY));
+            out.write(CWLDataType.toJson(m_dataType).toString().getBytes(StandardCharsets.UTF_8));
+        }
     }
 
     /**
@@ -116,6 +154,17 @@ public class CWLPortObjectSpec implements PortObjectSpec {
         assert typeEntry.getName().equals(TYPE_KEY);
         String typeStr = IOUtils.toString(in, Charset.defaultCharset()); 
         CWLType type = CWLType.valueOf(typeStr);
-        return new CWLPortObjectSpec(type);
+        // Specs saved by earlier versions only contain the type
+        CWLDataType dataType = null;
+        ZipEntry dataTypeEntry = in.getNextEntry();
+        if (dataTypeEntry != null && dataTypeEntry.getName().equals(DATA_TYPE_KEY)) {
+            String json = IOUtils.toString(in, StandardCharsets.UTF_8);
+            try {
+                dataType = CWLDataType.fromJson(Json.createReader(new StringReader(json)).read());
+            } catch (JsonException | IllegalArgumentException | ClassCastException e) {
+                throw new IOException("Invalid CWL data type in port spec: " + json, e);
+            }
+        }
+        return new CWLPortObjectSpec(type, dataType);
     }
 }
@@ -57,6 +57,7 @@ import org.knime.core.node.port.PortObjectZipInputStream;
 
 import de.unikn.knime.cwl.dynode.port.AbstractCWLPortObjectSerializer;
 import de.unikn.knime.cwl.dynode.port.CWLPortObject;
+import de.unikn.knime.cwl.dynode.port.CWLPortObjectSpec;
 
 /**
  * Class for writing and loading objects of {@link CWLPortObject} class.
@@ -69,6 +70,6 @@ public class CWLArrayPortObjectSerializer extends AbstractCWLPortObjectSerialize
     @Override
     public CWLArrayPortObject loadPortObject(final PortObjectZipInputStream in, final PortObjectSpec spec,
             final ExecutionMonitor exec) throws IOException, CanceledExecutionException {
-        return CWLArrayPortObject.loadFromJson(in);
+        return CWLArrayPortObject.loadFromJson(in, (CWLPortObjectSpec)spec);
     }
 }
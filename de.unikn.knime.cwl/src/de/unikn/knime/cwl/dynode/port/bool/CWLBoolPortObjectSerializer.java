@@ -57,6 +57,7 @@ import org.knime.core.node.port.PortObjectZipInputStream;
 
 import de.unikn.knime.cwl.dynode.port.AbstractCWLPortObjectSerializer;
 import de.unikn.knime.cwl.dynode.port.CWLPortObject;
+import de.unikn.knime.cwl.dynode.port.CWLPortObjectSpec;
 
 /**
  * Class for writing and loading objects of {@link CWLPortObject} class.
@@ -69,6 +70,6 @@ public class CWLBoolPortObjectSerializer extends AbstractCWLPortObjectSerializer
     @Override
     public CWLBoolPortObject loadPortObject(final PortObjectZipInputStream in, final PortObjectSpec spec,
             final ExecutionMonitor exec) throws IOException, CanceledExecutionException {
-        return CWLBoolPortObject.loadFromJson(in);
+        return CWLBoolPortObject.loadFromJson(in, (CWLPortObjectSpec)spec);
     }
 }
@@ -49,7 +49,6 @@
 package de.unikn.knime.cwl.dynode.port.dir;
 
 import java.io.IOException;
-import java.util.zip.ZipEntry;
 
 import javax.json.Json;
 import javax.json.JsonException;
@@ -63,6 +62,7 @@ import org.knime.core.node.port.PortTypeRegistry;
 
 import de.unikn.knime.cwl.dynode.data.types.CWLType;
 import de.unikn.knime.cwl.dynode.port.CWLPortObject;
+import de.unikn.knime.cwl.dynode.port.CWLPortObjectSpec;
 
 /**
  * Port object for files.
@@ -96,9 +96,21 @@ public class CWLDirectoryPortObject extends CWLPortObject {
      */
     public static CWLDirectoryPortObject loadFromJson(final PortObjectZipInputStream in)
             throws IOException, JsonException {
-        ZipEntry content = in.getNextEntry();
-        assert content.getName().equals(CONTENT_KEY);
-        return new CWLDirectoryPortObject((JsonObject)Json.createReader(in).readObject().get("content"));
+        return new CWLDirectoryPortObject((JsonObject)readContent(in));
+    }
+    
+    /**
+     * Loads the CWLPortObject from an input stream and keeps the full data type of the spec it was saved with.
+     * 
+     * @param in the InputStream to load the JSON from
+     * @param spec the spec the port object was saved with, may be null
+     * @return a CWLPortObject that is initialized from the JSON in the given stream
+     * @throws IOException when the document cannot be loaded
+     * @throws JsonException when the document's JSON cannot be parsed
+     */
+    public static CWLDirectoryPortObject loadFromJson(final PortObjectZipInputStream in, final CWLPortObjectSpec spec)
+            throws IOException, JsonException {
+        return restoreSpec(loadFromJson(in), spec);
     }
     
     /**
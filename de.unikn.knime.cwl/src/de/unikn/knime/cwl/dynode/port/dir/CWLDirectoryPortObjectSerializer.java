@@ -57,6 +57,7 @@ import org.knime.core.node.port.PortObjectZipInputStream;
 
 import de.unikn.knime.cwl.dynode.port.AbstractCWLPortObjectSerializer;
 import de.unikn.knime.cwl.dynode.port.CWLPortObject;
+import de.unikn.knime.cwl.dynode.port.CWLPortObjectSpec;
 
 /**
  * Class for writing and loading objects of {@link CWLPortObject} class.
@@ -69,6 +70,6 @@ public class CWLDirectoryPortObjectSerializer extends AbstractCWLPortObjectSeria
     @Override
     public CWLDirectoryPortObject loadPortObject(final PortObjectZipInputStream in, final PortObjectSpec spec,
             final ExecutionMonitor exec) throws IOException, CanceledExecutionException {
-        return CWLDirectoryPortObject.loadFromJson(in);
+        return CWLDirectoryPortObject.loadFromJson(in, (CWLPortObjectSpec)spec);
     }
 }
@@ -49,7 +49,6 @@
 package de.unikn.knime.cwl.dynode.port.integer;
 
 import java.io.IOException;
-import java.util.zip.ZipEntry;
 
 import javax.json.Json;
 import javax.json.JsonException;
@@ -62,6 +61,7 @@ import org.knime.core.node.port.PortType;
 import org.knime.core.node.port.PortTypeRegistry;
 
 import de.unikn.knime.cwl.dynode.data.types.CWLType;
+import de.unikn.knime.cwl.dynode.port.CWLPortObjectSpec;
 import de.unikn.knime.cwl.dynode.port.flt.CWLFloatPortObject;
 
 /**
@@ -104,9 +104,21 @@ public class CWLIntPortObject extends CWLFloatPortObject {
      * @throws JsonException when the document's JSON cannot be parsed
      */
     public static CWLIntPortObject loadFromJson(final PortObjectZipInputStream in) throws IOException, JsonException {
-        ZipEntry content = in.getNextEntry();
-        assert content.getName().equals(CONTENT_KEY);
-        return new CWLIntPortObject((JsonNumber)Json.createReader(in).readObject().get("content"));
+        return new CWLIntPortObject((JsonNumber)readContent(in));
+    }
+    
+    /**
+     * Loads the CWLPortObject from an input stream and keeps the full data type of the spec it was saved with.
+     * 
+     * @param in the InputStream to load the JSON from
+     * @param spec the spec the port object was saved with, may be null
+     * @return a CWLPortObject that is initialized from the JSON in the given stream
+     * @throws IOException when the document cannot be loaded
+     * @throws JsonException when the document's JSON cannot be parsed
+     */
+    public static CWLIntPortObject loadFromJson(final PortObjectZipInputStream in, final CWLPortObjectSpec spec)
+            throws IOException, JsonException {
+        return restoreSpec(loadFromJson(in), spec);
     }
     
     /**
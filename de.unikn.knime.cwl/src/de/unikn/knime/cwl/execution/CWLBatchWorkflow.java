@@ -0,0 +1,275 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import org.yaml.snakeyaml.Yaml;
+
+import de.unikn.knime.cwl.execution.CWLCommandLineTool.UnsupportedToolException;
+
+/**
+ * Generates a workflow that scatters a tool over a batch of input sets, so that the whole batch is
+ * executed by a single cwl-runner call. The workflow has the same input and output names as the tool,
+ * each of them an array with one element per input set.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLBatchWorkflow {
+    
+    private static final String TYPE_KEY = "type";
+    private static final String NULL_TYPE = "null";
+    private static final String STEP = "batch";
+    // Used for tools that do not declare their version
+    private static final String DEFAULT_CWL_VERSION = "v1.0";
+    
+    /** Types that can be referenced by name from the generated workflow. */
+    private static final Set<String> PRIMITIVE_TYPES = new HashSet<>(Arrays.asList(NULL_TYPE, "boolean", "int",
+            "long", "float", "double", "string", "File", "Directory", "Any", "array", "record", "enum"));
+    
+    private CWLBatchWorkflow() { }
+    
+    /**
+     * Creates the workflow for a batch.
+     * @param toolPath the path to the tool
+     * @param usedInputs the inputs that are set in at least one input set of the batch
+     * @return the workflow
+     * @throws IOException when the tool cannot be read or uses types the workflow cannot refer to
+     */
+    static JsonObject create(final Path toolPath, final Set<String> usedInputs) throws IOException {
+        Object cwl;
+        try (InputStream is = Files.newInputStream(toolPath)) {
+            cwl = new Yaml().load(is);
+        } catch (RuntimeException e) {
+            throw new IOException("The CWL file " + toolPath + " cannot be parsed", e);
+        }
+        if (!(cwl instanceof Map)) {
+            throw new IOException("The CWL file " + toolPath + " does not contain a single process");
+        }
+        Map<String, Map<?, ?>> toolInputs;
+        Map<String, Map<?, ?>> toolOutputs;
+        try {
+            toolInputs = CWLCommandLineTool.getParameters(((Map<?, ?>)cwl).get("inputs"));
+            toolOutputs = CWLCommandLineTool.getParameters(((Map<?, ?>)cwl).get("outputs"));
+        } catch (UnsupportedToolException e) {
+            throw new IOException("Invalid parameters in " + toolPath + ": " + e.getMessage(), e);
+        }
+        
+        if (toolInputs.keySet().stream().noneMatch(usedInputs::contains)) {
+            // A scatter needs at least one input to scatter over
+            throw new IOException("A batch needs at least one input that is set");
+        }
+        
+        JsonObjectBuilder inputs = Json.createObjectBuilder();
+        JsonObjectBuilder stepIn = Json.createObjectBuilder();
+        JsonArrayBuilder scatter = Json.createArrayBuilder();
+        for (Entry<String, Map<?, ?>> e : toolInputs.entrySet()) {
+            if (!usedInputs.contains(e.getKey())) {
+                // Left to the tool's default
+                continue;
+            }
+            // Input sets that do not set the input pass null, so that the tool's default applies
+            inputs.add(e.getKey(), arrayOf(nullable(normalizeType(e.getValue().get(TYPE_KEY)))));
+            stepIn.add(e.getKey(), e.getKey());
+            scatter.add(e.getKey());
+        }
+        JsonObjectBuilder outputs = Json.createObjectBuilder();
+        JsonArrayBuilder stepOut = Json.createArrayBuilder();
+        for (Entry<String, Map<?, ?>> e : toolOutputs.entrySet()) {
+            outputs.add(e.getKey(), Json.createObjectBuilder()
+                    .add(TYPE_KEY, arrayOf(normalizeType(e.getValue().get(TYPE_KEY))).get(TYPE_KEY))
+                    .add("outputSource", STEP + "/" + e.getKey()));
+            stepOut.add(e.getKey());
+        }
+        // Mixing versions within a workflow is rejected by the runner
+        Object version = ((Map<?, ?>)cwl).get("cwlVersion");
+        return Json.createObjectBuilder()
+                .add("cwlVersion", version instanceof String ? (String)version : DEFAULT_CWL_VERSION)
+                .add("class", "Workflow")
+                .add("requirements", Json.createObjectBuilder()
+                        .add("ScatterFeatureRequirement", Json.createObjectBuilder()))
+                .add("inputs", inputs)
+                .add("outputs", outputs)
+                .add("steps", Json.createObjectBuilder()
+                        .add(STEP, Json.createObjectBuilder()
+                                .add("run", toolPath.toAbsolutePath().toString())
+                                .add("scatter", scatter)
+                                .add("scatterMethod", "dotproduct")
+                                .add("in", stepIn)
+                                .add("out", stepOut)))
+                .build();
+    }
+    
+    /**
+     * Creates the job for a batch.
+     * @param workflow the workflow created for the batch
+     * @param inputSets the input sets of the batch
+     * @return the job object
+     */
+    static JsonObject createJob(final JsonObject workflow, final List<Map<String, JsonValue>> inputSets) {
+        JsonObjectBuilder job = Json.createObjectBuilder();
+        for (String input : workflow.getJsonObject("inputs").keySet()) {
+            JsonArrayBuilder values = Json.createArrayBuilder();
+            for (Map<String, JsonValue> inputSet : inputSets) {
+                JsonValue v = inputSet.get(input);
+                values.add(v == null ? JsonValue.NULL : v);
+            }
+            job.add(input, values);
+        }
+        return job.build();
+    }
+    
+    /**
+     * Splits the output of a batch into the outputs of the individual input sets.
+     * @param output the output object of the workflow
+     * @param size the number of input sets in the batch
+     * @return one output object per input set
+     * @throws IOException when the output does not contain an array of the right size for every output
+     */
+    static List<JsonObject> split(final JsonObject output, final int size) throws IOException {
+        List<JsonObjectBuilder> builders = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            builders.add(Json.createObjectBuilder());
+        }
+        for (Entry<String, JsonValue> e : output.entrySet()) {
+            if (!(e.getValue() instanceof JsonArray) || ((JsonArray)e.getValue()).size() != size) {
+                throw new IOException("Batch output " + e.getKey() + " does not contain one value per input set");
+            }
+            JsonArray values = (JsonArray)e.getValue();
+            for (int i = 0; i < size; i++) {
+                builders.get(i).add(e.getKey(), values.get(i));
+            }
+        }
+        List<JsonObject> result = new ArrayList<>();
+        for (JsonObjectBuilder b : builders) {
+            result.add(b.build());
+        }
+        return result;
+    }
+    
+    private static JsonObject arrayOf(final JsonValue itemType) {
+        return Json.createObjectBuilder()
+                .add(TYPE_KEY, Json.createObjectBuilder().add(TYPE_KEY, "array").add("items", itemType))
+                .build();
+    }
+    
+    private static JsonValue nullable(final JsonValue type) {
+        JsonArrayBuilder union = Json.createArrayBuilder().add(NULL_TYPE);
+        if (type instanceof JsonArray) {
+            for (JsonValue t : (JsonArray)type) {
+                if (!(t instanceof JsonString && ((JsonString)t).getString().equals(NULL_TYPE))) {
+                    union.add(t);
+                }
+            }
+        } else {
+            union.add(type);
+        }
+        return union.build();
+    }
+    
+    /**
+     * Expands the ? and [] shorthands, which are not allowed everywhere in the generated workflow,
+     * and rejects references to types defined in the tool's document.
+     */
+    private static JsonValue normalizeType(final Object type) throws IOException {
+        if (type instanceof String) {
+            String s = (String)type;
+            if (s.endsWith("?")) {
+                return nullable(normalizeType(s.substring(0, s.length() - 1)));
+            } else if (s.endsWith("[]")) {
+                return Json.createObjectBuilder()
+                        .add(TYPE_KEY, "array")
+                        .add("items", normalizeType(s.substring(0, s.length() - 2)))
+                        .build();
+            } else if (s.equals("stdout") || s.equals("stderr")) {
+                return Json.createArrayBuilder().add("File").build().get(0);
+            } else if (!PRIMITIVE_TYPES.contains(s)) {
+                throw new IOException("Type " + s + " cannot be used in a batch workflow");
+            }
+            return Json.createArrayBuilder().add(s).build().get(0);
+        } else if (type instanceof List) {
+            JsonArrayBuilder union = Json.createArrayBuilder();
+            for (Object t : (List<?>)type) {
+                union.add(normalizeType(t));
+            }
+            return union.build();
+        } else if (type instanceof Map) {
+            Map<?, ?> m = (Map<?, ?>)type;
+            JsonObjectBuilder b = Json.createObjectBuilder();
+            for (Entry<?, ?> e : m.entrySet()) {
+                String key = e.getKey().toString();
+                if (key.equals("items") || (key.equals(TYPE_KEY) && !(e.getValue() instanceof String))) {
+                    b.add(key, normalizeType(e.getValue()));
+                } else if (!key.equals("inputBinding") && !key.equals("outputBinding")) {
+                    b.add(key, CWLCommandLineTool.toJson(e.getValue()));
+                }
+            }
+            return b.build();
+        }
+        throw new IOException("Unsupported type " + type + " in batch workflow");
+    }
+}
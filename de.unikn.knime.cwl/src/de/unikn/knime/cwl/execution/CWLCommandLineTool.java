@@ -0,0 +1,720 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import org.yaml.snakeyaml.Yaml;
+
+import de.unikn.knime.cwl.dynode.data.types.CWLArrayType;
+import de.unikn.knime.cwl.dynode.data.types.CWLDataType;
+import de.unikn.knime.cwl.dynode.data.types.CWLType;
+import de.unikn.knime.cwl.dynode.data.types.CWLUnionType;
+
+/**
+ * A CommandLineTool that is simple enough to be executed without a cwl-runner: no requirements or hints,
+ * no JavaScript, inputs bound to the command line by position and prefix only and outputs that are
+ * either captured standard streams or files collected by glob. Strings may contain parameter references
+ * of the form {@code $(inputs.name.property)} and {@code $(runtime.outdir)}.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLCommandLineTool {
+    
+    private static final String CLASS_KEY = "class";
+    private static final String PATH_KEY = "path";
+    private static final String LOCATION_KEY = "location";
+    private static final String TYPE_KEY = "type";
+    private static final String ID_KEY = "id";
+    private static final String FILE_CLASS = "File";
+    private static final String DIRECTORY_CLASS = "Directory";
+    private static final String STDOUT = "stdout";
+    private static final String STDERR = "stderr";
+    
+    private static final Set<String> TOOL_KEYS = new HashSet<>(Arrays.asList("cwlVersion", CLASS_KEY, ID_KEY,
+            "label", "doc", "baseCommand", "arguments", "inputs", "outputs", STDOUT, STDERR, "successCodes",
+            "temporaryFailCodes", "permanentFailCodes", "$namespaces", "$schemas"));
+    private static final Set<String> INPUT_KEYS = new HashSet<>(Arrays.asList(ID_KEY, TYPE_KEY, "label", "doc",
+            "format", "default", "inputBinding"));
+    private static final Set<String> INPUT_BINDING_KEYS = new HashSet<>(Arrays.asList("position", "prefix",
+            "separate", "itemSeparator", "shellQuote"));
+    private static final Set<String> OUTPUT_KEYS = new HashSet<>(Arrays.asList(ID_KEY, TYPE_KEY, "label", "doc",
+            "format", "outputBinding"));
+    private static final Set<String> OUTPUT_BINDING_KEYS = Collections.singleton("glob");
+    
+    private static final Pattern PARAMETER_REFERENCE = Pattern.compile("\\$\\(([^)]*)\\)");
+    private static final Pattern SUPPORTED_REFERENCE = Pattern.compile("(inputs|runtime)(\\.\\w+)+");
+    
+    private final Path m_toolDir;
+    private final List<String> m_baseCommand;
+    private final List<Binding> m_bindings;
+    private final Map<String, Input> m_inputs;
+    private final List<Output> m_outputs;
+    private final String m_stdout;
+    private final String m_stderr;
+    private final Set<Integer> m_successCodes;
+    
+    private CWLCommandLineTool(final Path toolDir, final Map<?, ?> cwl) throws UnsupportedToolException {
+        m_toolDir = toolDir;
+        if (!"CommandLineTool".equals(cwl.get(CLASS_KEY))) {
+            throw new UnsupportedToolException("not a CommandLineTool");
+        }
+        checkKeys(cwl, TOOL_KEYS, "tool");
+        m_baseCommand = new ArrayList<>();
+        for (Object o : asList(cwl.get("baseCommand"))) {
+            m_baseCommand.add(checkString(o, false));
+        }
+        m_bindings = new ArrayList<>();
+        int argIndex = 0;
+        for (Object o : asList(cwl.get("arguments"))) {
+            // Only literal arguments, optionally with a position
+            if (o instanceof Map) {
+                Map<?, ?> arg = (Map<?, ?>)o;
+                checkKeys(arg, new HashSet<>(Arrays.asList("position", "prefix", "separate", "valueFrom")),
+                        "argument");
+                m_bindings.add(new Binding(null, argIndex++, new InputBinding(arg),
+                        checkString(arg.get("valueFrom"), true)));
+            } else {
+                m_bindings.add(new Binding(null, argIndex++, new InputBinding(Collections.emptyMap()),
+                        checkString(o, true)));
+            }
+        }
+        m_inputs = new LinkedHashMap<>();
+        for (Entry<String, Map<?, ?>> e : getParameters(cwl.get("inputs")).entrySet()) {
+            Input input = new Input(e.getKey(), e.getValue());
+            m_inputs.put(input.m_id, input);
+            if (input.m_binding != null) {
+                m_bindings.add(new Binding(input.m_id, 0, input.m_binding, null));
+            }
+        }
+        m_outputs = new ArrayList<>();
+        for (Entry<String, Map<?, ?>> e : getParameters(cwl.get("outputs")).entrySet()) {
+            m_outputs.add(new Output(e.getKey(), e.getValue()));
+        }
+        m_stdout = cwl.containsKey(STDOUT) ? checkString(cwl.get(STDOUT), true) : null;
+        m_stderr = cwl.containsKey(STDERR) ? checkString(cwl.get(STDERR), true) : null;
+        m_successCodes = new HashSet<>();
+        for (Object o : asList(cwl.get("successCodes"))) {
+            if (!(o instanceof Integer)) {
+                throw new UnsupportedToolException("successCodes must be integers");
+            }
+            m_successCodes.add((Integer)o);
+        }
+        if (m_successCodes.isEmpty()) {
+            m_successCodes.add(0);
+        }
+        // Command line order: position first, then arguments in their order, then inputs by name
+        m_bindings.sort(Comparator.comparingInt((Binding b) -> b.m_binding.m_position)
+                .thenComparing(b -> b.m_inputId != null)
+                .thenComparingInt(b -> b.m_argIndex)
+                .thenComparing(b -> b.m_inputId == null ? "" : b.m_inputId));
+    }
+    
+    /**
+     * Loads a tool description and checks whether it can be executed without a cwl-runner.
+     * @param toolPath the path to the CWL file
+     * @return the tool
+     * @throws IOException when the file cannot be read
+     * @throws UnsupportedToolException when the tool uses features that require a cwl-runner
+     */
+    static CWLCommandLineTool load(final Path toolPath) throws IOException, UnsupportedToolException {
+        Object cwl;
+        try (InputStream is = Files.newInputStream(toolPath)) {
+            cwl = new Yaml().load(is);
+        } catch (RuntimeException e) {
+            throw new IOException("The CWL file " + toolPath + " cannot be parsed", e);
+        }
+        if (!(cwl instanceof Map)) {
+            throw new UnsupportedToolException("not a single tool description");
+        }
+        return new CWLCommandLineTool(toolPath.toAbsolutePath().getParent(), (Map<?, ?>)cwl);
+    }
+    
+    /**
+     * Completes the input object of a job: defaults are inserted for missing inputs, and
+     * File and Directory objects get a path and the properties parameter references can use.
+     * @param inputs the inputs of the job
+     * @param jobDir the directory relative paths in the inputs are resolved against
+     * @return the completed input object
+     * @throws IOException when a File or Directory object has no valid location
+     */
+    JsonObject createInputObject(final Map<String, JsonValue> inputs, final Path jobDir) throws IOException {
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        for (Input input : m_inputs.values()) {
+            JsonValue value = inputs.get(input.m_id);
+            Path baseDir = jobDir;
+            if (value == null || value == JsonValue.NULL) {
+                value = input.m_default;
+                baseDir = m_toolDir;
+            }
+            if (value != null) {
+                builder.add(input.m_id, completeFileObjects(value, baseDir));
+            }
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Builds the command line of the tool.
+     * @param inputs the completed input object
+     * @param runtime the runtime object, i.e. outdir and tmpdir
+     * @return the command line
+     * @throws IOException when a parameter reference cannot be resolved
+     */
+    List<String> createCommandLine(final JsonObject inputs, final JsonObject runtime) throws IOException {
+        List<String> cmd = new ArrayList<>(m_baseCommand);
+        for (Binding b : m_bindings) {
+            InputBinding ib = b.m_binding;
+            if (b.m_inputId == null) {
+                List<String> value = b.m_literal == null ? Collections.emptyList()
+                        : Collections.singletonList(evaluate(b.m_literal, inputs, runtime));
+                addArguments(cmd, ib, value);
+                continue;
+            }
+            JsonValue v = inputs.get(b.m_inputId);
+            if (v == null || v == JsonValue.NULL || v == JsonValue.FALSE) {
+                continue;
+            }
+            if (v == JsonValue.TRUE) {
+                addArguments(cmd, ib, Collections.emptyList());
+            } else if (v instanceof JsonArray) {
+                List<String> items = ((JsonArray)v).stream().map(CWLCommandLineTool::toArgument)
+                        .collect(Collectors.toList());
+                if (items.isEmpty()) {
+                    continue;
+                }
+                addArguments(cmd, ib, ib.m_itemSeparator == null ? items
+                        : Collections.singletonList(String.join(ib.m_itemSeparator, items)));
+            } else {
+                addArguments(cmd, ib, Collections.singletonList(toArgument(v)));
+            }
+        }
+        return cmd;
+    }
+    
+    /**
+     * @param inputs the completed input object
+     * @param runtime the runtime object
+     * @return the name of the file standard output is written to or null if it is not captured
+     * @throws IOException when a parameter reference cannot be resolved
+     */
+    String getStdoutFile(final JsonObject inputs, final JsonObject runtime) throws IOException {
+        return getStreamFile(m_stdout, STDOUT, inputs, runtime);
+    }
+    
+    /**
+     * @param inputs the completed input object
+     * @param runtime the runtime object
+     * @return the name of the file standard error is written to or null if it is not captured
+     * @throws IOException when a parameter reference cannot be resolved
+     */
+    String getStderrFile(final JsonObject inputs, final JsonObject runtime) throws IOException {
+        return getStreamFile(m_stderr, STDERR, inputs, runtime);
+    }
+    
+    /**
+     * @param exitCode the exit code of the tool's process
+     * @return whether the exit code denotes a successful execution
+     */
+    boolean isSuccess(final int exitCode) {
+        return m_successCodes.contains(exitCode);
+    }
+    
+    /**
+     * Collects the outputs of the tool after it has finished.
+     * @param inputs the completed input object
+     * @param runtime the runtime object
+     * @param stdoutFile the file standard output has been written to, may be null
+     * @param stderrFile the file standard error has been written to, may be null
+     * @return the output object
+     * @throws IOException when a required output cannot be found or more than one file is found for an output
+     *          that is not an array
+     */
+    JsonObject collectOutputs(final JsonObject inputs, final JsonObject runtime, final String stdoutFile,
+            final String stderrFile) throws IOException {
+        Path outdir = Paths.get(runtime.getString("outdir"));
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        for (Output o : m_outputs) {
+            List<Path> matches = new ArrayList<>();
+            if (o.m_stream != null) {
+                matches.add(outdir.resolve(o.m_stream.equals(STDOUT) ? stdoutFile : stderrFile));
+            } else {
+                for (String glob : o.m_globs) {
+                    matches.addAll(glob(outdir, evaluate(glob, inputs, runtime), o.m_directory));
+                }
+            }
+            if (o.m_array) {
+                JsonArrayBuilder ab = Json.createArrayBuilder();
+                for (Path p : matches) {
+                    ab.add(createFileObject(p, o.m_directory));
+                }
+                builder.add(o.m_id, ab);
+            } else if (matches.stream().distinct().count() > 1) {
+                // Like the cwl-runner, a single file is not picked arbitrarily
+                throw new IOException(String.format("Multiple files found for output %s, which is not an array",
+                        o.m_id));
+            } else if (!matches.isEmpty()) {
+                builder.add(o.m_id, createFileObject(matches.get(0), o.m_directory));
+            } else if (o.m_optional) {
+                builder.addNull(o.m_id);
+            } else {
+                throw new IOException(String.format("No file found for output %s", o.m_id));
+            }
+        }
+        return builder.build();
+    }
+    
+    private String getStreamFile(final String name, final String stream, final JsonObject inputs,
+            final JsonObject runtime) throws IOException {
+        if (name != null) {
+            return evaluate(name, inputs, runtime);
+        }
+        for (Output o : m_outputs) {
+            if (stream.equals(o.m_stream)) {
+                // Same as cwltool, a random name if the tool does not specify one
+                return UUID.randomUUID().toString().replace("-", "");
+            }
+        }
+        return null;
+    }
+    
+    private static void addArguments(final List<String> cmd, final InputBinding binding, final List<String> values) {
+        if (binding.m_prefix == null) {
+            cmd.addAll(values);
+        } else if (binding.m_separate || values.isEmpty()) {
+            cmd.add(binding.m_prefix);
+            cmd.addAll(values);
+        } else {
+            cmd.add(binding.m_prefix + values.get(0));
+            cmd.addAll(values.subList(1, values.size()));
+        }
+    }
+    
+    private static String toArgument(final JsonValue v) {
+        if (v instanceof JsonString) {
+            return ((JsonString)v).getString();
+        } else if (v instanceof JsonObject && ((JsonObject)v).containsKey(PATH_KEY)) {
+            return ((JsonObject)v).getString(PATH_KEY);
+        }
+        return v.toString();
+    }
+    
+    /**
+     * Replaces the parameter references in a string.
+     */
+    private static String evaluate(final String s, final JsonObject inputs, final JsonObject runtime)
+            throws IOException {
+        Matcher m = PARAMETER_REFERENCE.matcher(s);
+        StringBuffer sb = new StringBuffer();
+        while (m.find()) {
+            String[] path = m.group(1).split("\\.");
+            JsonValue v = path[0].equals("inputs") ? inputs : runtime;
+            for (int i = 1; i < path.length; i++) {
+                if (!(v instanceof JsonObject) || !((JsonObject)v).containsKey(path[i])) {
+                    throw new IOException("Cannot resolve parameter reference " + m.group());
+                }
+                v = ((JsonObject)v).get(path[i]);
+            }
+            m.appendReplacement(sb, Matcher.quoteReplacement(toArgument(v)));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+    
+    private static List<Path> glob(final Path outdir, final String pattern, final boolean directories)
+            throws IOException {
+        Path direct = outdir.resolve(pattern);
+        if (!pattern.matches(".*[*?\\[{].*")) {
+            return Files.exists(direct) ? Collections.singletonList(direct) : Collections.emptyList();
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        try (Stream<Path> files = Files.walk(outdir)) {
+            return files.filter(p -> !p.equals(outdir) && matcher.matches(outdir.relativize(p))
+                    && (directories ? Files.isDirectory(p) : Files.isRegularFile(p)))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+    
+    private static JsonObject createFileObject(final Path p, final boolean directory) throws IOException {
+        Path abs = p.toAbsolutePath();
+        JsonObjectBuilder b = Json.createObjectBuilder()
+                .add(CLASS_KEY, directory ? DIRECTORY_CLASS : FILE_CLASS)
+                .add(LOCATION_KEY, abs.toUri().toString())
+                .add(PATH_KEY, abs.toString())
+                .add("basename", abs.getFileName().toString());
+        if (!directory) {
+            b.add("size", Files.size(abs));
+        }
+        return b.build();
+    }
+    
+    /**
+     * Adds path, basename, nameroot, nameext and dirname to all File and Directory objects in a value.
+     */
+    private static JsonValue completeFileObjects(final JsonValue value, final Path baseDir) throws IOException {
+        if (value instanceof JsonArray) {
+            JsonArrayBuilder ab = Json.createArrayBuilder();
+            for (JsonValue v : (JsonArray)value) {
+                ab.add(completeFileObjects(v, baseDir));
+            }
+            return ab.build();
+        }
+        if (!(value instanceof JsonObject)) {
+            return value;
+        }
+        JsonObject o = (JsonObject)value;
+        String cls = o.getString(CLASS_KEY, "");
+        if (!cls.equals(FILE_CLASS) && !cls.equals(DIRECTORY_CLASS)) {
+            return value;
+        }
+        Path path;
+        if (o.containsKey(PATH_KEY)) {
+            path = baseDir.resolve(o.getString(PATH_KEY));
+        } else if (o.containsKey(LOCATION_KEY)) {
+            String loc = o.getString(LOCATION_KEY);
+            try {
+                path = loc.startsWith("file:") ? Paths.get(new URI(loc)) : baseDir.resolve(loc);
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                throw new IOException("Invalid location " + loc, e);
+            }
+        } else {
+            throw new IOException(cls + " object without path or location");
+        }
+        String basename = path.getFileName().toString();
+        int dot = basename.lastIndexOf('.');
+        JsonObjectBuilder b = Json.createObjectBuilder();
+        for (Entry<String, JsonValue> e : o.entrySet()) {
+            b.add(e.getKey(), e.getValue());
+        }
+        return b.add(PATH_KEY, path.toString())
+                .add("basename", basename)
+                .add("nameroot", dot > 0 ? basename.substring(0, dot) : basename)
+                .add("nameext", dot > 0 ? basename.substring(dot) : "")
+                .add("dirname", path.getParent() == null ? "" : path.getParent().toString())
+                .build();
+    }
+    
+    /**
+     * Brings the list and map notation of inputs and outputs into a map from ID to parameter object.
+     * @param params the inputs or outputs of a process
+     * @return a map from parameter ID to parameter object
+     * @throws UnsupportedToolException when the parameters are neither in list nor in map notation
+     */
+    static Map<String, Map<?, ?>> getParameters(final Object params) throws UnsupportedToolException {
+        Map<String, Map<?, ?>> result = new LinkedHashMap<>();
+        if (params instanceof List) {
+            for (Object o : (List<?>)params) {
+                if (!(o instanceof Map) || !(((Map<?, ?>)o).get(ID_KEY) instanceof String)) {
+                    throw new UnsupportedToolException("parameter without id");
+                }
+                result.put((String)((Map<?, ?>)o).get(ID_KEY), (Map<?, ?>)o);
+            }
+        } else if (params instanceof Map) {
+            for (Entry<?, ?> e : ((Map<?, ?>)params).entrySet()) {
+                // Short notation, only the type is given
+                Map<?, ?> p = e.getValue() instanceof Map ? (Map<?, ?>)e.getValue()
+                        : Collections.singletonMap(TYPE_KEY, e.getValue());
+                result.put(e.getKey().toString(), p);
+            }
+        } else if (params != null) {
+            throw new UnsupportedToolException("invalid parameter list");
+        }
+        return result;
+    }
+    
+    private static List<?> asList(final Object o) {
+        if (o == null) {
+            return Collections.emptyList();
+        }
+        return o instanceof List ? (List<?>)o : Collections.singletonList(o);
+    }
+    
+    private static void checkKeys(final Map<?, ?> map, final Set<String> supported, final String what)
+            throws UnsupportedToolException {
+        for (Object key : map.keySet()) {
+            // Namespaced keys are metadata
+            if (!supported.contains(key) && !key.toString().contains(":")) {
+                throw new UnsupportedToolException(what + " uses " + key);
+            }
+        }
+    }
+    
+    private static String checkString(final Object o, final boolean allowReferences)
+            throws UnsupportedToolException {
+        if (o == null) {
+            return null;
+        }
+        if (!(o instanceof String || o instanceof Number)) {
+            throw new UnsupportedToolException("non-literal value " + o);
+        }
+        String s = o.toString();
+        if (s.contains("${")) {
+            throw new UnsupportedToolException("JavaScript expression " + s);
+        }
+        Matcher m = PARAMETER_REFERENCE.matcher(s);
+        while (m.find()) {
+            if (!allowReferences || !SUPPORTED_REFERENCE.matcher(m.group(1)).matches()) {
+                throw new UnsupportedToolException("expression " + m.group());
+            }
+        }
+        return s;
+    }
+    
+    private static boolean isSupportedInputType(final CWLDataType type, final boolean inArray) {
+        switch (type.getType()) {
+            case RECORD:
+            case ANY:
+                return false;
+            case ARRAY:
+                return !inArray && isSupportedInputType(((CWLArrayType)type).getItemType(), true);
+            case UNION:
+                return ((CWLUnionType)type).getTypes().stream().allMatch(t -> isSupportedInputType(t, inArray));
+            default:
+                return true;
+        }
+    }
+    
+    /**
+     * Converts an object loaded from YAML to JSON.
+     * @param o the object
+     * @return the JSON value
+     */
+    static JsonValue toJson(final Object o) {
+        if (o instanceof Map) {
+            JsonObjectBuilder b = Json.createObjectBuilder();
+            for (Entry<?, ?> e : ((Map<?, ?>)o).entrySet()) {
+                b.add(e.getKey().toString(), toJson(e.getValue()));
+            }
+            return b.build();
+        }
+        JsonArrayBuilder b = Json.createArrayBuilder();
+        if (o instanceof List) {
+            for (Object item : (List<?>)o) {
+                b.add(toJson(item));
+            }
+            return b.build();
+        }
+        // Scalars can only be created via a builder in JSON-P 1.0
+        if (o == null) {
+            b.addNull();
+        } else if (o instanceof Boolean) {
+            b.add((Boolean)o);
+        } else if (o instanceof Integer || o instanceof Long) {
+            b.add(((Number)o).longValue());
+        } else if (o instanceof Number) {
+            b.add(((Number)o).doubleValue());
+        } else {
+            b.add(o.toString());
+        }
+        return b.build().get(0);
+    }
+    
+    /**
+     * Exception signaling that a tool cannot be executed without a cwl-runner.
+     */
+    static final class UnsupportedToolException extends Exception {
+        
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * @param message the feature that is not supported
+         */
+        UnsupportedToolException(final String message) {
+            super(message);
+        }
+    }
+    
+    /** An input or argument together with its position on the command line. */
+    private static final class Binding {
+        private final String m_inputId;
+        private final int m_argIndex;
+        private final InputBinding m_binding;
+        private final String m_literal;
+        
+        Binding(final String inputId, final int argIndex, final InputBinding binding, final String literal) {
+            m_inputId = inputId;
+            m_argIndex = argIndex;
+            m_binding = binding;
+            m_literal = literal;
+        }
+    }
+    
+    /** How a value is bound to the command line. */
+    private static final class InputBinding {
+        private final int m_position;
+        private final String m_prefix;
+        private final boolean m_separate;
+        private final String m_itemSeparator;
+        
+        InputBinding(final Map<?, ?> binding) throws UnsupportedToolException {
+            Object position = binding.get("position");
+            if (position != null && !(position instanceof Integer)) {
+                throw new UnsupportedToolException("non-literal position " + position);
+            }
+            m_position = position == null ? 0 : (Integer)position;
+            m_prefix = checkString(binding.get("prefix"), false);
+            m_separate = !Boolean.FALSE.equals(binding.get("separate"));
+            m_itemSeparator = checkString(binding.get("itemSeparator"), false);
+        }
+    }
+    
+    /** An input parameter. */
+    private static final class Input {
+        private final String m_id;
+        private final InputBinding m_binding;
+        private final JsonValue m_default;
+        
+        Input(final String id, final Map<?, ?> param) throws UnsupportedToolException {
+            checkKeys(param, INPUT_KEYS, "input " + id);
+            Object rawType = param.get(TYPE_KEY);
+            if (rawType instanceof Map && ((Map<?, ?>)rawType).containsKey("inputBinding")) {
+                throw new UnsupportedToolException("input " + id + " has an item binding");
+            }
+            CWLDataType type;
+            try {
+                type = CWLDataType.fromYAMLObject(rawType);
+            } catch (RuntimeException e) {
+                throw new UnsupportedToolException("input " + id + " has an unknown type");
+            }
+            if (!isSupportedInputType(type, false)) {
+                throw new UnsupportedToolException("input " + id + " is of type " + type);
+            }
+            m_id = id;
+            Object binding = param.get("inputBinding");
+            if (binding instanceof Map) {
+                checkKeys((Map<?, ?>)binding, INPUT_BINDING_KEYS, "input binding of " + id);
+                m_binding = new InputBinding((Map<?, ?>)binding);
+            } else {
+                m_binding = null;
+            }
+            m_default = param.containsKey("default") ? toJson(param.get("default")) : null;
+        }
+    }
+    
+    /** An output parameter. */
+    private static final class Output {
+        private final String m_id;
+        private final String m_stream;
+        private final List<String> m_globs = new ArrayList<>();
+        private final boolean m_directory;
+        private final boolean m_array;
+        private final boolean m_optional;
+        
+        Output(final String id, final Map<?, ?> param) throws UnsupportedToolException {
+            checkKeys(param, OUTPUT_KEYS, "output " + id);
+            m_id = id;
+            Object rawType = param.get(TYPE_KEY);
+            if (STDOUT.equals(rawType) || STDERR.equals(rawType)) {
+                m_stream = (String)rawType;
+                m_directory = false;
+                m_array = false;
+                m_optional = false;
+                return;
+            }
+            m_stream = null;
+            CWLDataType type;
+            try {
+                type = CWLDataType.fromYAMLObject(rawType);
+            } catch (RuntimeException e) {
+                throw new UnsupportedToolException("output " + id + " has an unknown type");
+            }
+            m_optional = type.isOptional();
+            if (type instanceof CWLUnionType && ((CWLUnionType)type).nullable() != null) {
+                type = ((CWLUnionType)type).nullable();
+            }
+            m_array = type.getType() == CWLType.ARRAY;
+            if (m_array) {
+                type = ((CWLArrayType)type).getItemType();
+            }
+            if (type.getType() != CWLType.FILE && type.getType() != CWLType.DIRECTORY) {
+                throw new UnsupportedToolException("output " + id + " is of type " + type);
+            }
+            m_directory = type.getType() == CWLType.DIRECTORY;
+            Object binding = param.get("outputBinding");
+            if (!(binding instanceof Map)) {
+                throw new UnsupportedToolException("output " + id + " has no glob");
+            }
+            checkKeys((Map<?, ?>)binding, OUTPUT_BINDING_KEYS, "output binding of " + id);
+            for (Object glob : asList(((Map<?, ?>)binding).get("glob"))) {
+                m_globs.add(checkString(glob, true));
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+import de.unikn.knime.cwl.execution.CWLExecutor.CWLExecutionResult;
+
+/**
+ * Handle for a CWL execution running in the background. The handle is used to wait for the
+ * result and to cancel the execution, which terminates the runner together with all processes it started.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLExecutionHandle {
+    
+    /** Time the runner's process tree gets to shut down after a cancellation before it is killed. */
+    private static final long KILL_GRACE_MILLIS = 5000;
+    
+    /** Interval in which the execution monitor is checked for cancellation. */
+    private static final long POLL_INTERVAL_MILLIS = 200;
+    
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "cwl-execution-" + THREAD_COUNT.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+    
+    private final Consumer<String> m_progressListener;
+    private final CWLExecutionMetrics m_metrics = new CWLExecutionMetrics();
+    private FutureTask<CWLExecutionResult> m_task;
+    private Process m_process;
+    private boolean m_cancelled = false;
+    private volatile long m_queueWaitMillis = 0;
+    
+    /**
+     * Creates a new handle.
+     * @param progressListener receives progress messages from the runner's log, may be null
+     */
+    CWLExecutionHandle(final Consumer<String> progressListener) {
+        m_progressListener = progressListener;
+    }
+    
+    /**
+     * Starts the execution in the background.
+     * @param execution the execution to run
+     */
+    void start(final Callable<CWLExecutionResult> execution) {
+        m_task = new FutureTask<>(execution);
+        EXECUTOR.execute(m_task);
+    }
+    
+    /**
+     * Registers the process currently executing the tool, so that it can be terminated on cancellation.
+     * If the execution has been cancelled already, the process is terminated right away.
+     * @param process the runner process or null if no process is executing the tool (anymore)
+     */
+    void setProcess(final Process process) {
+        boolean cancelled;
+        synchronized (this) {
+            m_process = process;
+            cancelled = m_cancelled;
+        }
+        if (cancelled && process != null) {
+            ProcessTreeKiller.destroyTree(process, KILL_GRACE_MILLIS);
+        }
+    }
+    
+    /**
+     * Forwards a line of the runner's log as progress message.
+     * @param message the message
+     */
+    void reportProgress(final String message) {
+        m_metrics.markFirstOutput();
+        if (m_progressListener != null && !message.trim().isEmpty()) {
+            m_progressListener.accept(message.trim());
+        }
+    }
+    
+    /**
+     * @param queueWaitMillis the time the execution waited for resources before it was started
+     */
+    void setQueueWaitMillis(final long queueWaitMillis) {
+        m_queueWaitMillis = queueWaitMillis;
+    }
+    
+    /**
+     * @return the time the execution waited for resources before it was started in milliseconds
+     * @see CWLResourceScheduler
+     */
+    public long getQueueWaitMillis() {
+        return m_queueWaitMillis;
+    }
+    
+    /**
+     * @return the timings and resource usage of the execution, complete once the execution has finished
+     */
+    public CWLExecutionMetrics getMetrics() {
+        return m_metrics;
+    }
+    
+    /**
+     * @return whether the execution has been cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return m_cancelled;
+    }
+    
+    /**
+     * @return whether the execution has finished, either normally, with an error or by cancellation
+     */
+    public boolean isDone() {
+        return m_task.isDone();
+    }
+    
+    /**
+     * Cancels the execution. The runner and all processes started by it are asked to terminate
+     * and are killed if they do not comply within a few seconds. This happens in the background, the method
+     * returns right away.
+     */
+    public void cancel() {
+        Process process;
+        synchronized (this) {
+            if (m_cancelled || m_task.isDone()) {
+                return;
+            }
+            m_cancelled = true;
+            process = m_process;
+        }
+        EXECUTOR.execute(() -> {
+            if (process != null) {
+                ProcessTreeKiller.destroyTree(process, KILL_GRACE_MILLIS);
+            }
+            // Interrupts an execution still waiting for a pooled worker
+            m_task.cancel(true);
+        });
+    }
+    
+    /**
+     * Waits for the execution to finish.
+     * @return the result of the execution
+     * @throws IOException when the tool cannot be executed
+     * @throws InterruptedException when the thread is interrupted while waiting,
+     *          in which case the execution is cancelled
+     */
+    public CWLExecutionResult get() throws IOException, InterruptedException {
+        try {
+            return getResult(m_task.get());
+        } catch (CancellationException e) {
+            throw new IOException("CWL execution was cancelled", e);
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+    
+    /**
+     * Waits for the execution to finish while checking the execution monitor for cancellation.
+     * @param exec the monitor of the node the tool is executed for
+     * @return the result of the execution
+     * @throws IOException when the tool cannot be executed
+     * @throws InterruptedException when the thread is interrupted while waiting
+     * @throws CanceledExecutionException when the node execution is cancelled
+     */
+    public CWLExecutionResult waitFor(final ExecutionMonitor exec)
+            throws IOException, InterruptedException, CanceledExecutionException {
+        while (true) {
+            try {
+                exec.checkCanceled();
+            } catch (CanceledExecutionException e) {
+                cancel();
+                throw e;
+            }
+            try {
+                return getResult(m_task.get(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                // Still running, check for cancellation again
+            } catch (CancellationException e) {
+                throw new IOException("CWL execution was cancelled", e);
+            } catch (InterruptedException e) {
+                cancel();
+                throw e;
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            }
+        }
+    }
+    
+    private CWLExecutionResult getResult(final CWLExecutionResult result) throws IOException {
+        if (isCancelled()) {
+            throw new IOException("CWL execution was cancelled");
+        }
+        return result;
+    }
+    
+    private IOException unwrap(final ExecutionException e) throws InterruptedException {
+        Throwable cause = e.getCause();
+        if (isCancelled()) {
+            // Failures are expected once the runner has been killed
+            return new IOException("CWL execution was cancelled", cause);
+        }
+        if (cause instanceof IOException) {
+            return (IOException)cause;
+        } else if (cause instanceof InterruptedException) {
+            throw (InterruptedException)cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException)cause;
+        } else if (cause instanceof Error) {
+            throw (Error)cause;
+        }
+        return new IOException(cause);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Timings and resource usage of a single CWL execution.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLExecutionMetrics {
+    
+    /**
+     * The phases of an execution.
+     */
+    public enum Phase {
+        /** Conversion of the inputs to the job file's content. */
+        INPUT_SERIALIZATION("input_serialization"),
+        /** Writing the job file. */
+        JOB_FILE_WRITE("job_file_write"),
+        /** Starting the runner or tool process. */
+        PROCESS_SPAWN("process_spawn"),
+        /** Time from the start of the process to its first output. */
+        FIRST_OUTPUT("first_output"),
+        /** Time from the start of the process to its end. */
+        TOOL_RUNTIME("tool_runtime"),
+        /** Parsing or collecting the outputs. */
+        OUTPUT_PARSE("output_parse"),
+        /** Creating the node's port objects or cells from the outputs. */
+        PORT_OBJECT_CONSTRUCTION("port_object_construction");
+        
+        private final String m_key;
+        
+        Phase(final String key) {
+            m_key = key;
+        }
+        
+        /**
+         * @return the key of the phase, used in names of flow variables and metrics
+         */
+        public String getKey() {
+            return m_key;
+        }
+    }
+    
+    private final Map<Phase, Long> m_phaseNanos = new EnumMap<>(Phase.class);
+    private long m_processStart = -1;
+    private int m_exitCode = -1;
+    private long m_peakRssBytes = -1;
+    private long m_cpuMillis = -1;
+    private long m_outputBytes = -1;
+    
+    /**
+     * Adds time to a phase.
+     * @param phase the phase
+     * @param nanos the time in nanoseconds
+     */
+    public synchronized void add(final Phase phase, final long nanos) {
+        m_phaseNanos.merge(phase, nanos, Long::sum);
+    }
+    
+    /**
+     * Adds the time since a start time to a phase.
+     * @param phase the phase
+     * @param startNanos the start time as given by {@link System#nanoTime()}
+     */
+    public void addSince(final Phase phase, final long startNanos) {
+        add(phase, System.nanoTime() - startNanos);
+    }
+    
+    /**
+     * Marks the start of the process, from which the time to first output and the runtime are measured.
+     */
+    synchronized void markProcessStarted() {
+        m_processStart = System.nanoTime();
+    }
+    
+    /**
+     * Marks the first output of the process. Later calls have no effect.
+     */
+    synchronized void markFirstOutput() {
+        if (m_processStart >= 0 && !m_phaseNanos.containsKey(Phase.FIRST_OUTPUT)) {
+            m_phaseNanos.put(Phase.FIRST_OUTPUT, System.nanoTime() - m_processStart);
+        }
+    }
+    
+    /**
+     * Marks the end of the process and records its runtime.
+     * @param exitCode the exit code of the process
+     */
+    synchronized void markProcessFinished(final int exitCode) {
+        if (m_processStart >= 0) {
+            m_phaseNanos.put(Phase.TOOL_RUNTIME, System.nanoTime() - m_processStart);
+        }
+        m_exitCode = exitCode;
+    }
+    
+    /**
+     * Records a sample of the resources used by the process tree.
+     * @param rssBytes the resident memory of all processes in bytes
+     * @param cpuMillis the CPU time used so far in milliseconds
+     */
+    synchronized void sampleResources(final long rssBytes, final long cpuMillis) {
+        m_peakRssBytes = Math.max(m_peakRssBytes, rssBytes);
+        m_cpuMillis = Math.max(m_cpuMillis, cpuMillis);
+    }
+    
+    /**
+     * @param outputBytes the size of the output files in bytes
+     */
+    synchronized void setOutputBytes(final long outputBytes) {
+        m_outputBytes = outputBytes;
+    }
+    
+    /**
+     * @return the time spent in each phase in nanoseconds, phases that did not occur are missing
+     */
+    public synchronized Map<Phase, Long> getPhaseNanos() {
+        return new EnumMap<>(m_phaseNanos);
+    }
+    
+    /**
+     * @return the exit code of the process or -1 if no process finished
+     */
+    public synchronized int getExitCode() {
+        return m_exitCode;
+    }
+    
+    /**
+     * @return the peak resident memory of the process tree in bytes or -1 if it is unknown, e.g. because the tool was
+     *          executed on a pooled cwl-runner worker, whose resources are not sampled
+     */
+    public synchronized long getPeakRssBytes() {
+        return m_peakRssBytes;
+    }
+    
+    /**
+     * @return the CPU time used by the process tree in milliseconds or -1 if it is unknown, e.g. because the tool was
+     *          executed on a pooled cwl-runner worker, whose resources are not sampled
+     */
+    public synchronized long getCpuMillis() {
+        return m_cpuMillis;
+    }
+    
+    /**
+     * @return the size of the output files in bytes or -1 if it is unknown
+     */
+    public synchronized long getOutputBytes() {
+        return m_outputBytes;
+    }
+}
@@ -53,24 +53,38 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.StringReader;
+import java.io.PushbackReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 
 import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
 import javax.json.JsonObject;
 import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.knime.core.node.NodeLogger;
 
+import de.unikn.knime.cwl.execution.CWLCommandLineTool.UnsupportedToolException;
+import de.unikn.knime.cwl.execution.CWLExecutionMetrics.Phase;
+import de.unikn.knime.cwl.execution.CWLRunnerPool.WorkerUnavailableException;
 import de.unikn.knime.cwl.preferences.Preferences;
 
 /**
@@ -84,6 +98,18 @@ public final class CWLExecutor {
     
     private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLExecutor.class);
     
+    /** Name of the file in the execution directory that receives the runner's complete log. */
+    private static final String RUNNER_LOG_FILE = "cwl-runner.log";
+    
+    /** Directory in the execution directory the built-in engine runs tools in. */
+    private static final String BUILTIN_OUTPUT_DIR = "output";
+    
+    /** Directory in the execution directory tools run by the built-in engine use for temporary files. */
+    private static final String BUILTIN_TMP_DIR = "tmp";
+    
+    /** Name of the file in the execution directory that contains the workflow generated for a batch. */
+    private static final String BATCH_WORKFLOW_FILE = "batch.cwl";
+    
     /**
      * Executes the CWL wrapper using the cwl-runner configured in the preferences.
      * @param toolPath the path to the CWL tool
@@ -96,82 +122,472 @@ public final class CWLExecutor {
     public static CWLExecutionResult execute(final String toolPath,
             final Map<String, JsonValue> inputs, final String extraCWLRunnerArgs)
             throws IOException, InterruptedException {
-        Path baseDir = Paths.get(Files.createTempDirectory("knime_").toUri());
+        return executeAsync(toolPath, inputs, extraCWLRunnerArgs, null).get();
+    }
+    
+    /**
+     * Starts the execution of the CWL wrapper in the background using the cwl-runner configured in the preferences.
+     * @param toolPath the path to the CWL tool
+     * @param inputs the input data
+     * @param extraCWLRunnerArgs extra arguments for the CWL runner
+     * @param progressListener receives the lines the runner logs while executing, may be null
+     * @return a handle to wait for the result or cancel the execution
+     * @throws IOException when the inputs for the tool cannot be written
+     */
+    public static CWLExecutionHandle executeAsync(final String toolPath,
+            final Map<String, JsonValue> inputs, final String extraCWLRunnerArgs,
+            final Consumer<String> progressListener) throws IOException {
+        return executeAsync(toolPath, inputs, extraCWLRunnerArgs, progressListener, false,
+                CWLResourceRequirement.DEFAULT, CWLResourceScheduler.PRIORITY_NORMAL);
+    }
+    
+    /**
+     * Starts the execution of the CWL wrapper in the background.
+     * @param toolPath the path to the CWL tool
+     * @param inputs the input data
+     * @param extraCWLRunnerArgs extra arguments for the CWL runner
+     * @param progressListener receives the lines the runner logs while executing, may be null
+     * @param builtinEngine whether to execute the tool without a cwl-runner if it is a simple CommandLineTool.
+     *          Tools the built-in engine cannot handle are passed to the cwl-runner configured in the preferences.
+     * @param resources the resources the tool needs, reserved with the {@link CWLResourceScheduler} before
+     *          the tool is started
+     * @param priority the priority of the execution in the {@link CWLResourceScheduler}
+     * @return a handle to wait for the result or cancel the execution
+     * @throws IOException when the inputs for the tool cannot be written
+     */
+    public static CWLExecutionHandle executeAsync(final String toolPath,
+            final Map<String, JsonValue> inputs, final String extraCWLRunnerArgs,
+            final Consumer<String> progressListener, final boolean builtinEngine,
+            final CWLResourceRequirement resources, final int priority) throws IOException {
+        Path baseDir = CWLWorkspaceManager.getInstance().createWorkspace();
+        CWLExecutionHandle handle = new CWLExecutionHandle(progressListener);
+        CWLExecutionMetrics metrics = handle.getMetrics();
         
         // Build YAML file content
+        long start = System.nanoTime();
         StringBuilder yamlInputs = new StringBuilder();
         for (Entry<String, JsonValue> e : inputs.entrySet()) {
             yamlInputs.append(e.getKey()).append(": ");
             yamlInputs.append(e.getValue().toString()).append("\n");
         }
+        metrics.addSince(Phase.INPUT_SERIALIZATION, start);
         
         // Write input for tool into YAML file
+        start = System.nanoTime();
         File yamlFile = baseDir.resolve("input.yml").toFile();
-        FileUtils.writeStringToFile(yamlFile, yamlInputs.toString(), Charset.defaultCharset());
-        
-        // Retrieve the path to the runner from the preferences.
-        String runnerPath = Preferences.getCWLRunnerPath();
+        try {
+            FileUtils.writeStringToFile(yamlFile, yamlInputs.toString(), Charset.defaultCharset());
+        } catch (IOException e) {
+            CWLWorkspaceManager.getInstance().release(baseDir);
+            throw e;
+        }
+        metrics.addSince(Phase.JOB_FILE_WRITE, start);
         
-        String globExtraArgs = Preferences.getExtraArgs();
-        String[] parsedGlobExtraArgs = translateCommandline(globExtraArgs);
+        List<String> runnerArgs = getRunnerArgs(extraCWLRunnerArgs);
+        startInWorkspace(handle, baseDir, () -> {
+            try (CWLResourceScheduler.Lease lease = CWLResourceScheduler.getInstance()
+                    .acquire(resources, priority, handle)) {
+                handle.setQueueWaitMillis(lease.getWaitMillis());
+                if (builtinEngine) {
+                    CWLExecutionResult res = executeBuiltin(handle, toolPath, inputs, baseDir, extraCWLRunnerArgs);
+                    if (res != null) {
+                        return res;
+                    }
+                }
+                String executablePath = CWLPackedToolCache.getInstance().getExecutablePath(toolPath);
+                return execute(handle, executablePath, yamlFile, baseDir, runnerArgs);
+            }
+        });
+        return handle;
+    }
+    
+    /**
+     * Starts the execution of a batch of input sets for the same tool in a single cwl-runner call.
+     * The tool is wrapped in a workflow that scatters it over the input sets, so every output of the
+     * result is an array with one element per input set. Use {@link #splitBatchResult(CWLExecutionResult, int)}
+     * to get the results of the individual input sets.
+     * @param toolPath the path to the CWL tool
+     * @param inputSets the input data, one map per execution of the tool
+     * @param extraCWLRunnerArgs extra arguments for the CWL runner
+     * @param progressListener receives the lines the runner logs while executing, may be null
+     * @param resources the resources a single execution of the tool needs. As the runner may execute the whole
+     *          batch in parallel, the resources for all input sets are reserved with the
+     *          {@link CWLResourceScheduler}.
+     * @param priority the priority of the execution in the {@link CWLResourceScheduler}
+     * @return a handle to wait for the result or cancel the execution
+     * @throws IOException when the workflow or the inputs for the tool cannot be written
+     */
+    public static CWLExecutionHandle executeBatchAsync(final String toolPath,
+            final List<Map<String, JsonValue>> inputSets, final String extraCWLRunnerArgs,
+            final Consumer<String> progressListener, final CWLResourceRequirement resources, final int priority)
+            throws IOException {
+        Path baseDir = CWLWorkspaceManager.getInstance().createWorkspace();
+        CWLExecutionHandle handle = new CWLExecutionHandle(progressListener);
+        CWLExecutionMetrics metrics = handle.getMetrics();
         
-        String[] parsedExtraArgs = extraCWLRunnerArgs == null ? new String[0]
-                                    : translateCommandline(extraCWLRunnerArgs);
+        Set<String> usedInputs = new HashSet<>();
+        for (Map<String, JsonValue> inputs : inputSets) {
+            usedInputs.addAll(inputs.keySet());
+        }
+        Path workflowFile = baseDir.resolve(BATCH_WORKFLOW_FILE);
+        File yamlFile = baseDir.resolve("input.yml").toFile();
+        try {
+            long start = System.nanoTime();
+            JsonObject workflow = CWLBatchWorkflow.create(Paths.get(toolPath), usedInputs);
+            String job = CWLBatchWorkflow.createJob(workflow, inputSets).toString();
+            metrics.addSince(Phase.INPUT_SERIALIZATION, start);
+            // JSON is valid YAML, so the generated documents can be passed to the runner as they are
+            start = System.nanoTime();
+            FileUtils.writeStringToFile(workflowFile.toFile(), workflow.toString(), Charset.defaultCharset());
+            FileUtils.writeStringToFile(yamlFile, job, Charset.defaultCharset());
+            metrics.addSince(Phase.JOB_FILE_WRITE, start);
+        } catch (IOException e) {
+            CWLWorkspaceManager.getInstance().release(baseDir);
+            throw e;
+        }
         
-        String[] args = new String[parsedGlobExtraArgs.length + parsedExtraArgs.length + 4];
+        List<String> runnerArgs = getRunnerArgs(extraCWLRunnerArgs);
+        runnerArgs.addAll(Arrays.asList(translateCommandline(Preferences.getBatchArgs())));
+        startInWorkspace(handle, baseDir, () -> {
+            CWLResourceScheduler scheduler = CWLResourceScheduler.getInstance();
+            try (CWLResourceScheduler.Lease lease = scheduler
+                    .acquire(resources, inputSets.size(), priority, handle)) {
+                handle.setQueueWaitMillis(lease.getWaitMillis());
+                return execute(handle, workflowFile.toString(), yamlFile, baseDir, runnerArgs);
+            }
+        });
+        return handle;
+    }
+    
+    /**
+     * Splits the result of a batch execution into the results of the individual input sets.
+     * @param batchResult the result of the batch
+     * @param size the number of input sets in the batch
+     * @return the results in the order of the input sets
+     * @throws IOException when the batch did not produce an output for every input set
+     */
+    public static List<CWLExecutionResult> splitBatchResult(final CWLExecutionResult batchResult, final int size)
+            throws IOException {
+        List<CWLExecutionResult> results = new ArrayList<>();
+        for (JsonObject output : CWLBatchWorkflow.split(batchResult.getOutputJson(), size)) {
+            CWLExecutionResult res = new CWLExecutionResult(output, batchResult.getExitCode());
+            res.setWorkspace(batchResult.getWorkspace());
+            results.add(res);
+        }
+        return results;
+    }
+    
+    /**
+     * Starts an execution in a workspace. The workspace of a successful execution is attached to its result
+     * and stays in use, the workspace of a failed or cancelled execution is released.
+     */
+    private static void startInWorkspace(final CWLExecutionHandle handle, final Path workspace,
+            final Callable<CWLExecutionResult> execution) {
+        handle.start(() -> {
+            CWLExecutionResult res;
+            try {
+                res = execution.call();
+            } catch (Exception e) {
+                CWLWorkspaceManager.getInstance().release(workspace);
+                throw e;
+            }
+            if (handle.isCancelled()) {
+                // Nobody is going to pick up the result
+                CWLWorkspaceManager.getInstance().release(workspace);
+            }
+            res.setWorkspace(workspace);
+            handle.getMetrics().setOutputBytes(countOutputBytes(res.getOutputJson()));
+            res.setMetrics(handle.getMetrics());
+            return res;
+        });
+    }
+    
+    private static CWLExecutionResult execute(final CWLExecutionHandle handle, final String toolPath,
+            final File yamlFile, final Path baseDir, final List<String> runnerArgs)
+            throws IOException, InterruptedException {
+        if (Preferences.EXECUTION_MODE_POOL.equals(Preferences.getExecutionMode())) {
+            CWLExecutionResult res = null;
+            try {
+                // The worker is running already, so there is no spawn time and its resources are not sampled
+                handle.getMetrics().markProcessStarted();
+                res = CWLRunnerPool.getInstance().execute(toolPath, yamlFile.toPath(), baseDir, runnerArgs,
+                        handle);
+                handle.getMetrics().markProcessFinished(res.getExitCode());
+            } catch (WorkerUnavailableException e) {
+                if (handle.isCancelled()) {
+                    throw e;
+                }
+                // Only jobs that never reached a worker are executed again, others may have run partially
+                LOGGER.warn("No cwl-runner worker available, falling back to a new cwl-runner process", e);
+            }
+            if (res != null) {
+                if (res.getOutputJson() == null) {
+                    LOGGER.warn("Tool execution returned exit code " + res.getExitCode());
+                    throw new IOException("CWL execution produced no valid output");
+                }
+                return res;
+            }
+        }
+        return executeProcess(handle, toolPath, yamlFile, baseDir, runnerArgs);
+    }
+    
+    /**
+     * Builds the arguments passed to the cwl-runner, excluding the tool and its inputs.
+     * @param extraCWLRunnerArgs node specific extra arguments, may be null
+     * @return the runner arguments
+     */
+    public static List<String> getRunnerArgs(final String extraCWLRunnerArgs) {
+        List<String> args = new ArrayList<>();
         // cwl-runner in quiet mode
-        args[0] = runnerPath;
-        args[1] = "--quiet";
+        args.add("--quiet");
         // Insert extra arguments
-        System.arraycopy(parsedGlobExtraArgs, 0, args, 2, parsedGlobExtraArgs.length);
-        System.arraycopy(parsedExtraArgs, 0, args, parsedGlobExtraArgs.length + 2, parsedExtraArgs.length);
+        args.addAll(Arrays.asList(translateCommandline(Preferences.getExtraArgs())));
+        if (extraCWLRunnerArgs != null) {
+            args.addAll(Arrays.asList(translateCommandline(extraCWLRunnerArgs)));
+        }
+        return args;
+    }
+    
+    private static CWLExecutionResult executeProcess(final CWLExecutionHandle handle, final String toolPath,
+            final File yamlFile, final Path baseDir, final List<String> runnerArgs)
+            throws IOException, InterruptedException {
+        // Retrieve the path to the runner from the preferences.
+        List<String> args = new ArrayList<>();
+        args.add(Preferences.getCWLRunnerPath());
+        args.addAll(runnerArgs);
         // Lastly the tool and its inputs
-        args[args.length - 2] = toolPath;
-        args[args.length - 1] = yamlFile.getAbsolutePath();
+        args.add(toolPath);
+        args.add(yamlFile.getAbsolutePath());
         
         ProcessBuilder pb = new ProcessBuilder(args);
-        pb.redirectErrorStream(true);
         pb.directory(baseDir.toFile());
         LOGGER.info("Executing CWL " + toolPath);
         LOGGER.info(String.join(" ", pb.command()));
+        CWLExecutionMetrics metrics = handle.getMetrics();
+        long start = System.nanoTime();
         Process pr = pb.start();
-        InputStream is = pr.getInputStream();
-        StringBuilder jsonOutput = new StringBuilder();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        boolean outputStarted = false;
-        String line = null;
-        while ((line = reader.readLine()) != null) {
-            LOGGER.debug(line);
-            if (line.startsWith("{")) {
-                outputStarted = true;
-            }
-            if (outputStarted) {
-                jsonOutput.append(line);
-            }
-            if (line.startsWith("}")) {
-                break;
+        metrics.addSince(Phase.PROCESS_SPAWN, start);
+        metrics.markProcessStarted();
+        handle.setProcess(pr);
+        ProcessSampler sampler = ProcessSampler.start(pr, metrics);
+        
+        // The runner logs to stderr, which is consumed separately so that neither pipe can fill up
+        CWLRunnerLog log = new CWLRunnerLog(baseDir.resolve(RUNNER_LOG_FILE), CWLRunnerLog.DEFAULT_CAPACITY);
+        Thread stderrReader = startLogReader(pr.getErrorStream(), log, handle, "cwl-runner-stderr");
+        
+        JsonObject outputJson;
+        int exitCode;
+        try {
+            try (Reader out = new BufferedReader(
+                    new InputStreamReader(pr.getInputStream(), Charset.defaultCharset()))) {
+                outputJson = readOutput(out, log, metrics);
             }
+            exitCode = pr.waitFor();
+            metrics.markProcessFinished(exitCode);
+        } finally {
+            sampler.stop();
         }
-        int exitCode = pr.waitFor();
+        stderrReader.join();
+        log.close();
         if (exitCode != 0) {
-            LOGGER.warn("Tool execution returned exit code " + exitCode);
-            LOGGER.warn(jsonOutput);
-            // Not all tools have proper exits codes
-            // eg diff has 0 if the files are the same and 1 otherwise
-            if (!outputStarted) {
-                throw new IOException("CWL execution produced no valid output");
-            }
+            logFailure(exitCode, log);
         }
-        
-        // Parse output
-        Map<String, JsonValue> outputObject = new HashMap<>();
-        JsonObject outputJson = Json.createReader(new StringReader(jsonOutput.toString())).readObject();
-        for (String key : outputJson.keySet()) {
-            outputObject.put(key, outputJson.get(key));
+        // Not all tools have proper exits codes
+        // eg diff has 0 if the files are the same and 1 otherwise
+        if (outputJson == null) {
+            throw new IOException("CWL execution produced no valid output");
         }
         return new CWLExecutionResult(outputJson, exitCode);
     }
     
+    /**
+     * Executes a simple CommandLineTool directly, without a cwl-runner.
+     * @return the result or null if the tool cannot be executed by the built-in engine
+     */
+    private static CWLExecutionResult executeBuiltin(final CWLExecutionHandle handle, final String toolPath,
+            final Map<String, JsonValue> inputs, final Path baseDir, final String extraCWLRunnerArgs)
+            throws IOException, InterruptedException {
+        // Extra arguments are meant for the cwl-runner and cannot be honored by the built-in engine
+        if (translateCommandline(Preferences.getExtraArgs()).length > 0
+                || translateCommandline(extraCWLRunnerArgs).length > 0) {
+            LOGGER.debug("Extra cwl-runner arguments are configured, executing " + toolPath + " with the cwl-runner");
+            return null;
+        }
+        CWLCommandLineTool tool;
+        try {
+            tool = CWLCommandLineTool.load(Paths.get(toolPath));
+        } catch (UnsupportedToolException e) {
+            LOGGER.debug("Executing " + toolPath + " with the cwl-runner, the built-in engine does not support it: "
+                    + e.getMessage());
+            return null;
+        }
+        Path outdir = Files.createDirectory(baseDir.resolve(BUILTIN_OUTPUT_DIR));
+        Path tmpdir = Files.createDirectory(baseDir.resolve(BUILTIN_TMP_DIR));
+        JsonObject runtime = Json.createObjectBuilder()
+                .add("outdir", outdir.toString())
+                .add("tmpdir", tmpdir.toString())
+                .add("cores", Runtime.getRuntime().availableProcessors())
+                .build();
+        JsonObject job = tool.createInputObject(inputs, baseDir);
+        String stdoutFile = tool.getStdoutFile(job, runtime);
+        String stderrFile = tool.getStderrFile(job, runtime);
+        
+        ProcessBuilder pb = new ProcessBuilder(tool.createCommandLine(job, runtime));
+        pb.directory(outdir.toFile());
+        // Like cwltool, only pass a minimal environment to the tool
+        Map<String, String> env = pb.environment();
+        String path = env.get("PATH");
+        env.clear();
+        if (path != null) {
+            env.put("PATH", path);
+        }
+        env.put("HOME", outdir.toString());
+        env.put("TMPDIR", tmpdir.toString());
+        if (stdoutFile != null) {
+            pb.redirectOutput(outdir.resolve(stdoutFile).toFile());
+        }
+        if (stderrFile != null) {
+            pb.redirectError(outdir.resolve(stderrFile).toFile());
+        }
+        LOGGER.info("Executing CWL " + toolPath + " with the built-in engine");
+        LOGGER.info(String.join(" ", pb.command()));
+        CWLExecutionMetrics metrics = handle.getMetrics();
+        long start = System.nanoTime();
+        Process pr = pb.start();
+        metrics.addSince(Phase.PROCESS_SPAWN, start);
+        metrics.markProcessStarted();
+        handle.setProcess(pr);
+        ProcessSampler sampler = ProcessSampler.start(pr, metrics);
+        
+        CWLRunnerLog log = new CWLRunnerLog(baseDir.resolve(RUNNER_LOG_FILE), CWLRunnerLog.DEFAULT_CAPACITY);
+        List<Thread> readers = new ArrayList<>();
+        if (stdoutFile == null) {
+            readers.add(startLogReader(pr.getInputStream(), log, handle, "cwl-tool-stdout"));
+        }
+        if (stderrFile == null) {
+            readers.add(startLogReader(pr.getErrorStream(), log, handle, "cwl-tool-stderr"));
+        }
+        int exitCode;
+        try {
+            exitCode = pr.waitFor();
+            metrics.markProcessFinished(exitCode);
+        } finally {
+            sampler.stop();
+        }
+        for (Thread t : readers) {
+            t.join();
+        }
+        log.close();
+        boolean success = tool.isSuccess(exitCode);
+        if (!success) {
+            logFailure(exitCode, log);
+        }
+        JsonObject outputJson;
+        start = System.nanoTime();
+        try {
+            outputJson = tool.collectOutputs(job, runtime, stdoutFile, stderrFile);
+        } catch (IOException e) {
+            throw new IOException("CWL execution produced no valid output", e);
+        }
+        metrics.addSince(Phase.OUTPUT_PARSE, start);
+        return new CWLExecutionResult(outputJson, success ? 0 : exitCode);
+    }
+    
+    private static Thread startLogReader(final InputStream stream, final CWLRunnerLog log,
+            final CWLExecutionHandle handle, final String name) {
+        Thread reader = new Thread(() -> {
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(stream, Charset.defaultCharset()))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    LOGGER.debug(line);
+                    log.append(line);
+                    handle.reportProgress(line);
+                }
+            } catch (IOException e) {
+                // Stream is closed when the process exits
+            }
+        }, name);
+        reader.setDaemon(true);
+        reader.start();
+        return reader;
+    }
+    
+    private static void logFailure(final int exitCode, final CWLRunnerLog log) {
+        LOGGER.warn("Tool execution returned exit code " + exitCode);
+        for (String line : log.getTail()) {
+            LOGGER.warn(line);
+        }
+        LOGGER.warn("Complete runner log: " + log.getSpillFile());
+    }
+    
+    /**
+     * Reads the runner's output object from its standard output. Text in front of the object
+     * is logged, the object itself is parsed while it is read and anything after it is drained.
+     * @param out the runner's standard output
+     * @param log the log for text that is not part of the output object
+     * @param metrics the metrics receiving the time of the first output and the parse time
+     * @return the output object or null if the runner did not write one
+     * @throws IOException when the output cannot be read or is not valid JSON
+     */
+    private static JsonObject readOutput(final Reader out, final CWLRunnerLog log,
+            final CWLExecutionMetrics metrics) throws IOException {
+        PushbackReader reader = new PushbackReader(out);
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = reader.read()) != -1 && c != '{') {
+            metrics.markFirstOutput();
+            if (c == '\n') {
+                log.append(line.toString());
+                line.setLength(0);
+            } else {
+                line.append((char)c);
+            }
+        }
+        if (c == -1) {
+            return null;
+        }
+        metrics.markFirstOutput();
+        long start = System.nanoTime();
+        reader.unread(c);
+        // The parser is not closed, that would close the stream before it is drained
+        JsonParser parser = Json.createParser(reader);
+        JsonObject outputJson;
+        try {
+            parser.next();
+            outputJson = StreamingJsonReader.readObject(parser);
+        } catch (JsonException e) {
+            throw new IOException("CWL execution produced invalid output", e);
+        }
+        metrics.addSince(Phase.OUTPUT_PARSE, start);
+        IOUtils.skip(reader, Long.MAX_VALUE);
+        return outputJson;
+    }
+    
+    /**
+     * Sums up the sizes of the files and directories in an output object.
+     */
+    private static long countOutputBytes(final JsonValue value) {
+        long bytes = 0;
+        if (value instanceof JsonObject) {
+            JsonObject o = (JsonObject)value;
+            String cls = o.getString("class", "");
+            if (cls.equals("File") && o.get("size") instanceof JsonNumber) {
+                return o.getJsonNumber("size").longValue();
+            } else if ((cls.equals("File") || cls.equals("Directory")) && o.containsKey("path")) {
+                File f = new File(o.getString("path"));
+                return f.isDirectory() ? FileUtils.sizeOfDirectory(f) : f.length();
+            }
+            for (JsonValue v : o.values()) {
+                bytes += countOutputBytes(v);
+            }
+        } else if (value instanceof JsonArray) {
+            for (JsonValue v : (JsonArray)value) {
+                bytes += countOutputBytes(v);
+            }
+        }
+        return bytes;
+    }
+    
     /**
      * [code borrowed from ant.jar]
      * Crack a command line.
@@ -179,7 +595,7 @@ public final class CWLExecutor {
      * @return the command line broken into strings.
      * An empty or null toProcess parameter results in a zero sized array.
      */
-    private static String[] translateCommandline(final String toProcess) {
+    static String[] translateCommandline(final String toProcess) {
         if (toProcess == null || toProcess.length() == 0) {
             //no command? no string
             return new String[0];
@@ -248,6 +664,8 @@ public final class CWLExecutor {
     public static class CWLExecutionResult {
         private JsonObject m_outputJson;
         private int m_exitCode;
+        private Path m_workspace;
+        private CWLExecutionMetrics m_metrics;
         
         /**
          * Creates a new instance of {@code CWLExecutionResult}.
@@ -273,5 +691,35 @@ public final class CWLExecutor {
         public int getExitCode() {
             return m_exitCode;
         }
+        
+        /**
+         * @return the workspace containing the output files, null if the result does not own one
+         * @see CWLWorkspaceManager
+         */
+        public Path getWorkspace() {
+            return m_workspace;
+        }
+        
+        /**
+         * @param workspace the workspace containing the output files
+         */
+        void setWorkspace(final Path workspace) {
+            m_workspace = workspace;
+        }
+        
+        /**
+         * @return the timings and resource usage of the execution, null if the result was not produced
+         *          by an execution, e.g. if it was restored from the cache or split from a batch
+         */
+        public CWLExecutionMetrics getMetrics() {
+            return m_metrics;
+        }
+        
+        /**
+         * @param metrics the timings and resource usage of the execution
+         */
+        void setMetrics(final CWLExecutionMetrics metrics) {
+            m_metrics = metrics;
+        }
     }
 }
@@ -0,0 +1,198 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Histogram of a metric with buckets growing in a 1-2-5 series.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLHistogram {
+    
+    private final String m_name;
+    private final String m_unit;
+    private final long[] m_bounds;
+    private final long[] m_counts;
+    private long m_count;
+    private long m_sum;
+    private long m_max;
+    
+    /**
+     * Creates an empty histogram.
+     * @param name the name of the metric
+     * @param unit the unit of the values
+     * @param maxBound the upper bound of the largest bucket before the overflow bucket
+     */
+    CWLHistogram(final String name, final String unit, final long maxBound) {
+        m_name = name;
+        m_unit = unit;
+        List<Long> bounds = new ArrayList<>();
+        for (long b = 1; b <= maxBound; b *= 10) {
+            bounds.add(b);
+            bounds.add(2 * b);
+            bounds.add(5 * b);
+        }
+        m_bounds = bounds.stream().mapToLong(Long::longValue).toArray();
+        m_counts = new long[m_bounds.length + 1];
+    }
+    
+    private CWLHistogram(final CWLHistogram h) {
+        m_name = h.m_name;
+        m_unit = h.m_unit;
+        m_bounds = h.m_bounds;
+        m_counts = h.m_counts.clone();
+        m_count = h.m_count;
+        m_sum = h.m_sum;
+        m_max = h.m_max;
+    }
+    
+    /**
+     * @param value the value to add
+     */
+    synchronized void record(final long value) {
+        int i = Arrays.binarySearch(m_bounds, value);
+        m_counts[i < 0 ? -i - 1 : i]++;
+        m_count++;
+        m_sum += value;
+        m_max = Math.max(m_max, value);
+    }
+    
+    /**
+     * @return a copy of this histogram
+     */
+    synchronized CWLHistogram copy() {
+        return new CWLHistogram(this);
+    }
+    
+    /**
+     * @return the name of the metric
+     */
+    public String getName() {
+        return m_name;
+    }
+    
+    /**
+     * @return the unit of the values
+     */
+    public String getUnit() {
+        return m_unit;
+    }
+    
+    /**
+     * @return the number of values
+     */
+    public long getCount() {
+        return m_count;
+    }
+    
+    /**
+     * @return the sum of the values
+     */
+    public long getSum() {
+        return m_sum;
+    }
+    
+    /**
+     * @return the largest value
+     */
+    public long getMax() {
+        return m_max;
+    }
+    
+    /**
+     * @return the mean of the values
+     */
+    public double getMean() {
+        return m_count == 0 ? 0 : m_sum / (double)m_count;
+    }
+    
+    /**
+     * @return the upper bound of the bucket containing the median
+     */
+    public long getP50() {
+        return getPercentile(0.5);
+    }
+    
+    /**
+     * @return the upper bound of the bucket containing the 95th percentile
+     */
+    public long getP95() {
+        return getPercentile(0.95);
+    }
+    
+    /**
+     * @return the inclusive upper bounds of the buckets, the last bucket without bound contains all larger values
+     */
+    public long[] getBucketBounds() {
+        return m_bounds.clone();
+    }
+    
+    /**
+     * @return the number of values in each bucket
+     */
+    public long[] getBucketCounts() {
+        return m_counts.clone();
+    }
+    
+    private long getPercentile(final double p) {
+        long rank = (long)Math.ceil(p * m_count);
+        long seen = 0;
+        for (int i = 0; i < m_bounds.length; i++) {
+            seen += m_counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(m_bounds[i], m_max);
+            }
+        }
+        return m_max;
+    }
+}
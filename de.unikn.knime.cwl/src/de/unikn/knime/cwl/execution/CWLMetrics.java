@@ -0,0 +1,166 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.knime.core.node.NodeLogger;
+
+import de.unikn.knime.cwl.execution.CWLExecutionMetrics.Phase;
+
+/**
+ * Aggregates the metrics of CWL executions per tool and publishes them as MBean.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLMetrics implements CWLMetricsMXBean {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLMetrics.class);
+    
+    /** Name of the MBean. */
+    public static final String OBJECT_NAME = "de.unikn.knime.cwl:type=ExecutionMetrics";
+    
+    private final ConcurrentMap<String, CWLToolMetrics> m_tools = new ConcurrentHashMap<>();
+    
+    private CWLMetrics() { }
+    
+    // Private class that will only be initialized on first access by getInstance().
+    // Implicitely synchronized by class loader.
+    private static final class InstanceHolder {
+      static final CWLMetrics INSTANCE = new CWLMetrics();
+    }
+    
+    /**
+     * @return the singleton instance of the metrics
+     */
+    public static CWLMetrics getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+    
+    /**
+     * Registers the metrics with the platform's MBean server.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Could not register the CWL execution metrics MBean", e);
+        }
+    }
+    
+    /**
+     * Removes the metrics from the platform's MBean server.
+     */
+    public void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.debug("Could not unregister the CWL execution metrics MBean", e);
+        }
+    }
+    
+    /**
+     * Adds the metrics of an execution.
+     * @param toolId the ID of the tool in the registry
+     * @param metrics the metrics of the execution
+     */
+    public void record(final String toolId, final CWLExecutionMetrics metrics) {
+        m_tools.computeIfAbsent(toolId, CWLToolMetrics::new).record(metrics);
+    }
+    
+    /**
+     * Adds the time of a phase that is measured outside of the execution.
+     * @param toolId the ID of the tool in the registry
+     * @param phase the phase
+     * @param nanos the time in nanoseconds
+     */
+    public void recordPhase(final String toolId, final Phase phase, final long nanos) {
+        m_tools.computeIfAbsent(toolId, CWLToolMetrics::new).recordPhase(phase, nanos);
+    }
+    
+    @Override
+    public long getExecutionCount() {
+        return m_tools.values().stream().mapToLong(m -> m.getExecutionCount()).sum();
+    }
+    
+    @Override
+    public long getFailureCount() {
+        return m_tools.values().stream().mapToLong(m -> m.getFailureCount()).sum();
+    }
+    
+    @Override
+    public List<CWLToolMetrics> getToolMetrics() {
+        List<CWLToolMetrics> metrics = new ArrayList<>();
+        for (CWLToolMetrics m : m_tools.values()) {
+            metrics.add(m.copy());
+        }
+        return metrics;
+    }
+    
+    @Override
+    public void reset() {
+        m_tools.clear();
+    }
+}
@@ -0,0 +1,457 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.knime.core.node.NodeLogger;
+import org.yaml.snakeyaml.Yaml;
+
+import de.unikn.knime.cwl.Activator;
+import de.unikn.knime.cwl.preferences.Preferences;
+
+/**
+ * Cache of packed CWL tools. Packing resolves {@code $import}, {@code $include}, {@code run} and remote
+ * references once and validates the tool, so the cwl-runner gets a single self-contained document instead
+ * of resolving and validating the whole tree on every execution. A packed tool is reused as long as the
+ * tool and all local files it references are unchanged; tools that cannot be packed are executed as they are.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLPackedToolCache {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLPackedToolCache.class);
+    
+    private static final String CACHE_DIR_NAME = "packed";
+    private static final String PACKED_SUFFIX = ".cwl";
+    private static final String MANIFEST_SUFFIX = ".json";
+    private static final String TMP_SUFFIX = ".tmp";
+    
+    private static final String TOOL_KEY = "tool";
+    private static final String COMMAND_KEY = "command";
+    private static final String DEPENDENCIES_KEY = "dependencies";
+    private static final String PATH_KEY = "path";
+    private static final String SIZE_KEY = "size";
+    private static final String LAST_MODIFIED_KEY = "lastModified";
+    
+    // Keys whose values are references to other documents
+    private static final Set<String> REFERENCE_KEYS = new LinkedHashSet<>(
+            Arrays.asList("$import", "$include", "$mixin", "run"));
+    // Keys of File and Directory literals, relative values would no longer resolve next to the packed tool
+    private static final Set<String> LOCATION_KEYS = new LinkedHashSet<>(Arrays.asList("location", "path"));
+    
+    private static final Pattern URI_PATTERN = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*:.*");
+    private static final String FILE_URI_SCHEME = "file:";
+    
+    // Packed tools by the path of the original tool
+    private final Map<String, Entry> m_entries = new ConcurrentHashMap<>();
+    private final Map<String, Object> m_locks = new ConcurrentHashMap<>();
+    
+    private CWLPackedToolCache() { }
+    
+    // Private class that will only be initialized on first access by getInstance().
+    // Implicitely synchronized by class loader.
+    private static final class InstanceHolder {
+      static final CWLPackedToolCache INSTANCE = new CWLPackedToolCache();
+    }
+    
+    /**
+     * @return the singleton instance of the packed tool cache
+     */
+    static CWLPackedToolCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+    
+    /**
+     * Determines the file to pass to the cwl-runner for a tool. Packs the tool if packing is enabled in the
+     * preferences and there is no up-to-date packed version yet.
+     * @param toolPath the path to the CWL tool
+     * @return the path to the packed tool or the tool path itself if the tool is not packed
+     */
+    String getExecutablePath(final String toolPath) {
+        if (!Preferences.isPackEnabled()) {
+            return toolPath;
+        }
+        String command = Preferences.getPackCommand();
+        Entry entry = m_entries.get(toolPath);
+        if (entry != null && entry.isValid(command)) {
+            return entry.getExecutablePath(toolPath);
+        }
+        synchronized (m_locks.computeIfAbsent(toolPath, k -> new Object())) {
+            entry = m_entries.get(toolPath);
+            if (entry == null || !entry.isValid(command)) {
+                entry = loadOrPack(Paths.get(toolPath).toAbsolutePath(), command);
+                m_entries.put(toolPath, entry);
+            }
+        }
+        return entry.getExecutablePath(toolPath);
+    }
+    
+    private Entry loadOrPack(final Path tool, final String command) {
+        Path dir = getCacheDir();
+        String name = hashName(tool.toString());
+        Path packed = dir.resolve(name + PACKED_SUFFIX);
+        Path manifest = dir.resolve(name + MANIFEST_SUFFIX);
+        
+        Entry entry = readManifest(manifest, packed);
+        if (entry != null && entry.isValid(command) && Files.isRegularFile(packed)) {
+            LOGGER.debug("Using packed version of " + tool);
+            return entry;
+        }
+        
+        List<Path> dependencies = new ArrayList<>();
+        try {
+            if (!collectDependencies(tool, dependencies)) {
+                LOGGER.debug(tool + " references files relative to its location and is executed unpacked");
+                return new Entry(null, command, stamp(dependencies));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Cannot determine the files referenced by " + tool + ", it is executed unpacked", e);
+            return new Entry(null, command, stamp(dependencies));
+        }
+        List<Stamp> stamps = stamp(dependencies);
+        try {
+            Files.createDirectories(dir);
+            pack(tool, command, packed);
+            entry = new Entry(packed.toString(), command, stamps);
+            writeManifest(manifest, tool, entry);
+            LOGGER.debug("Packed " + tool + " with " + dependencies.size() + " referenced files");
+            return entry;
+        } catch (IOException e) {
+            LOGGER.warn("Could not pack " + tool + ", it is executed unpacked: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Without dependencies the entry is invalid, so packing is tried again by the next execution
+            return new Entry(null, command, new ArrayList<>());
+        }
+        // Not retried until the tool or one of its references changes
+        return new Entry(null, command, stamps);
+    }
+    
+    private static void pack(final Path tool, final String command, final Path packed)
+            throws IOException, InterruptedException {
+        List<String> args = new ArrayList<>(Arrays.asList(CWLExecutor.translateCommandline(command)));
+        args.add(tool.toString());
+        Path tmp = packed.resolveSibling(packed.getFileName() + TMP_SUFFIX);
+        Path errors = packed.resolveSibling(packed.getFileName() + ".log");
+        ProcessBuilder pb = new ProcessBuilder(args)
+                .redirectOutput(tmp.toFile())
+                .redirectError(errors.toFile());
+        pb.directory(tool.getParent().toFile());
+        Process process = pb.start();
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Files.deleteIfExists(tmp);
+            Files.deleteIfExists(errors);
+            throw e;
+        }
+        try {
+            if (exitCode != 0 || Files.size(tmp) == 0) {
+                String log = FileUtils.readFileToString(errors.toFile(), StandardCharsets.UTF_8).trim();
+                throw new IOException("'" + String.join(" ", args) + "' exited with code " + exitCode
+                        + (log.isEmpty() ? "" : ": " + log));
+            }
+            Files.move(tmp, packed, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+            Files.deleteIfExists(errors);
+        }
+    }
+    
+    /**
+     * Collects the tool and all local documents it references through {@code $import}, {@code $include},
+     * {@code $mixin} and {@code run}, transitively.
+     * @param tool the path of the tool
+     * @param dependencies the list the tool and the referenced documents are added to
+     * @return false if a document contains a relative file location that only resolves next to the tool
+     * @throws IOException if a document cannot be read
+     */
+    public static boolean collectDependencies(final Path tool, final List<Path> dependencies) throws IOException {
+        Set<Path> seen = new LinkedHashSet<>();
+        Deque<Path> queue = new ArrayDeque<>();
+        queue.add(tool.normalize());
+        boolean relocatable = true;
+        while (!queue.isEmpty()) {
+            Path doc = queue.poll();
+            if (!seen.add(doc)) {
+                continue;
+            }
+            dependencies.add(doc);
+            // Included files are plain text, only CWL and YAML documents can contain further references
+            if (!isYAMLDocument(doc)) {
+                continue;
+            }
+            Object content;
+            try (InputStream is = Files.newInputStream(doc)) {
+                content = new Yaml().load(is);
+            }
+            List<String> references = new ArrayList<>();
+            relocatable &= collectReferences(content, references);
+            for (String ref : references) {
+                Path p = resolve(doc, ref);
+                if (p != null) {
+                    queue.add(p);
+                }
+            }
+        }
+        return relocatable;
+    }
+    
+    private static boolean isYAMLDocument(final Path doc) {
+        String name = doc.getFileName().toString().toLowerCase();
+        return name.endsWith(".cwl") || name.endsWith(".yml") || name.endsWith(".yaml") || name.endsWith(".json");
+    }
+    
+    private static boolean collectReferences(final Object node, final List<String> references) {
+        boolean relocatable = true;
+        if (node instanceof Map) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>)node).entrySet()) {
+                Object key = e.getKey();
+                Object value = e.getValue();
+                if (value instanceof String && REFERENCE_KEYS.contains(key)) {
+                    references.add((String)value);
+                } else if (value instanceof String && LOCATION_KEYS.contains(key)) {
+                    String location = (String)value;
+                    relocatable &= location.startsWith("/") || URI_PATTERN.matcher(location).matches();
+                } else {
+                    relocatable &= collectReferences(value, references);
+                }
+            }
+        } else if (node instanceof List) {
+            for (Object o : (List<?>)node) {
+                relocatable &= collectReferences(o, references);
+            }
+        }
+        return relocatable;
+    }
+    
+    /**
+     * Resolves a reference against the document containing it.
+     * @return the referenced local file or null if the reference is remote or points into the same document
+     */
+    private static Path resolve(final Path doc, final String ref) {
+        String r = ref;
+        int fragment = r.indexOf('#');
+        if (fragment >= 0) {
+            r = r.substring(0, fragment);
+        }
+        if (r.isEmpty()) {
+            return null;
+        }
+        if (r.startsWith(FILE_URI_SCHEME)) {
+            return Paths.get(URI.create(r)).normalize();
+        }
+        if (URI_PATTERN.matcher(r).matches() && !(File.separatorChar == '\\' && r.matches("^[a-zA-Z]:.*"))) {
+            // Remote references are frozen into the packed tool
+            return null;
+        }
+        return doc.resolveSibling(r).normalize();
+    }
+    
+    private static List<Stamp> stamp(final List<Path> files) {
+        List<Stamp> stamps = new ArrayList<>();
+        for (Path p : files) {
+            stamps.add(Stamp.of(p));
+        }
+        return stamps;
+    }
+    
+    private static Entry readManifest(final Path manifest, final Path packed) {
+        if (!Files.isRegularFile(manifest)) {
+            return null;
+        }
+        try (Reader r = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            JsonObject json = Json.createReader(r).readObject();
+            List<Stamp> stamps = new ArrayList<>();
+            for (JsonValue v : json.getJsonArray(DEPENDENCIES_KEY)) {
+                JsonObject dep = (JsonObject)v;
+                stamps.add(new Stamp(dep.getString(PATH_KEY), dep.getJsonNumber(SIZE_KEY).longValue(),
+                        dep.getJsonNumber(LAST_MODIFIED_KEY).longValue()));
+            }
+            return new Entry(packed.toString(), json.getString(COMMAND_KEY), stamps);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Ignoring unreadable manifest " + manifest, e);
+            return null;
+        }
+    }
+    
+    private static void writeManifest(final Path manifest, final Path tool, final Entry entry) throws IOException {
+        JsonArrayBuilder deps = Json.createArrayBuilder();
+        for (Stamp s : entry.m_dependencies) {
+            deps.add(Json.createObjectBuilder()
+                    .add(PATH_KEY, s.m_path)
+                    .add(SIZE_KEY, s.m_size)
+                    .add(LAST_MODIFIED_KEY, s.m_lastModified));
+        }
+        JsonObject json = Json.createObjectBuilder()
+                .add(TOOL_KEY, tool.toString())
+                .add(COMMAND_KEY, entry.m_command)
+                .add(DEPENDENCIES_KEY, deps)
+                .build();
+        Path tmp = manifest.resolveSibling(manifest.getFileName() + TMP_SUFFIX);
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            Json.createWriter(w).writeObject(json);
+        }
+        Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static Path getCacheDir() {
+        Activator activator = Activator.getDefault();
+        if (activator == null) {
+            return Paths.get(System.getProperty("java.io.tmpdir"), "knime-cwl-" + CACHE_DIR_NAME);
+        }
+        return activator.getStateLocation().toFile().toPath().resolve(CACHE_DIR_NAME);
+    }
+    
+    private static String hashName(final String s) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            return Hex.encodeHexString(md.digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Size and modification time of a file the packed tool was built from.
+     */
+    private static final class Stamp {
+        
+        private final String m_path;
+        private final long m_size;
+        private final long m_lastModified;
+        
+        Stamp(final String path, final long size, final long lastModified) {
+            m_path = path;
+            m_size = size;
+            m_lastModified = lastModified;
+        }
+        
+        static Stamp of(final Path p) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                return new Stamp(p.toString(), attrs.size(), attrs.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+                // Missing files are recorded as well, the entry becomes invalid once they appear
+                return new Stamp(p.toString(), -1, -1);
+            }
+        }
+        
+        boolean isCurrent() {
+            Stamp current = of(Paths.get(m_path));
+            return current.m_size == m_size && current.m_lastModified == m_lastModified;
+        }
+    }
+    
+    /**
+     * A packed tool, or the record that a tool could not be packed, together with the files it depends on.
+     */
+    private static final class Entry {
+        
+        // Null if the tool is executed unpacked
+        private final String m_packedPath;
+        private final String m_command;
+        private final List<Stamp> m_dependencies;
+        
+        Entry(final String packedPath, final String command, final List<Stamp> dependencies) {
+            m_packedPath = packedPath;
+            m_command = command;
+            m_dependencies = dependencies;
+        }
+        
+        boolean isValid(final String command) {
+            if (!m_command.equals(command) || m_dependencies.isEmpty()) {
+                return false;
+            }
+            for (Stamp s : m_dependencies) {
+                if (!s.isCurrent()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        String getExecutablePath(final String toolPath) {
+            return m_packedPath == null ? toolPath : m_packedPath;
+        }
+    }
+}
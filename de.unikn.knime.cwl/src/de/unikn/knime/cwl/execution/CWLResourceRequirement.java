@@ -0,0 +1,190 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The resources a tool needs while it is executed, as declared by its {@code ResourceRequirement}.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLResourceRequirement {
+    
+    private static final String RESOURCE_REQUIREMENT = "ResourceRequirement";
+    
+    /**
+     * Resources of a tool that does not declare any, the defaults of the CWL specification: a single core and
+     * 256 MiB of memory. Disk space is only reserved if a tool declares it, reserving the default of 1024 MiB each
+     * for temporary files and outputs would limit the number of concurrent executions on small volumes.
+     */
+    public static final CWLResourceRequirement DEFAULT = new CWLResourceRequirement(1, 256, 0, 0);
+    
+    private final long m_cores;
+    private final long m_ramMB;
+    private final long m_tmpdirMB;
+    private final long m_outdirMB;
+    
+    /**
+     * Creates a new resource requirement.
+     * @param cores the number of cores
+     * @param ramMB the memory in mebibytes
+     * @param tmpdirMB the space for temporary files in mebibytes
+     * @param outdirMB the space for output files in mebibytes
+     */
+    public CWLResourceRequirement(final long cores, final long ramMB, final long tmpdirMB, final long outdirMB) {
+        m_cores = cores;
+        m_ramMB = ramMB;
+        m_tmpdirMB = tmpdirMB;
+        m_outdirMB = outdirMB;
+    }
+    
+    /**
+     * Reads the resource requirement of a CWL document. A {@code ResourceRequirement} in the requirements
+     * takes precedence over one in the hints. Values given by expressions are not evaluated, the defaults
+     * are used for them instead.
+     * @param cwl the parsed CWL document
+     * @return the resource requirement, {@link #DEFAULT} if the document does not declare one
+     */
+    public static CWLResourceRequirement fromCWL(final Map<?, ?> cwl) {
+        Map<?, ?> req = find(cwl.get("requirements"));
+        if (req == null) {
+            req = find(cwl.get("hints"));
+        }
+        if (req == null) {
+            return DEFAULT;
+        }
+        return new CWLResourceRequirement(Math.max(1, getMin(req, "cores", DEFAULT.m_cores)),
+                getMin(req, "ram", DEFAULT.m_ramMB), getMin(req, "tmpdir", DEFAULT.m_tmpdirMB),
+                getMin(req, "outdir", DEFAULT.m_outdirMB));
+    }
+    
+    /**
+     * Requirements can either be a list of objects with a class field or a map with the class as key.
+     */
+    private static Map<?, ?> find(final Object requirements) {
+        if (requirements instanceof List) {
+            for (Object r : (List<?>)requirements) {
+                if (r instanceof Map && RESOURCE_REQUIREMENT.equals(((Map<?, ?>)r).get("class"))) {
+                    return (Map<?, ?>)r;
+                }
+            }
+        } else if (requirements instanceof Map) {
+            Object r = ((Map<?, ?>)requirements).get(RESOURCE_REQUIREMENT);
+            if (r instanceof Map) {
+                return (Map<?, ?>)r;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Reads the minimum of a resource. If only the maximum is given, the minimum is the maximum.
+     */
+    private static long getMin(final Map<?, ?> req, final String resource, final long defaultValue) {
+        Object min = req.get(resource + "Min");
+        if (min == null) {
+            min = req.get(resource + "Max");
+        }
+        if (min instanceof Number) {
+            return (long)Math.ceil(((Number)min).doubleValue());
+        }
+        return defaultValue;
+    }
+    
+    /**
+     * @param n the number of executions
+     * @return the resources needed by n concurrent executions
+     */
+    public CWLResourceRequirement times(final int n) {
+        return new CWLResourceRequirement(m_cores * n, m_ramMB * n, m_tmpdirMB * n, m_outdirMB * n);
+    }
+    
+    /**
+     * @return the number of cores
+     */
+    public long getCores() {
+        return m_cores;
+    }
+    
+    /**
+     * @return the memory in mebibytes
+     */
+    public long getRamMB() {
+        return m_ramMB;
+    }
+    
+    /**
+     * @return the space for temporary files in mebibytes, 0 if it is not declared
+     */
+    public long getTmpdirMB() {
+        return m_tmpdirMB;
+    }
+    
+    /**
+     * @return the space for output files in mebibytes, 0 if it is not declared
+     */
+    public long getOutdirMB() {
+        return m_outdirMB;
+    }
+    
+    /**
+     * @return the disk space for temporary and output files in mebibytes
+     */
+    public long getDiskMB() {
+        return m_tmpdirMB + m_outdirMB;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%d cores, %d MB memory, %d MB temporary space, %d MB output space", m_cores, m_ramMB,
+                m_tmpdirMB, m_outdirMB);
+    }
+}
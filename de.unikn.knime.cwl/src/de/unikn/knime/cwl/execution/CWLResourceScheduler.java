@@ -0,0 +1,314 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.knime.core.node.NodeLogger;
+
+import de.unikn.knime.cwl.preferences.Preferences;
+
+/**
+ * Process-wide scheduler admitting CWL executions only while the cores and memory they declare are available.
+ * Waiting executions are admitted in the order of their priority and, within the same priority, in the order
+ * they arrived. The priority of a waiting execution grows with its waiting time, so that executions with a low
+ * priority are not starved. The execution at the head of the queue blocks all others until it fits,
+ * which keeps executions with large requirements from being overtaken indefinitely.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLResourceScheduler {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLResourceScheduler.class);
+    
+    /** Priority of executions that do not specify one. */
+    public static final int PRIORITY_NORMAL = 0;
+    
+    /** Waiting time after which the priority of a waiting execution is raised by one. */
+    private static final long AGING_MILLIS = 30000;
+    
+    /** Interval in which waiting executions re-check the limits, which may change in the preferences. */
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+    
+    private final List<Waiter> m_queue = new ArrayList<>();
+    private long m_sequence = 0;
+    private long m_usedCores = 0;
+    private long m_usedRamMB = 0;
+    private long m_usedDiskMB = 0;
+    private int m_running = 0;
+    
+    private CWLResourceScheduler() { }
+    
+    // Private class that will only be initialized on first access by getInstance().
+    // Implicitely synchronized by class loader.
+    private static final class InstanceHolder {
+      static final CWLResourceScheduler INSTANCE = new CWLResourceScheduler();
+    }
+    
+    /**
+     * @return the singleton instance of the scheduler
+     */
+    public static CWLResourceScheduler getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+    
+    /**
+     * Waits until the resources are available and reserves them.
+     * @param resources the resources to reserve
+     * @param priority the priority of the execution, higher priorities are admitted first
+     * @param handle the handle of the execution, receives a progress message while waiting
+     * @return the lease that has to be closed to free the resources again
+     * @throws InterruptedException when the thread is interrupted while waiting
+     */
+    Lease acquire(final CWLResourceRequirement resources, final int priority, final CWLExecutionHandle handle)
+            throws InterruptedException {
+        return acquire(resources, 1, priority, handle);
+    }
+    
+    /**
+     * Waits until the resources of at least one of several executions are available and reserves the resources
+     * of as many of them as are free when it is admitted, e.g. for a batch of executions. Reserving all of them
+     * would only fit when nothing else is running.
+     * @param resources the resources of a single execution
+     * @param count the number of executions
+     * @param priority the priority of the executions, higher priorities are admitted first
+     * @param handle the handle of the execution, receives a progress message while waiting
+     * @return the lease that has to be closed to free the resources again
+     * @throws InterruptedException when the thread is interrupted while waiting
+     */
+    Lease acquire(final CWLResourceRequirement resources, final int count, final int priority,
+            final CWLExecutionHandle handle) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        Waiter waiter;
+        CWLResourceRequirement reserved;
+        synchronized (this) {
+            waiter = new Waiter(priority, m_sequence++, start);
+            m_queue.add(waiter);
+            try {
+                boolean reported = false;
+                while (true) {
+                    if (next() == waiter) {
+                        reserved = resources.times(getFreeCount(resources, count));
+                        if (fits(reserved)) {
+                            break;
+                        }
+                    }
+                    if (!reported) {
+                        handle.reportProgress(String.format("Waiting for resources (%s)", resources));
+                        reported = true;
+                    }
+                    wait(POLL_INTERVAL_MILLIS);
+                }
+            } finally {
+                m_queue.remove(waiter);
+                // The next execution might fit as well or might have been waiting for this one to leave the queue
+                notifyAll();
+            }
+            m_usedCores += reserved.getCores();
+            m_usedRamMB += reserved.getRamMB();
+            m_usedDiskMB += reserved.getDiskMB();
+            m_running++;
+        }
+        long waited = System.currentTimeMillis() - start;
+        if (waited > 0) {
+            LOGGER.debug(String.format("CWL execution waited %d ms for resources (%s)", waited, reserved));
+        }
+        return new Lease(reserved, waited);
+    }
+    
+    private synchronized void release(final CWLResourceRequirement resources) {
+        m_usedCores -= resources.getCores();
+        m_usedRamMB -= resources.getRamMB();
+        m_usedDiskMB -= resources.getDiskMB();
+        m_running--;
+        notifyAll();
+    }
+    
+    /**
+     * @return the waiting execution that is admitted next
+     */
+    private Waiter next() {
+        long now = System.currentTimeMillis();
+        Waiter next = null;
+        for (Waiter w : m_queue) {
+            if (next == null || w.effectivePriority(now) > next.effectivePriority(now)
+                    || (w.effectivePriority(now) == next.effectivePriority(now) && w.m_sequence < next.m_sequence)) {
+                next = w;
+            }
+        }
+        return next;
+    }
+    
+    private boolean fits(final CWLResourceRequirement resources) {
+        if (m_running == 0) {
+            // Requirements exceeding the limits are executed on their own instead of never
+            return true;
+        }
+        if (m_usedCores + resources.getCores() > Preferences.getMaxCores()) {
+            return false;
+        }
+        long maxRam = Preferences.getMaxMemory();
+        if (maxRam > 0 && m_usedRamMB + resources.getRamMB() > maxRam) {
+            return false;
+        }
+        if (resources.getDiskMB() > 0) {
+            // Running executions may not have written all of their files yet
+            return getFreeDiskMB() - m_usedDiskMB >= resources.getDiskMB();
+        }
+        return true;
+    }
+    
+    /**
+     * @return how many of the executions fit into the currently free resources, at least one
+     */
+    private int getFreeCount(final CWLResourceRequirement resources, final int count) {
+        long n = count;
+        if (resources.getCores() > 0) {
+            n = Math.min(n, (Preferences.getMaxCores() - m_usedCores) / resources.getCores());
+        }
+        long maxRam = Preferences.getMaxMemory();
+        if (maxRam > 0 && resources.getRamMB() > 0) {
+            n = Math.min(n, (maxRam - m_usedRamMB) / resources.getRamMB());
+        }
+        if (n > 1 && resources.getDiskMB() > 0) {
+            n = Math.min(n, (getFreeDiskMB() - m_usedDiskMB) / resources.getDiskMB());
+        }
+        return (int)Math.max(1, n);
+    }
+    
+    /**
+     * @return the usable space on the volume of the scratch directory, in which the executions write their files
+     */
+    private static long getFreeDiskMB() {
+        File dir = Preferences.getScratchDir().getAbsoluteFile();
+        // The scratch directory is created with the first workspace
+        while (dir != null && !dir.exists()) {
+            dir = dir.getParentFile();
+        }
+        return dir == null ? 0 : dir.getUsableSpace() / (1024 * 1024);
+    }
+    
+    /**
+     * @return the number of executions waiting for resources
+     */
+    public synchronized int getQueueLength() {
+        return m_queue.size();
+    }
+    
+    /**
+     * @return the number of executions currently holding resources
+     */
+    public synchronized int getRunningCount() {
+        return m_running;
+    }
+    
+    /**
+     * @return the number of cores reserved by running executions
+     */
+    public synchronized long getUsedCores() {
+        return m_usedCores;
+    }
+    
+    /**
+     * @return the memory in mebibytes reserved by running executions
+     */
+    public synchronized long getUsedMemory() {
+        return m_usedRamMB;
+    }
+    
+    /**
+     * Resources reserved for an execution.
+     */
+    public final class Lease implements AutoCloseable {
+        private final CWLResourceRequirement m_resources;
+        private final long m_waitMillis;
+        private boolean m_closed = false;
+        
+        private Lease(final CWLResourceRequirement resources, final long waitMillis) {
+            m_resources = resources;
+            m_waitMillis = waitMillis;
+        }
+        
+        /**
+         * @return the time the execution waited for the resources in milliseconds
+         */
+        public long getWaitMillis() {
+            return m_waitMillis;
+        }
+        
+        /**
+         * Frees the resources.
+         */
+        @Override
+        public synchronized void close() {
+            if (!m_closed) {
+                m_closed = true;
+                release(m_resources);
+            }
+        }
+    }
+    
+    private static final class Waiter {
+        private final int m_priority;
+        private final long m_sequence;
+        private final long m_since;
+        
+        Waiter(final int priority, final long sequence, final long since) {
+            m_priority = priority;
+            m_sequence = sequence;
+            m_since = since;
+        }
+        
+        long effectivePriority(final long now) {
+            return m_priority + (now - m_since) / AGING_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,632 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.knime.core.node.NodeLogger;
+
+import de.unikn.knime.cwl.execution.CWLExecutor.CWLExecutionResult;
+import de.unikn.knime.cwl.preferences.Preferences;
+
+/**
+ * Persistent cache for results of CWL executions. Entries are keyed on the tool, its inputs including
+ * the content of referenced files and directories, and the runner arguments. Each entry stores the
+ * output JSON together with the output files; least recently used entries are evicted when the
+ * cache exceeds the size configured in the preferences.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLResultCache {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLResultCache.class);
+    
+    private static final String OUTPUT_FILE = "output.json";
+    private static final String FILES_DIR = "files";
+    private static final String TMP_SUFFIX = ".tmp";
+    
+    private static final String OUTPUT_KEY = "output";
+    private static final String EXIT_CODE_KEY = "exitCode";
+    
+    private static final String CLASS_KEY = "class";
+    private static final String PATH_KEY = "path";
+    private static final String LOCATION_KEY = "location";
+    private static final String FILE_CLASS = "File";
+    private static final String DIRECTORY_CLASS = "Directory";
+    
+    private static final String FILE_URI_SCHEME = "file:";
+    
+    /** Number of content hashes that are remembered, about a megabyte of memory. */
+    private static final int MAX_CONTENT_HASHES = 10000;
+    
+    /** Number of locks the keys are distributed over. */
+    private static final int KEY_LOCKS = 64;
+    
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    
+    // Content hashes of input files, keyed by path, size and modification time, least recently used ones are
+    // dropped, which includes those of files that changed
+    private final Map<String, String> m_contentHashes = Collections.synchronizedMap(
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+                    return size() > MAX_CONTENT_HASHES;
+                }
+            });
+    
+    // Entries are copied while holding the lock of their key only, so that entries can be looked up and stored
+    // concurrently. The lock of the cache guards the fields below and is acquired after the lock of a key.
+    private final ReentrantLock[] m_keyLocks = new ReentrantLock[KEY_LOCKS];
+    
+    // Entries in access order, mapped to their size on disk
+    private LinkedHashMap<String, Long> m_entries;
+    private File m_root;
+    private long m_totalSize;
+    
+    private CWLResultCache() {
+        for (int i = 0; i < m_keyLocks.length; i++) {
+            m_keyLocks[i] = new ReentrantLock();
+        }
+    }
+    
+    // Private class that will only be initialized on first access by getInstance().
+    // Implicitely synchronized by class loader.
+    private static final class InstanceHolder {
+      static final CWLResultCache INSTANCE = new CWLResultCache();
+    }
+    
+    /**
+     * @return the singleton instance of the result cache
+     */
+    public static CWLResultCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+    
+    /**
+     * @return whether the cache is enabled in the preferences
+     */
+    public boolean isEnabled() {
+        return Preferences.isCacheEnabled();
+    }
+    
+    /**
+     * @return the number of lookups that were answered from the cache since start-up
+     */
+    public long getHitCount() {
+        return m_hits.get();
+    }
+    
+    /**
+     * @return the number of lookups that were not answered from the cache since start-up
+     */
+    public long getMissCount() {
+        return m_misses.get();
+    }
+    
+    /**
+     * Computes the cache key of an execution.
+     * @param toolId the registry ID of the tool
+     * @param toolPath the path to the CWL tool
+     * @param inputs the inputs of the execution
+     * @param runnerArgs the effective arguments passed to the cwl-runner
+     * @return the key under which the result of the execution is cached
+     * @throws IOException when the tool, a document it references or a referenced input file cannot be read
+     */
+    public String createKey(final String toolId, final String toolPath, final Map<String, JsonValue> inputs,
+            final List<String> runnerArgs) throws IOException {
+        MessageDigest md = createDigest();
+        update(md, toolId);
+        // The tool and the schemas, scripts and tools it imports, includes or runs
+        List<Path> documents = new ArrayList<>();
+        try {
+            CWLPackedToolCache.collectDependencies(Paths.get(toolPath), documents);
+        } catch (RuntimeException e) {
+            throw new IOException("Cannot read the documents referenced by " + toolPath, e);
+        }
+        for (Path p : documents) {
+            update(md, p.toString());
+            // A missing reference fails the execution, but must not match a later one that exists
+            update(md, Files.exists(p) ? hashContent(p) : "");
+        }
+        for (Entry<String, JsonValue> e : new TreeMap<>(inputs).entrySet()) {
+            update(md, e.getKey());
+            StringBuilder canonical = new StringBuilder();
+            canonicalize(e.getValue(), canonical);
+            update(md, canonical.toString());
+            List<Path> referenced = new ArrayList<>();
+            collectPaths(e.getValue(), referenced, false);
+            for (Path p : referenced) {
+                update(md, p.toString());
+                update(md, hashContent(p));
+            }
+        }
+        for (String arg : runnerArgs) {
+            update(md, arg);
+        }
+        return Hex.encodeHexString(md.digest());
+    }
+    
+    /**
+     * Looks up a cached result. On a hit, the cached output files are restored into a new directory
+     * and the returned output JSON references them.
+     * @param key the cache key as created by {@link #createKey(String, String, Map, List)}
+     * @return the cached result or null if there is none
+     * @throws IOException when the cached entry cannot be restored
+     */
+    public CWLExecutionResult lookup(final String key) throws IOException {
+        ReentrantLock lock = getKeyLock(key);
+        lock.lock();
+        try {
+            File entry;
+            synchronized (this) {
+                ensureLoaded();
+                entry = new File(m_root, key);
+                // Marks the entry as recently used
+                if (m_entries.get(key) == null) {
+                    m_misses.incrementAndGet();
+                    return null;
+                }
+            }
+            return restore(key, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private CWLExecutionResult restore(final String key, final File entry) throws IOException {
+        File outFile = new File(entry, OUTPUT_FILE);
+        if (!outFile.isFile()) {
+            m_misses.incrementAndGet();
+            return null;
+        }
+        JsonObject stored;
+        try (Reader r = Files.newBufferedReader(outFile.toPath(), StandardCharsets.UTF_8)) {
+            stored = Json.createReader(r).readObject();
+        }
+        Path target = CWLWorkspaceManager.getInstance().createWorkspace();
+        Path files = entry.toPath().resolve(FILES_DIR);
+        if (Files.isDirectory(files)) {
+            try {
+                copy(files, target.resolve(FILES_DIR));
+            } catch (IOException e) {
+                CWLWorkspaceManager.getInstance().delete(target);
+                throw e;
+            }
+        }
+        JsonValue output = relocate(stored.get(OUTPUT_KEY), p -> target.resolve(p).toString());
+        // Touch the entry so the LRU order survives restarts
+        entry.setLastModified(System.currentTimeMillis());
+        m_hits.incrementAndGet();
+        LOGGER.info("Reusing cached CWL result " + key);
+        CWLExecutionResult res = new CWLExecutionResult((JsonObject)output, stored.getInt(EXIT_CODE_KEY, 0));
+        res.setWorkspace(target);
+        return res;
+    }
+    
+    /**
+     * Stores the result of an execution in the cache. Results referencing output files that do not
+     * exist are not cached.
+     * @param key the cache key as created by {@link #createKey(String, String, Map, List)}
+     * @param result the result to store
+     * @throws IOException when the result cannot be written
+     */
+    public void store(final String key, final CWLExecutionResult result) throws IOException {
+        ReentrantLock lock = getKeyLock(key);
+        lock.lock();
+        try {
+            File root;
+            synchronized (this) {
+                ensureLoaded();
+                root = m_root;
+            }
+            File entry = new File(root, key);
+            if (write(root, key, entry, result)) {
+                long size = FileUtils.sizeOfDirectory(entry);
+                synchronized (this) {
+                    if (root.equals(m_root)) {
+                        Long previous = m_entries.put(key, size);
+                        m_totalSize += size - (previous == null ? 0 : previous);
+                        evict(key);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Writes an entry into a temporary directory first, which is renamed once it is complete.
+     * @return false if the result is not cached
+     */
+    private static boolean write(final File root, final String key, final File entry, final CWLExecutionResult result)
+            throws IOException {
+        File tmp = new File(root, key + TMP_SUFFIX);
+        FileUtils.deleteDirectory(tmp);
+        Files.createDirectories(tmp.toPath());
+        try {
+            // Copy all top-level files and directories of the output, nested ones are contained in them
+            List<Path> outputs = new ArrayList<>();
+            collectPaths(result.getOutputJson(), outputs, false);
+            Map<String, String> mapping = new LinkedHashMap<>();
+            int i = 0;
+            for (Path p : outputs) {
+                if (!Files.exists(p)) {
+                    LOGGER.debug("Not caching result with missing output " + p);
+                    FileUtils.deleteDirectory(tmp);
+                    return false;
+                }
+                String rel = FILES_DIR + "/" + (i++) + "/" + p.getFileName();
+                copy(p, tmp.toPath().resolve(rel));
+                mapping.put(p.toString(), rel);
+            }
+            JsonValue output = relocate(result.getOutputJson(),
+                    p -> mapPrefix(Paths.get(p).toAbsolutePath().toString(), mapping));
+            JsonObject stored = Json.createObjectBuilder()
+                    .add(EXIT_CODE_KEY, result.getExitCode())
+                    .add(OUTPUT_KEY, output)
+                    .build();
+            try (Writer w = Files.newBufferedWriter(tmp.toPath().resolve(OUTPUT_FILE), StandardCharsets.UTF_8)) {
+                Json.createWriter(w).writeObject(stored);
+            }
+            FileUtils.deleteDirectory(entry);
+            Files.move(tmp.toPath(), entry.toPath());
+        } catch (IOException e) {
+            FileUtils.deleteDirectory(tmp);
+            throw e;
+        }
+        return true;
+    }
+    
+    private ReentrantLock getKeyLock(final String key) {
+        return m_keyLocks[Math.floorMod(key.hashCode(), m_keyLocks.length)];
+    }
+    
+    /**
+     * Deletes least recently used entries until the cache is within its size. Entries whose key is locked by
+     * another thread are in use and skipped.
+     */
+    private void evict(final String keep) {
+        long maxSize = Preferences.getCacheMaxSize();
+        Iterator<Entry<String, Long>> it = m_entries.entrySet().iterator();
+        while (m_totalSize > maxSize && it.hasNext()) {
+            Entry<String, Long> eldest = it.next();
+            ReentrantLock lock = getKeyLock(eldest.getKey());
+            if (eldest.getKey().equals(keep) || !lock.tryLock()) {
+                continue;
+            }
+            try {
+                FileUtils.deleteDirectory(new File(m_root, eldest.getKey()));
+                m_totalSize -= eldest.getValue();
+                it.remove();
+            } catch (IOException e) {
+                LOGGER.warn("Could not evict cached CWL result " + eldest.getKey(), e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+    
+    private void ensureLoaded() throws IOException {
+        File root = Preferences.getCacheDir();
+        if (m_entries != null && root.equals(m_root)) {
+            return;
+        }
+        Files.createDirectories(root.toPath());
+        m_root = root;
+        m_entries = new LinkedHashMap<>(16, 0.75f, true);
+        m_totalSize = 0;
+        File[] dirs = root.listFiles(File::isDirectory);
+        Arrays.sort(dirs, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File d : dirs) {
+            if (d.getName().endsWith(TMP_SUFFIX)) {
+                // Left over from an interrupted store
+                FileUtils.deleteDirectory(d);
+                continue;
+            }
+            long size = FileUtils.sizeOfDirectory(d);
+            m_entries.put(d.getName(), size);
+            m_totalSize += size;
+        }
+    }
+    
+    private String hashContent(final Path p) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+        String memoKey = p.toAbsolutePath() + "|" + attrs.size() + "|" + attrs.lastModifiedTime().toMillis();
+        String hash = m_contentHashes.get(memoKey);
+        if (hash != null) {
+            return hash;
+        }
+        MessageDigest md = createDigest();
+        if (attrs.isDirectory()) {
+            // Hash relative names and contents of all files in a stable order
+            List<Path> files = new ArrayList<>();
+            Files.walkFileTree(p, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes a) {
+                    files.add(file);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            files.sort(null);
+            for (Path f : files) {
+                update(md, p.relativize(f).toString());
+                update(md, hashContent(f));
+            }
+        } else {
+            byte[] buffer = new byte[1 << 16];
+            try (InputStream is = Files.newInputStream(p)) {
+                int n;
+                while ((n = is.read(buffer)) > 0) {
+                    md.update(buffer, 0, n);
+                }
+            }
+        }
+        hash = Hex.encodeHexString(md.digest());
+        m_contentHashes.put(memoKey, hash);
+        return hash;
+    }
+    
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static void update(final MessageDigest md, final String s) {
+        md.update(s.getBytes(StandardCharsets.UTF_8));
+        // Separator so that consecutive values cannot be confused
+        md.update((byte)0);
+    }
+    
+    /**
+     * Writes a JSON value with object keys in sorted order, so that equal values have equal representations.
+     */
+    private static void canonicalize(final JsonValue v, final StringBuilder sb) {
+        switch (v.getValueType()) {
+        case OBJECT:
+            JsonObject o = (JsonObject)v;
+            sb.append('{');
+            boolean first = true;
+            for (Entry<String, JsonValue> e : new TreeMap<>(o).entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                // Length-prefixed so that keys need no escaping
+                sb.append(e.getKey().length()).append(':').append(e.getKey()).append(':');
+                canonicalize(e.getValue(), sb);
+            }
+            sb.append('}');
+            break;
+        case ARRAY:
+            sb.append('[');
+            int i = 0;
+            for (JsonValue item : (JsonArray)v) {
+                if (i++ > 0) {
+                    sb.append(',');
+                }
+                canonicalize(item, sb);
+            }
+            sb.append(']');
+            break;
+        default:
+            sb.append(v.toString());
+        }
+    }
+    
+    private static boolean isFileOrDirectory(final JsonObject o) {
+        JsonValue cls = o.get(CLASS_KEY);
+        return cls instanceof JsonString
+                && (FILE_CLASS.equals(((JsonString)cls).getString())
+                        || DIRECTORY_CLASS.equals(((JsonString)cls).getString()));
+    }
+    
+    /**
+     * Reads the path of a CWL File or Directory object as it is written in the object.
+     * @return the path or null if the object does not reference a local file
+     */
+    private static String getPathString(final JsonObject o) {
+        String p = o.getString(PATH_KEY, null);
+        if (p != null) {
+            return p;
+        }
+        String loc = o.getString(LOCATION_KEY, null);
+        if (loc == null) {
+            return null;
+        } else if (loc.startsWith(FILE_URI_SCHEME)) {
+            return Paths.get(URI.create(loc)).toString();
+        } else if (!loc.contains(":")) {
+            return loc;
+        }
+        return null;
+    }
+    
+    /**
+     * Resolves the absolute local path of a CWL File or Directory object.
+     * @return the path or null if the object does not reference a local file
+     */
+    private static Path getLocalPath(final JsonObject o) {
+        String p = getPathString(o);
+        return p == null ? null : Paths.get(p).toAbsolutePath();
+    }
+    
+    /**
+     * Collects the paths of all File and Directory objects that are not contained in a Directory.
+     */
+    private static void collectPaths(final JsonValue v, final List<Path> paths, final boolean inDirectory) {
+        if (v instanceof JsonObject) {
+            JsonObject o = (JsonObject)v;
+            boolean dir = inDirectory;
+            if (isFileOrDirectory(o)) {
+                Path p = getLocalPath(o);
+                if (p != null && !inDirectory) {
+                    paths.add(p);
+                }
+                dir |= DIRECTORY_CLASS.equals(o.getString(CLASS_KEY));
+            }
+            for (Entry<String, JsonValue> e : o.entrySet()) {
+                collectPaths(e.getValue(), paths, dir);
+            }
+        } else if (v != null && v.getValueType() == JsonValue.ValueType.ARRAY) {
+            for (JsonValue item : (JsonArray)v) {
+                collectPaths(item, paths, inDirectory);
+            }
+        }
+    }
+    
+    /**
+     * Rewrites path and location of all File and Directory objects using the given path mapping.
+     * Locations are only written for mapped paths that are absolute.
+     */
+    private static JsonValue relocate(final JsonValue v, final Function<String, String> mapping) {
+        if (v instanceof JsonObject) {
+            JsonObject o = (JsonObject)v;
+            JsonObjectBuilder b = Json.createObjectBuilder();
+            String p = isFileOrDirectory(o) ? getPathString(o) : null;
+            for (Entry<String, JsonValue> e : o.entrySet()) {
+                if (p != null && (PATH_KEY.equals(e.getKey()) || LOCATION_KEY.equals(e.getKey()))) {
+                    continue;
+                }
+                b.add(e.getKey(), relocate(e.getValue(), mapping));
+            }
+            if (p != null) {
+                String mapped = mapping.apply(p);
+                b.add(PATH_KEY, mapped);
+                if (Paths.get(mapped).isAbsolute()) {
+                    b.add(LOCATION_KEY, Paths.get(mapped).toUri().toString());
+                }
+            }
+            return b.build();
+        } else if (v != null && v.getValueType() == JsonValue.ValueType.ARRAY) {
+            JsonArrayBuilder b = Json.createArrayBuilder();
+            for (JsonValue item : (JsonArray)v) {
+                b.add(relocate(item, mapping));
+            }
+            return b.build();
+        }
+        return v;
+    }
+    
+    private static String mapPrefix(final String path, final Map<String, String> mapping) {
+        for (Entry<String, String> e : mapping.entrySet()) {
+            if (path.equals(e.getKey())) {
+                return e.getValue();
+            } else if (path.startsWith(e.getKey() + File.separator)) {
+                return e.getValue() + path.substring(e.getKey().length()).replace(File.separatorChar, '/');
+            }
+        }
+        return path;
+    }
+    
+    /**
+     * Copies a file or all files in a directory to a new location. Files are not linked, since tools and users
+     * may modify the files of a workspace in place, which would change the cached result as well.
+     */
+    private static void copy(final Path src, final Path dst) throws IOException {
+        Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                    throws IOException {
+                Files.createDirectories(dst.resolve(src.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                Path target = dst.resolve(src.relativize(file).toString());
+                Files.createDirectories(target.getParent());
+                Files.copy(file, target);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Log of a cwl-runner execution. Only the most recent lines are kept in memory,
+ * the complete log is written to a spill file.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLRunnerLog implements Closeable {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLRunnerLog.class);
+    
+    /** Number of lines kept in memory. */
+    static final int DEFAULT_CAPACITY = 200;
+    
+    /** Lines longer than this are truncated in memory, the spill file contains them in full. */
+    private static final int MAX_LINE_LENGTH = 4096;
+    
+    private final Deque<String> m_tail = new ArrayDeque<>();
+    private final int m_capacity;
+    private final Path m_spillFile;
+    private BufferedWriter m_spill;
+    
+    /**
+     * Creates a new log.
+     * @param spillFile the file the complete log is written to
+     * @param capacity the number of lines kept in memory
+     */
+    CWLRunnerLog(final Path spillFile, final int capacity) {
+        m_spillFile = spillFile;
+        m_capacity = capacity;
+        try {
+            m_spill = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write runner log to " + spillFile + ", only the last lines are kept", e);
+        }
+    }
+    
+    /**
+     * Appends a line to the log.
+     * @param line the line without line terminator
+     */
+    synchronized void append(final String line) {
+        if (m_tail.size() == m_capacity) {
+            m_tail.removeFirst();
+        }
+        m_tail.addLast(line.length() > MAX_LINE_LENGTH ? line.substring(0, MAX_LINE_LENGTH) + "..." : line);
+        if (m_spill != null) {
+            try {
+                m_spill.write(line);
+                m_spill.newLine();
+            } catch (IOException e) {
+                LOGGER.warn("Cannot write runner log to " + m_spillFile, e);
+                closeSpill();
+            }
+        }
+    }
+    
+    /**
+     * @return the most recent lines of the log
+     */
+    synchronized List<String> getTail() {
+        return new ArrayList<>(m_tail);
+    }
+    
+    /**
+     * @return the file containing the complete log
+     */
+    Path getSpillFile() {
+        return m_spillFile;
+    }
+    
+    @Override
+    public synchronized void close() {
+        closeSpill();
+    }
+    
+    private void closeSpill() {
+        if (m_spill != null) {
+            try {
+                m_spill.close();
+            } catch (IOException e) {
+                // Nothing more to write
+            }
+            m_spill = null;
+        }
+    }
+}
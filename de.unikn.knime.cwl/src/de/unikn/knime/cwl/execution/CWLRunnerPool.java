@@ -0,0 +1,260 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.knime.core.node.NodeLogger;
+
+import de.unikn.knime.cwl.Activator;
+import de.unikn.knime.cwl.execution.CWLExecutor.CWLExecutionResult;
+import de.unikn.knime.cwl.preferences.Preferences;
+
+/**
+ * Pool of warm cwl-runner workers. Keeping the runner alive between executions avoids paying
+ * the interpreter start-up and schema loading for every single node execution.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLRunnerPool {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLRunnerPool.class);
+    
+    /** Location of the worker script shipped with this plugin. */
+    private static final String BUNDLED_WORKER = "worker/cwl_worker.py";
+    
+    /** Interpreter used for the bundled worker script. */
+    private static final String BUNDLED_WORKER_INTERPRETER = "python3";
+    
+    // Guarded by the pool, which is notified whenever a worker becomes idle or its slot is freed
+    private final Deque<CWLRunnerWorker> m_idle = new ArrayDeque<>();
+    private int m_size = 0;
+    private volatile boolean m_shutdown = false;
+    
+    private CWLRunnerPool() { }
+    
+    // Private class that will only be initialized on first access by getInstance().
+    // Implicitely synchronized by class loader.
+    private static final class InstanceHolder {
+      static final CWLRunnerPool INSTANCE = new CWLRunnerPool();
+    }
+    
+    /**
+     * @return the singleton instance of the worker pool
+     */
+    public static CWLRunnerPool getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+    
+    /**
+     * Executes a tool on one of the pooled workers. The call blocks until a worker is available
+     * and has finished the job.
+     * @param toolPath the path to the CWL tool
+     * @param jobFile the file containing the tool's inputs
+     * @param workDir the directory the runner writes its outputs to
+     * @param runnerArgs the arguments for the runner, excluding tool and job file
+     * @param handle the handle of the execution, used to cancel the job and report progress
+     * @return the result of the execution; its output JSON is null if the runner produced no output
+     * @throws WorkerUnavailableException when no worker can be started or the job cannot be sent to it, the job
+     *          has not been executed then
+     * @throws IOException when the worker fails while executing the job, the job may have been executed partially
+     * @throws InterruptedException when the thread is interrupted while waiting for a worker
+     */
+    CWLExecutionResult execute(final String toolPath, final Path jobFile, final Path workDir,
+            final List<String> runnerArgs, final CWLExecutionHandle handle)
+            throws IOException, InterruptedException {
+        JsonArrayBuilder args = Json.createArrayBuilder();
+        for (String arg : runnerArgs) {
+            args.add(arg);
+        }
+        JsonObject request = Json.createObjectBuilder()
+                .add("tool", toolPath)
+                .add("job", jobFile.toString())
+                .add("cwd", workDir.toString())
+                .add("args", args)
+                .build();
+        
+        CWLRunnerWorker worker;
+        try {
+            worker = acquire();
+        } catch (IOException e) {
+            throw new WorkerUnavailableException("No cwl-runner worker available: " + e.getMessage(), e);
+        }
+        boolean healthy = false;
+        try {
+            LOGGER.info("Executing CWL " + toolPath + " on warm worker");
+            // A cancelled job takes its worker down, the pool replaces it on demand
+            handle.setProcess(worker.getProcess());
+            JsonObject response = worker.submit(request, line -> {
+                LOGGER.debug(line);
+                handle.reportProgress(line);
+            });
+            healthy = true;
+            String log = response.getString("log", "");
+            if (!log.isEmpty()) {
+                LOGGER.debug(log);
+            }
+            JsonValue output = response.get("output");
+            return new CWLExecutionResult(output instanceof JsonObject ? (JsonObject)output : null,
+                    response.getInt("exitCode", -1));
+        } finally {
+            handle.setProcess(null);
+            release(worker, healthy);
+        }
+    }
+    
+    /**
+     * Terminates all idle workers and prevents new ones from being started.
+     */
+    public synchronized void shutdown() {
+        m_shutdown = true;
+        CWLRunnerWorker w;
+        while ((w = m_idle.poll()) != null) {
+            w.close();
+            m_size--;
+        }
+        notifyAll();
+    }
+    
+    private CWLRunnerWorker acquire() throws IOException, InterruptedException {
+        while (true) {
+            CWLRunnerWorker w;
+            synchronized (this) {
+                while (!m_shutdown && m_idle.isEmpty() && m_size >= Preferences.getWorkerPoolSize()) {
+                    wait();
+                }
+                if (m_shutdown) {
+                    throw new IOException("The cwl-runner worker pool has been shut down");
+                }
+                w = m_idle.poll();
+                if (w == null) {
+                    // Reserves the slot, the worker is started outside of the lock
+                    m_size++;
+                }
+            }
+            if (w == null) {
+                try {
+                    return new CWLRunnerWorker(getWorkerCommand());
+                } catch (IOException e) {
+                    freeSlot();
+                    throw e;
+                }
+            }
+            if (w.isAlive()) {
+                return w;
+            }
+            // Worker died while idle, free its slot
+            w.close();
+            freeSlot();
+        }
+    }
+    
+    private void release(final CWLRunnerWorker worker, final boolean healthy) {
+        synchronized (this) {
+            if (healthy && worker.isAlive() && !m_shutdown) {
+                m_idle.offer(worker);
+                notifyAll();
+                return;
+            }
+        }
+        worker.close();
+        freeSlot();
+    }
+    
+    private synchronized void freeSlot() {
+        m_size--;
+        notifyAll();
+    }
+    
+    private static List<String> getWorkerCommand() throws IOException {
+        String configured = Preferences.getWorkerCommand();
+        if (!configured.trim().isEmpty()) {
+            return Arrays.asList(CWLExecutor.translateCommandline(configured));
+        }
+        URL entry = Activator.getDefault().getBundle().getEntry(BUNDLED_WORKER);
+        if (entry == null) {
+            throw new IOException("The bundled cwl-runner worker cannot be found");
+        }
+        File script = new File(FileLocator.toFileURL(entry).getPath());
+        List<String> cmd = new ArrayList<>();
+        cmd.add(BUNDLED_WORKER_INTERPRETER);
+        cmd.add(script.getAbsolutePath());
+        return cmd;
+    }
+    
+    /**
+     * Exception signaling that a job was not executed because it could not be passed to a worker.
+     */
+    static final class WorkerUnavailableException extends IOException {
+        
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * @param message the reason why no worker could execute the job
+         * @param cause the exception that caused it
+         */
+        WorkerUnavailableException(final String message, final Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * A long-lived cwl-runner worker process that executes jobs sent to it over its standard input.
+ * Each request and each response is a single line of JSON. After start-up the worker announces
+ * itself with <code>{"ready": true}</code>, a request has the form
+ * <code>{"tool": ..., "job": ..., "cwd": ..., "args": [...]}</code> and is answered with
+ * <code>{"exitCode": ..., "output": {...}}</code>, optionally with the runner's log in a "log" field.
+ * While the job runs, the worker may send any number of <code>{"progress": ...}</code> messages carrying
+ * lines of the runner's log.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class CWLRunnerWorker {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLRunnerWorker.class);
+    
+    private static final String READY_KEY = "ready";
+    
+    private static final String PROGRESS_KEY = "progress";
+    
+    /** Time a worker gets to report that it is ready, a worker that hangs is replaced by a process per job. */
+    private static final long STARTUP_TIMEOUT_MILLIS = 60000;
+    
+    private final Process m_process;
+    private final BufferedWriter m_writer;
+    private final BufferedReader m_reader;
+    
+    /**
+     * Starts a new worker process and waits until it reports that it is ready.
+     * @param command the command starting the worker
+     * @throws IOException when the worker cannot be started or does not report readiness
+     */
+    CWLRunnerWorker(final List<String> command) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(command);
+        LOGGER.info("Starting cwl-runner worker: " + String.join(" ", command));
+        m_process = pb.start();
+        m_writer = new BufferedWriter(new OutputStreamWriter(m_process.getOutputStream(), StandardCharsets.UTF_8));
+        m_reader = new BufferedReader(new InputStreamReader(m_process.getInputStream(), StandardCharsets.UTF_8));
+        // The worker's own diagnostics go to stderr and must be drained so the worker never blocks
+        Thread stderrDrain = new Thread(() -> {
+            try (BufferedReader err = new BufferedReader(
+                    new InputStreamReader(m_process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = err.readLine()) != null) {
+                    LOGGER.debug(line);
+                }
+            } catch (IOException e) {
+                // Stream is closed when the worker exits
+            }
+        }, "cwl-worker-stderr");
+        stderrDrain.setDaemon(true);
+        stderrDrain.start();
+        
+        JsonObject hello = readHello();
+        if (!hello.getBoolean(READY_KEY, false)) {
+            close();
+            throw new IOException("cwl-runner worker did not report readiness");
+        }
+    }
+    
+    /**
+     * Reads the first message of the worker, the worker is terminated if it does not send one in time.
+     */
+    private JsonObject readHello() throws IOException {
+        FutureTask<JsonObject> hello = new FutureTask<>(this::readMessage);
+        Thread reader = new Thread(hello, "cwl-worker-startup");
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            return hello.get(STARTUP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            close();
+            throw new IOException(String.format("cwl-runner worker did not report readiness within %d s",
+                    STARTUP_TIMEOUT_MILLIS / 1000));
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while starting the cwl-runner worker");
+        } catch (ExecutionException e) {
+            close();
+            throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+        }
+    }
+    
+    /**
+     * Sends a job to the worker and blocks until the worker answers.
+     * @param request the job request
+     * @param progressListener receives the progress messages sent by the worker
+     * @return the worker's response
+     * @throws CWLRunnerPool.WorkerUnavailableException when the request cannot be sent to the worker
+     * @throws IOException when the worker answers with something that is not a response
+     */
+    synchronized JsonObject submit(final JsonObject request, final Consumer<String> progressListener)
+            throws IOException {
+        try {
+            m_writer.write(request.toString());
+            m_writer.newLine();
+            m_writer.flush();
+        } catch (IOException e) {
+            // The job did not reach the worker, so it can be executed elsewhere
+            throw new CWLRunnerPool.WorkerUnavailableException("The cwl-runner worker cannot be reached", e);
+        }
+        while (true) {
+            JsonObject msg = readMessage();
+            if (!msg.containsKey(PROGRESS_KEY)) {
+                return msg;
+            }
+            progressListener.accept(msg.getString(PROGRESS_KEY, ""));
+        }
+    }
+    
+    /**
+     * @return the worker process
+     */
+    Process getProcess() {
+        return m_process;
+    }
+    
+    /**
+     * @return whether the worker process is still running
+     */
+    boolean isAlive() {
+        return m_process.isAlive();
+    }
+    
+    /**
+     * Terminates the worker process.
+     */
+    void close() {
+        try {
+            m_writer.close();
+        } catch (IOException e) {
+            // Worker might already be gone
+        }
+        m_process.destroy();
+    }
+    
+    private JsonObject readMessage() throws IOException {
+        String line = m_reader.readLine();
+        if (line == null) {
+            throw new IOException("cwl-runner worker terminated unexpectedly");
+        }
+        try {
+            return Json.createReader(new StringReader(line)).readObject();
+        } catch (JsonException e) {
+            throw new IOException("cwl-runner worker sent an invalid message: " + line, e);
+        }
+    }
+}
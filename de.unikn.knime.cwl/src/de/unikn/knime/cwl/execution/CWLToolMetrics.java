@@ -0,0 +1,201 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import de.unikn.knime.cwl.execution.CWLExecutionMetrics.Phase;
+
+/**
+ * Aggregated metrics of all executions of a tool.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLToolMetrics {
+    
+    private static final long HOUR_MILLIS = 3600000L;
+    private static final long TERABYTE = 1L << 40;
+    
+    private final String m_toolId;
+    private final Map<Phase, CWLHistogram> m_phases = new EnumMap<>(Phase.class);
+    private final CWLHistogram m_peakRss;
+    private final CWLHistogram m_cpu;
+    private final CWLHistogram m_outputBytes;
+    private final Map<Integer, Long> m_exitCodes = new TreeMap<>();
+    private long m_executions;
+    private long m_failures;
+    
+    /**
+     * Creates empty metrics for a tool.
+     * @param toolId the ID of the tool
+     */
+    CWLToolMetrics(final String toolId) {
+        m_toolId = toolId;
+        for (Phase p : Phase.values()) {
+            m_phases.put(p, new CWLHistogram(p.getKey(), "ms", HOUR_MILLIS));
+        }
+        m_peakRss = new CWLHistogram("peak_rss", "bytes", TERABYTE);
+        m_cpu = new CWLHistogram("cpu", "ms", HOUR_MILLIS);
+        m_outputBytes = new CWLHistogram("output_size", "bytes", TERABYTE);
+    }
+    
+    private CWLToolMetrics(final CWLToolMetrics m) {
+        m_toolId = m.m_toolId;
+        for (Entry<Phase, CWLHistogram> e : m.m_phases.entrySet()) {
+            m_phases.put(e.getKey(), e.getValue().copy());
+        }
+        m_peakRss = m.m_peakRss.copy();
+        m_cpu = m.m_cpu.copy();
+        m_outputBytes = m.m_outputBytes.copy();
+        m_exitCodes.putAll(m.m_exitCodes);
+        m_executions = m.m_executions;
+        m_failures = m.m_failures;
+    }
+    
+    /**
+     * Adds the metrics of an execution.
+     * @param metrics the metrics of the execution
+     */
+    synchronized void record(final CWLExecutionMetrics metrics) {
+        m_executions++;
+        if (metrics.getExitCode() != 0) {
+            m_failures++;
+        }
+        m_exitCodes.merge(metrics.getExitCode(), 1L, Long::sum);
+        for (Entry<Phase, Long> e : metrics.getPhaseNanos().entrySet()) {
+            m_phases.get(e.getKey()).record(e.getValue() / 1000000);
+        }
+        if (metrics.getPeakRssBytes() >= 0) {
+            m_peakRss.record(metrics.getPeakRssBytes());
+        }
+        if (metrics.getCpuMillis() >= 0) {
+            m_cpu.record(metrics.getCpuMillis());
+        }
+        if (metrics.getOutputBytes() >= 0) {
+            m_outputBytes.record(metrics.getOutputBytes());
+        }
+    }
+    
+    /**
+     * Adds the time of a single phase that is measured outside of the execution.
+     * @param phase the phase
+     * @param nanos the time in nanoseconds
+     */
+    void recordPhase(final Phase phase, final long nanos) {
+        m_phases.get(phase).record(nanos / 1000000);
+    }
+    
+    /**
+     * @return a copy of these metrics
+     */
+    synchronized CWLToolMetrics copy() {
+        return new CWLToolMetrics(this);
+    }
+    
+    /**
+     * @return the ID of the tool in the registry
+     */
+    public String getToolId() {
+        return m_toolId;
+    }
+    
+    /**
+     * @return the number of executions
+     */
+    public synchronized long getExecutionCount() {
+        return m_executions;
+    }
+    
+    /**
+     * @return the number of executions with a non-zero exit code
+     */
+    public synchronized long getFailureCount() {
+        return m_failures;
+    }
+    
+    /**
+     * @return the number of executions per exit code, -1 for executions that did not start a process
+     */
+    public Map<Integer, Long> getExitCodes() {
+        return new TreeMap<>(m_exitCodes);
+    }
+    
+    /**
+     * @return the time spent in each phase in milliseconds
+     */
+    public List<CWLHistogram> getPhases() {
+        return new ArrayList<>(m_phases.values());
+    }
+    
+    /**
+     * @return the peak resident memory of the process trees in bytes
+     */
+    public CWLHistogram getPeakRss() {
+        return m_peakRss;
+    }
+    
+    /**
+     * @return the CPU time of the process trees in milliseconds
+     */
+    public CWLHistogram getCpu() {
+        return m_cpu;
+    }
+    
+    /**
+     * @return the size of the output files in bytes
+     */
+    public CWLHistogram getOutputSize() {
+        return m_outputBytes;
+    }
+}
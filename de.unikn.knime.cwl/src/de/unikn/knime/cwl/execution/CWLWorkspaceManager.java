@@ -0,0 +1,416 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.knime.core.node.NodeLogger;
+
+import de.unikn.knime.cwl.preferences.Preferences;
+
+/**
+ * Manages the directories CWL executions run in. Workspaces are created below the scratch directory
+ * configured in the preferences and are in use while a node references them. Nodes delete their workspaces
+ * when they are reset. Workspaces that are not in use anymore are deleted from least to most recently used
+ * when the scratch directory exceeds its quota. Workspaces left behind by earlier sessions are deleted at
+ * start-up unless a saved workflow references them.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class CWLWorkspaceManager {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CWLWorkspaceManager.class);
+    
+    /** Directory in the scratch directory containing the lock files of the running sessions. */
+    private static final String SESSIONS_DIR = ".sessions";
+    
+    /** Marker file of workspaces referenced by saved workflows, which outlive the session. */
+    private static final String KEEP_MARKER = ".keep";
+    
+    private static final String LOCK_SUFFIX = ".lock";
+    
+    /** Prefix of workspaces that are being deleted, which are not listed as workspaces anymore. */
+    private static final String DELETED_PREFIX = ".deleted_";
+    
+    // Sizing the scratch directory takes long, so the quota is enforced in the background
+    private static final ExecutorService QUOTA_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "cwl-workspace-quota");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    private final String m_sessionId = UUID.randomUUID().toString();
+    
+    private final AtomicLong m_counter = new AtomicLong();
+    
+    private final AtomicBoolean m_quotaCheckPending = new AtomicBoolean();
+    
+    /** Workspaces in use and the number of their users. */
+    private final Map<Path, Integer> m_inUse = new HashMap<>();
+    
+    /** Lock held for the lifetime of the session, telling other sessions that its workspaces are in use. */
+    private FileLock m_sessionLock;
+    
+    private CWLWorkspaceManager() { }
+    
+    // Private class that will only be initialized on first access by getInstance().
+    // Implicitely synchronized by class loader.
+    private static final class InstanceHolder {
+      static final CWLWorkspaceManager INSTANCE = new CWLWorkspaceManager();
+    }
+    
+    /**
+     * @return the singleton instance of the workspace manager
+     */
+    public static CWLWorkspaceManager getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+    
+    /**
+     * Creates a new workspace, which is in use until it is released or deleted.
+     * @return the directory of the workspace
+     * @throws IOException when the directory cannot be created
+     */
+    public synchronized Path createWorkspace() throws IOException {
+        Path root = Preferences.getScratchDir().toPath().toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        lockSession(root);
+        Path ws = root.resolve(m_sessionId + "_" + m_counter.incrementAndGet());
+        Files.createDirectory(ws);
+        m_inUse.put(ws, 1);
+        if (Preferences.getScratchQuota() > 0 && m_quotaCheckPending.compareAndSet(false, true)) {
+            QUOTA_EXECUTOR.execute(() -> {
+                m_quotaCheckPending.set(false);
+                enforceQuota(root);
+            });
+        }
+        return ws;
+    }
+    
+    /**
+     * Marks an existing workspace as in use, e.g. when a saved node referencing it is loaded.
+     * @param workspace the directory of the workspace
+     */
+    public synchronized void adopt(final Path workspace) {
+        Path ws = normalize(workspace);
+        if (Files.isDirectory(ws)) {
+            m_inUse.merge(ws, 1, Integer::sum);
+        }
+    }
+    
+    /**
+     * Marks a workspace as not in use by one of its users anymore. Workspaces that are not in use
+     * are kept until the quota of the scratch directory is exceeded or the session ends.
+     * @param workspace the directory of the workspace, may be null
+     */
+    public synchronized void release(final Path workspace) {
+        if (workspace == null) {
+            return;
+        }
+        Path ws = normalize(workspace);
+        Integer users = m_inUse.get(ws);
+        if (users != null && users > 1) {
+            m_inUse.put(ws, users - 1);
+        } else {
+            m_inUse.remove(ws);
+            touch(ws);
+        }
+    }
+    
+    /**
+     * Deletes a workspace, e.g. when the node it belongs to is reset.
+     * @param workspace the directory of the workspace, may be null
+     */
+    public void delete(final Path workspace) {
+        if (workspace == null) {
+            return;
+        }
+        Path ws = normalize(workspace);
+        synchronized (this) {
+            m_inUse.remove(ws);
+        }
+        deleteDirectory(ws);
+    }
+    
+    /**
+     * Marks a workspace as referenced by a saved workflow, so that it is not deleted when the session ends.
+     * @param workspace the directory of the workspace
+     * @throws IOException when the marker cannot be written
+     */
+    public void keep(final Path workspace) throws IOException {
+        Path marker = normalize(workspace).resolve(KEEP_MARKER);
+        if (Files.isDirectory(marker.getParent()) && !Files.exists(marker)) {
+            Files.createFile(marker);
+        }
+    }
+    
+    /**
+     * Deletes the workspaces of sessions that are not running anymore, unless they are referenced
+     * by saved workflows.
+     */
+    public synchronized void collectOrphans() {
+        Path root = Preferences.getScratchDir().toPath().toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try {
+            lockSession(root);
+        } catch (IOException e) {
+            LOGGER.warn("Could not lock the CWL scratch directory " + root, e);
+            return;
+        }
+        Map<String, Boolean> alive = new HashMap<>();
+        int deleted = 0;
+        for (Path ws : listDeleted(root)) {
+            // Deletion was interrupted
+            deleteDirectory(ws);
+        }
+        for (Path ws : listWorkspaces(root)) {
+            String session = getSession(ws);
+            if (m_inUse.containsKey(ws) || Files.exists(ws.resolve(KEEP_MARKER))
+                    || alive.computeIfAbsent(session, s -> isSessionAlive(root, s))) {
+                continue;
+            }
+            deleteDirectory(ws);
+            deleted++;
+        }
+        if (deleted > 0) {
+            LOGGER.info(String.format("Deleted %d CWL workspaces left behind by earlier sessions", deleted));
+        }
+    }
+    
+    /**
+     * Deletes workspaces that are not in use, least recently used first, until the scratch directory
+     * is within its quota. Workspaces referenced by saved workflows and workspaces of other running sessions
+     * are never deleted. The scratch directory is sized without holding the lock of the manager.
+     */
+    private void enforceQuota(final Path root) {
+        long quota = Preferences.getScratchQuota();
+        if (quota <= 0) {
+            return;
+        }
+        List<Path> candidates = new ArrayList<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        Map<String, Boolean> alive = new HashMap<>();
+        long total = 0;
+        for (Path ws : listWorkspaces(root)) {
+            long size = sizeOf(ws);
+            sizes.put(ws, size);
+            total += size;
+            String session = getSession(ws);
+            if (!Files.exists(ws.resolve(KEEP_MARKER)) && (m_sessionId.equals(session)
+                    || !alive.computeIfAbsent(session, s -> isSessionAlive(root, s)))) {
+                candidates.add(ws);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(CWLWorkspaceManager::lastUsed));
+        for (Path ws : candidates) {
+            if (total <= quota) {
+                break;
+            }
+            Path deleted = root.resolve(DELETED_PREFIX + UUID.randomUUID());
+            synchronized (this) {
+                if (m_inUse.containsKey(ws)) {
+                    continue;
+                }
+                // Moved away first, so that the workspace cannot be adopted while it is deleted
+                try {
+                    Files.move(ws, deleted, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    LOGGER.debug("Could not delete CWL workspace " + ws, e);
+                    continue;
+                }
+            }
+            deleteDirectory(deleted);
+            total -= sizes.get(ws);
+        }
+        if (total > quota) {
+            LOGGER.warn(String.format("The CWL scratch directory %s uses %d MB, which exceeds its quota of %d MB, "
+                    + "but all workspaces are in use", root, total >> 20, quota >> 20));
+        }
+    }
+    
+    private void lockSession(final Path root) throws IOException {
+        if (m_sessionLock != null) {
+            return;
+        }
+        Path sessions = root.resolve(SESSIONS_DIR);
+        Files.createDirectories(sessions);
+        FileChannel channel = FileChannel.open(sessions.resolve(m_sessionId + LOCK_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // Released by the operating system when the process ends, however it ends
+        m_sessionLock = channel.lock();
+    }
+    
+    /**
+     * A session is alive as long as another process holds the lock on its lock file.
+     */
+    private static boolean isSessionAlive(final Path root, final String session) {
+        Path lockFile = root.resolve(SESSIONS_DIR).resolve(session + LOCK_SUFFIX);
+        if (!Files.exists(lockFile)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            // Better keep the workspaces of a session that cannot be checked
+            return true;
+        }
+        try {
+            Files.deleteIfExists(lockFile);
+        } catch (IOException e) {
+            LOGGER.debug("Could not delete stale session lock " + lockFile, e);
+        }
+        return false;
+    }
+    
+    /**
+     * @return the ID of the session that created a workspace
+     */
+    private static String getSession(final Path ws) {
+        String name = ws.getFileName().toString();
+        int sep = name.lastIndexOf('_');
+        return sep < 0 ? name : name.substring(0, sep);
+    }
+    
+    private static List<Path> listWorkspaces(final Path root) {
+        return list(root, p -> Files.isDirectory(p) && !p.getFileName().toString().equals(SESSIONS_DIR)
+                && !p.getFileName().toString().startsWith(DELETED_PREFIX));
+    }
+    
+    private static List<Path> listDeleted(final Path root) {
+        return list(root, p -> p.getFileName().toString().startsWith(DELETED_PREFIX));
+    }
+    
+    private static List<Path> list(final Path root, final DirectoryStream.Filter<Path> filter) {
+        List<Path> workspaces = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(root, filter)) {
+            for (Path p : ds) {
+                workspaces.add(p);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not list the CWL scratch directory " + root, e);
+        }
+        return workspaces;
+    }
+    
+    private static long sizeOf(final Path dir) {
+        long[] size = new long[1];
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    size[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+                
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.debug("Could not determine the size of " + dir, e);
+        }
+        return size[0];
+    }
+    
+    private static long lastUsed(final Path dir) {
+        return dir.toFile().lastModified();
+    }
+    
+    private static void touch(final Path dir) {
+        try {
+            Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only affects the order of the LRU cleanup
+        }
+    }
+    
+    private static void deleteDirectory(final Path dir) {
+        try {
+            FileUtils.deleteDirectory(dir.toFile());
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete CWL workspace " + dir, e);
+        }
+    }
+    
+    private static Path normalize(final Path workspace) {
+        return workspace.toAbsolutePath().normalize();
+    }
+}
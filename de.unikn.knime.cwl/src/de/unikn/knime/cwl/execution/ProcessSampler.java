@@ -0,0 +1,253 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically samples the memory and CPU time of processes and all their descendants from {@code /proc}.
+ * All sampled processes share a single scan of {@code /proc} per interval. On systems without {@code /proc}
+ * nothing is sampled. Executions on pooled cwl-runner workers are not sampled either, as the worker process is
+ * shared by all jobs it executes.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class ProcessSampler {
+    
+    private static final long SAMPLE_INTERVAL_MILLIS = 500;
+    
+    // Keys of the auxiliary vector, see getauxval(3)
+    private static final long AT_PAGESZ = 6;
+    private static final long AT_CLKTCK = 17;
+    
+    private static final File PROC = new File("/proc");
+    
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cwl-process-sampler");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    // The metrics of the sampled processes by their ID
+    private static final Map<Long, CWLExecutionMetrics> ROOTS = new ConcurrentHashMap<>();
+    
+    private static ScheduledFuture<?> future;
+    
+    private final Long m_pid;
+    
+    private ProcessSampler(final Long pid) {
+        m_pid = pid;
+    }
+    
+    /**
+     * Starts sampling a process.
+     * @param process the process
+     * @param metrics the metrics receiving the samples
+     * @return the sampler, which has to be stopped when the process has finished
+     */
+    static ProcessSampler start(final Process process, final CWLExecutionMetrics metrics) {
+        Long pid = ProcessTreeKiller.getPid(process);
+        if (pid == null || !new File(PROC, "self/stat").isFile()) {
+            return new ProcessSampler(null);
+        }
+        synchronized (ProcessSampler.class) {
+            ROOTS.put(pid, metrics);
+            if (future == null) {
+                future = SAMPLER.scheduleAtFixedRate(ProcessSampler::sample, 0, SAMPLE_INTERVAL_MILLIS,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+        return new ProcessSampler(pid);
+    }
+    
+    /**
+     * Stops sampling.
+     */
+    void stop() {
+        if (m_pid == null) {
+            return;
+        }
+        synchronized (ProcessSampler.class) {
+            ROOTS.remove(m_pid);
+            if (ROOTS.isEmpty() && future != null) {
+                future.cancel(false);
+                future = null;
+            }
+        }
+    }
+    
+    private static void sample() {
+        if (ROOTS.isEmpty()) {
+            return;
+        }
+        Map<Long, long[]> stats = new HashMap<>();
+        Map<Long, List<Long>> children = new HashMap<>();
+        File[] procs = PROC.listFiles((dir, name) -> !name.isEmpty() && name.chars().allMatch(Character::isDigit));
+        if (procs == null) {
+            return;
+        }
+        for (File p : procs) {
+            long[] stat = readStat(new File(p, "stat"));
+            if (stat != null) {
+                long pid = Long.parseLong(p.getName());
+                stats.put(pid, stat);
+                children.computeIfAbsent(stat[0], k -> new ArrayList<>()).add(pid);
+            }
+        }
+        for (Entry<Long, CWLExecutionMetrics> root : ROOTS.entrySet()) {
+            sample(root.getKey(), root.getValue(), stats, children);
+        }
+    }
+    
+    private static void sample(final long root, final CWLExecutionMetrics metrics, final Map<Long, long[]> stats,
+            final Map<Long, List<Long>> children) {
+        if (!stats.containsKey(root)) {
+            // The process has exited already
+            return;
+        }
+        long rssPages = 0;
+        long cpuTicks = 0;
+        Set<Long> seen = new HashSet<>();
+        Deque<Long> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Long pid = queue.poll();
+            long[] stat = stats.get(pid);
+            if (stat == null || !seen.add(pid)) {
+                continue;
+            }
+            rssPages += stat[2];
+            // Includes the time of children that have exited already
+            cpuTicks += stat[1];
+            queue.addAll(children.getOrDefault(pid, new ArrayList<>()));
+        }
+        metrics.sampleResources(rssPages * Units.PAGE_SIZE, cpuTicks * 1000 / Units.CLOCK_TICKS);
+    }
+    /**
+     * Reads the parent ID, CPU ticks of the process and its reaped children and the RSS in pages.
+     * @return the values in this order or null if the file cannot be read
+     */
+    private static long[] readStat(final File stat) {
+        try {
+            String s = new String(Files.readAllBytes(stat.toPath()), StandardCharsets.UTF_8);
+            // The command name may contain spaces and parentheses
+            String[] f = s.substring(s.lastIndexOf(')') + 2).trim().split(" ");
+            // Fields 4 (ppid), 14 - 17 (utime, stime, cutime, cstime) and 24 (rss) of proc(5)
+            long cpu = Long.parseLong(f[11]) + Long.parseLong(f[12]) + Long.parseLong(f[13]) + Long.parseLong(f[14]);
+            return new long[] {Long.parseLong(f[1]), cpu, Long.parseLong(f[21])};
+        } catch (IOException | RuntimeException e) {
+            // The process has exited in the meantime
+            return null;
+        }
+    }
+    
+    /**
+     * The units of the values in {@code /proc/[pid]/stat}, read once from the auxiliary vector of the JVM.
+     */
+    private static final class Units {
+        
+        /** Size of a memory page, the unit of the RSS. */
+        static final long PAGE_SIZE;
+        
+        /** Clock ticks per second, the unit of the CPU times. */
+        static final long CLOCK_TICKS;
+        
+        static {
+            Map<Long, Long> auxv = readAuxv();
+            PAGE_SIZE = auxv.getOrDefault(AT_PAGESZ, 4096L);
+            CLOCK_TICKS = auxv.getOrDefault(AT_CLKTCK, 100L);
+        }
+        
+        private Units() { }
+        
+        /**
+         * Reads the pairs of keys and values of the auxiliary vector, assuming a 64 bit JVM.
+         * @return the values by their key, empty if the vector cannot be read
+         */
+        private static Map<Long, Long> readAuxv() {
+            Map<Long, Long> values = new HashMap<>();
+            try {
+                ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(new File(PROC, "self/auxv").toPath()))
+                        .order(ByteOrder.nativeOrder());
+                while (b.remaining() >= 2 * Long.BYTES) {
+                    long key = b.getLong();
+                    long value = b.getLong();
+                    if (key == 0) {
+                        break;
+                    }
+                    if (value > 0) {
+                        values.put(key, value);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Not Linux, the defaults of most systems are used
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Terminates a process together with all of its descendants. On Unix-like systems the process tree is
+ * first asked to terminate with SIGTERM, giving the cwl-runner a chance to stop the containers it started,
+ * and everything still alive after a grace period is killed with SIGKILL.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+final class ProcessTreeKiller {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(ProcessTreeKiller.class);
+    
+    /** Maximum number of times the process tree is collected while processes keep appearing. */
+    private static final int MAX_COLLECT_ROUNDS = 10;
+    
+    private ProcessTreeKiller() { }
+    
+    /**
+     * Terminates the process and all of its descendants.
+     * @param process the root of the process tree
+     * @param graceMillis time the processes get to terminate before they are killed
+     */
+    static void destroyTree(final Process process, final long graceMillis) {
+        Long pid = getPid(process);
+        if (pid == null) {
+            LOGGER.debug("Cannot determine process ID, only the runner itself is terminated");
+            process.destroyForcibly();
+            return;
+        }
+        try {
+            if (SystemUtils.IS_OS_WINDOWS) {
+                run("taskkill", "/T", "/F", "/PID", pid.toString());
+            } else {
+                Set<Long> tree = new LinkedHashSet<>();
+                // Processes started in response to SIGTERM, e.g. to stop containers, must not be terminated
+                signalTree("TERM", pid, tree, 1);
+                process.waitFor(graceMillis, TimeUnit.MILLISECONDS);
+                Set<Long> killed = signalTree("KILL", pid, tree, MAX_COLLECT_ROUNDS);
+                if (!killed.isEmpty()) {
+                    LOGGER.debug("Killed processes that did not terminate: " + killed);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not terminate the processes started by the cwl-runner", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        process.destroyForcibly();
+    }
+    
+    /**
+     * Sends a signal to the living processes of a tree and to the process groups led by them. Processes may
+     * start children while they are signalled, so the tree is collected again until no new processes appear.
+     * @param signal the signal
+     * @param root the root of the tree
+     * @param tree the processes known to belong to the tree, as descendants are re-parented once their parent
+     *            dies; new processes are added
+     * @param rounds the maximum number of times the tree is collected
+     * @return the processes that were signalled
+     */
+    private static Set<Long> signalTree(final String signal, final long root, final Set<Long> tree,
+            final int rounds) throws IOException, InterruptedException {
+        Set<Long> signalled = new LinkedHashSet<>();
+        for (int i = 0; i < rounds; i++) {
+            Set<Long> groups = new LinkedHashSet<>();
+            Set<Long> alive = collectTree(root, tree, groups);
+            alive.removeAll(signalled);
+            if (alive.isEmpty()) {
+                break;
+            }
+            tree.addAll(alive);
+            signalled.addAll(alive);
+            signal(signal, alive, groups);
+        }
+        return signalled;
+    }
+    
+    /**
+     * Takes a snapshot of the running processes.
+     * @param root the root of the tree
+     * @param known processes known to belong to the tree
+     * @param groups receives the IDs of the process groups led by a process of the tree
+     * @return the living processes of the tree: the root, the known processes, the members of their process
+     *         groups and all of their descendants
+     */
+    private static Set<Long> collectTree(final long root, final Set<Long> known, final Set<Long> groups)
+            throws IOException, InterruptedException {
+        Map<Long, List<Long>> children = new HashMap<>();
+        Map<Long, List<Long>> members = new HashMap<>();
+        Process ps = new ProcessBuilder("ps", "-e", "-o", "pid=", "-o", "ppid=", "-o", "pgid=")
+                .redirectErrorStream(true).start();
+        try (BufferedReader r = new BufferedReader(
+                new InputStreamReader(ps.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length == 3) {
+                    try {
+                        Long pid = Long.valueOf(parts[0]);
+                        children.computeIfAbsent(Long.valueOf(parts[1]), k -> new ArrayList<>()).add(pid);
+                        members.computeIfAbsent(Long.valueOf(parts[2]), k -> new ArrayList<>()).add(pid);
+                    } catch (NumberFormatException e) {
+                        // Not a process line
+                    }
+                }
+            }
+        }
+        ps.waitFor();
+        Set<Long> running = new HashSet<>();
+        children.values().forEach(running::addAll);
+        Set<Long> tree = new LinkedHashSet<>();
+        Deque<Long> queue = new ArrayDeque<>();
+        queue.add(root);
+        queue.addAll(known);
+        while (!queue.isEmpty()) {
+            Long p = queue.poll();
+            if (running.contains(p) && tree.add(p)) {
+                queue.addAll(children.getOrDefault(p, Collections.emptyList()));
+                List<Long> group = members.get(p);
+                if (group != null) {
+                    groups.add(p);
+                    queue.addAll(group);
+                }
+            }
+        }
+        return tree;
+    }
+    
+    private static void signal(final String signal, final Iterable<Long> pids, final Iterable<Long> groups)
+            throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add("kill");
+        cmd.add("-" + signal);
+        cmd.add("--");
+        for (Long p : pids) {
+            cmd.add(p.toString());
+        }
+        // Negative IDs address process groups, which includes processes started while the tree was collected
+        for (Long g : groups) {
+            cmd.add("-" + g);
+        }
+        run(cmd.toArray(new String[cmd.size()]));
+    }
+    
+    private static int run(final String... cmd) throws IOException, InterruptedException {
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        // Output is not needed, but must not block the process
+        p.getInputStream().close();
+        return p.waitFor();
+    }
+    
+    /**
+     * Retrieves the operating system ID of a process. Uses {@code Process.pid()} where available
+     * and falls back to the internal field of the Unix process implementation of Java 8.
+     * @return the process ID or null if it cannot be determined
+     */
+    static Long getPid(final Process process) {
+        try {
+            Method pidMethod = Process.class.getMethod("pid");
+            return (Long)pidMethod.invoke(process);
+        } catch (ReflectiveOperationException e) {
+            // Java 8
+        }
+        try {
+            Field f = process.getClass().getDeclaredField("pid");
+            f.setAccessible(true);
+            return (long)f.getInt(process);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME AG, Zurich, Switzerland
+ *  Website: http://www.knime.com; Email: contact@knime.com
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME AG herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   1 Aug 2019 : created
+ */
+package de.unikn.knime.cwl.execution;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParsingException;
+
+/**
+ * Builds JSON values from the events of a {@link JsonParser}. In contrast to a {@code JsonReader},
+ * the parser is not required to end after the value, so a value can be read from a stream
+ * that continues afterwards.
+ * @author Martin Horn, Alexander Fillbrunn: University of Konstanz
+ *
+ */
+public final class StreamingJsonReader {
+    
+    private StreamingJsonReader() { }
+    
+    /**
+     * Reads the value that starts with the given event.
+     * @param parser the parser
+     * @param event the event the parser has just returned
+     * @return the value
+     * @throws JsonParsingException when the event does not start a value
+     */
+    public static JsonValue readValue(final JsonParser parser, final Event event) {
+        switch (event) {
+            case START_OBJECT:
+                return readObject(parser);
+            case START_ARRAY:
+                return readArray(parser);
+            case VALUE_STRING:
+            case VALUE_NUMBER:
+                // Scalars can only be created via a builder in JSON-P 1.0
+                return addValue(Json.createArrayBuilder(), parser, event).build().get(0);
+            case VALUE_TRUE:
+                return JsonValue.TRUE;
+            case VALUE_FALSE:
+                return JsonValue.FALSE;
+            case VALUE_NULL:
+                return JsonValue.NULL;
+            default:
+                throw new JsonParsingException("Unexpected JSON event " + event, parser.getLocation());
+        }
+    }
+    
+    /**
+     * Reads an object, the parser must have just returned {@link Event#START_OBJECT}.
+     * @param parser the parser
+     * @return the object
+     */
+    public static JsonObject readObject(final JsonParser parser) {
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String key = parser.getString();
+            event = parser.next();
+            switch (event) {
+                case VALUE_STRING:
+                    builder.add(key, parser.getString());
+                    break;
+                case VALUE_NUMBER:
+                    builder.add(key, parser.getBigDecimal());
+                    break;
+                default:
+                    builder.add(key, readValue(parser, event));
+                    break;
+            }
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Reads an array, the parser must have just returned {@link Event#START_ARRAY}.
+     * @param parser the parser
+     * @return the array
+     */
+    public static JsonArray readArray(final JsonParser parser) {
+        JsonArrayBuilder builder = Json.createArrayBuilder();
+        Event event;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            addValue(builder, parser, event);
+        }
+        return builder.build();
+    }
+    
+    private static JsonArrayBuilder addValue(final JsonArrayBuilder builder, final JsonParser parser,
+            final Event event) {
+        switch (event) {
+            case VALUE_STRING:
+                return builder.add(parser.getString());
+            case VALUE_NUMBER:
+                return builder.add(parser.getBigDecimal());
+            default:
+                return builder.add(readValue(parser, event));
+        }
+    }
+}
@@ -48,16 +48,22 @@
  */
 package de.unikn.knime.cwl.preferences;
 
+import org.eclipse.jface.preference.BooleanFieldEditor;
+import org.eclipse.jface.preference.ComboFieldEditor;
+import org.eclipse.jface.preference.DirectoryFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.FileFieldEditor;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.preference.PathEditor;
 import org.eclipse.jface.preference.StringFieldEditor;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
+import org.knime.workbench.ui.preferences.HorizontalLineField;
 import org.knime.workbench.ui.preferences.LabelField;
 
 import de.unikn.knime.cwl.Activator;
+import de.unikn.knime.cwl.execution.CWLResultCache;
 
 /**
  * Preference page for the CWL plugin.
@@ -71,6 +77,16 @@ public class CWLPreferencePage extends FieldEditorPreferencePage implements IWor
      */
     public CWLPreferencePage() {
         IPreferenceStore store = Activator.getDefault().getPreferenceStore();
+        store.setDefault(Preferences.CWL_EXECUTION_MODE, Preferences.EXECUTION_MODE_PROCESS);
+        store.setDefault(Preferences.CWL_WORKER_POOL_SIZE, Preferences.DEFAULT_WORKER_POOL_SIZE);
+        store.setDefault(Preferences.CWL_BATCH_ARGS, Preferences.DEFAULT_BATCH_ARGS);
+        store.setDefault(Preferences.CWL_PACK_COMMAND, Preferences.DEFAULT_PACK_COMMAND);
+        store.setDefault(Preferences.CWL_CACHE_MAX_SIZE, Preferences.DEFAULT_CACHE_MAX_SIZE);
+        store.setDefault(Preferences.CWL_MAX_CORES, Runtime.getRuntime().availableProcessors());
+        store.setDefault(Preferences.CWL_MAX_MEMORY, 0);
+        store.setDefault(Preferences.CWL_SCRATCH_QUOTA, 0);
+        store.setDefault(Preferences.CWL_SCAN_DEPTH, Preferences.DEFAULT_SCAN_DEPTH);
+        store.setDefault(Preferences.CWL_SCAN_INCLUDE, Preferences.DEFAULT_SCAN_INCLUDE);
         setPreferenceStore(store);
         setDescription("Preferences for CWL handling");
     }
@@ -86,10 +102,71 @@ public class CWLPreferencePage extends FieldEditorPreferencePage implements IWor
     protected void createFieldEditors() {
         addField(new PathEditor(Preferences.CWL_DIR_PATH, "CWL &Directories:",
                 "Choose a directory", getFieldEditorParent()));
+        IntegerFieldEditor scanDepth = new IntegerFieldEditor(Preferences.CWL_SCAN_DEPTH,
+                "Subfolder depth (0 for none):", getFieldEditorParent());
+        scanDepth.setValidRange(0, 100);
+        addField(scanDepth);
+        addField(new StringFieldEditor(Preferences.CWL_SCAN_INCLUDE,
+                "Files to include (glob patterns, separated by ;):", getFieldEditorParent()));
+        addField(new StringFieldEditor(Preferences.CWL_SCAN_EXCLUDE,
+                "Files and folders to exclude (glob patterns, separated by ;):", getFieldEditorParent()));
         addField(new FileFieldEditor(Preferences.CWL_RUNNER_PATH,
                 "Path to cwl-runner:", getFieldEditorParent()));
         addField(new StringFieldEditor(Preferences.CWL_EXTRA_ARGS,
                 "Additional arguments for cwl-runner", getFieldEditorParent()));
-        addField(new LabelField(getFieldEditorParent(), "Restart KNIME for the changes to take effect."));
+        addField(new StringFieldEditor(Preferences.CWL_BATCH_ARGS,
+                "Additional arguments for batch executions", getFieldEditorParent()));
+        addField(new ComboFieldEditor(Preferences.CWL_EXECUTION_MODE, "Execution mode:", new String[][] {
+            {"New cwl-runner process per execution", Preferences.EXECUTION_MODE_PROCESS},
+            {"Pool of warm cwl-runner workers", Preferences.EXECUTION_MODE_POOL}
+        }, getFieldEditorParent()));
+        addField(new StringFieldEditor(Preferences.CWL_WORKER_COMMAND,
+                "Worker command (empty for bundled worker):", getFieldEditorParent()));
+        IntegerFieldEditor poolSize = new IntegerFieldEditor(Preferences.CWL_WORKER_POOL_SIZE,
+                "Maximum number of workers:", getFieldEditorParent());
+        poolSize.setValidRange(1, 64);
+        addField(poolSize);
+        addField(new BooleanFieldEditor(Preferences.CWL_PACK_ENABLED,
+                "Pack tools once instead of resolving their references on every execution",
+                getFieldEditorParent()));
+        addField(new StringFieldEditor(Preferences.CWL_PACK_COMMAND,
+                "Pack command:", getFieldEditorParent()));
+        
+        addField(new HorizontalLineField(getFieldEditorParent()));
+        addField(new LabelField(getFieldEditorParent(), "Resources of concurrent executions"));
+        IntegerFieldEditor maxCores = new IntegerFieldEditor(Preferences.CWL_MAX_CORES,
+                "Maximum number of cores:", getFieldEditorParent());
+        maxCores.setValidRange(1, Integer.MAX_VALUE);
+        addField(maxCores);
+        IntegerFieldEditor maxMemory = new IntegerFieldEditor(Preferences.CWL_MAX_MEMORY,
+                "Maximum memory (MB, 0 for no limit):", getFieldEditorParent());
+        maxMemory.setValidRange(0, Integer.MAX_VALUE);
+        addField(maxMemory);
+        
+        addField(new HorizontalLineField(getFieldEditorParent()));
+        addField(new LabelField(getFieldEditorParent(), "Execution directories"));
+        addField(new DirectoryFieldEditor(Preferences.CWL_SCRATCH_DIR,
+                "Scratch directory (empty for default):", getFieldEditorParent()));
+        IntegerFieldEditor scratchQuota = new IntegerFieldEditor(Preferences.CWL_SCRATCH_QUOTA,
+                "Maximum size of scratch directory (MB, 0 for no limit):", getFieldEditorParent());
+        scratchQuota.setValidRange(0, Integer.MAX_VALUE);
+        addField(scratchQuota);
+        
+        addField(new HorizontalLineField(getFieldEditorParent()));
+        addField(new LabelField(getFieldEditorParent(), "Result cache"));
+        addField(new BooleanFieldEditor(Preferences.CWL_CACHE_ENABLED,
+                "Reuse results of identical executions", getFieldEditorParent()));
+        addField(new DirectoryFieldEditor(Preferences.CWL_CACHE_DIR,
+                "Cache directory (empty for default):", getFieldEditorParent()));
+        IntegerFieldEditor cacheSize = new IntegerFieldEditor(Preferences.CWL_CACHE_MAX_SIZE,
+                "Maximum cache size (MB):", getFieldEditorParent());
+        cacheSize.setValidRange(1, Integer.MAX_VALUE);
+        addField(cacheSize);
+        CWLResultCache cache = CWLResultCache.getInstance();
+        addField(new LabelField(getFieldEditorParent(), String.format("%d cache hits, %d cache misses since start-up.",
+                cache.getHitCount(), cache.getMissCount())));
+        addField(new HorizontalLineField(getFieldEditorParent()));
+        addField(new LabelField(getFieldEditorParent(), "Added and changed CWL files are picked up automatically, "
+                + "restart KNIME to show new tools in the node repository."));
     }
 }
@@ -49,6 +49,7 @@
 package de.unikn.knime.cwl.preferences;
 
 import java.io.File;
+import java.util.Arrays;
 
 import org.eclipse.core.runtime.Platform;
 
@@ -72,6 +73,85 @@ public final class Preferences {
     /** Config key for extra arguments to be passed to the cwl-runner. */
     public static final String CWL_EXTRA_ARGS = "CWL_EXTRA_ARGS";
     
+    /** Config key for the way CWL tools are executed. */
+    public static final String CWL_EXECUTION_MODE = "CWL_EXECUTION_MODE";
+    
+    /** Config key for the command starting a warm cwl-runner worker. */
+    public static final String CWL_WORKER_COMMAND = "CWL_WORKER_COMMAND";
+    
+    /** Config key for the maximum number of warm cwl-runner workers. */
+    public static final String CWL_WORKER_POOL_SIZE = "CWL_WORKER_POOL_SIZE";
+    
+    /** Config key for enabling the result cache. */
+    public static final String CWL_CACHE_ENABLED = "CWL_CACHE_ENABLED";
+    
+    /** Config key for the directory of the result cache. */
+    public static final String CWL_CACHE_DIR = "CWL_CACHE_DIR";
+    
+    /** Config key for the maximum size of the result cache in megabytes. */
+    public static final String CWL_CACHE_MAX_SIZE = "CWL_CACHE_MAX_SIZE";
+    
+    /** Config key for the arguments passed to the cwl-runner when executing a batch of input sets. */
+    public static final String CWL_BATCH_ARGS = "CWL_BATCH_ARGS";
+    
+    /** Default arguments passed to the cwl-runner when executing a batch of input sets. */
+    public static final String DEFAULT_BATCH_ARGS = "--parallel";
+    
+    /** Config key for the number of cores concurrent CWL executions may reserve. */
+    public static final String CWL_MAX_CORES = "CWL_MAX_CORES";
+    
+    /** Config key for the memory in megabytes concurrent CWL executions may reserve. */
+    public static final String CWL_MAX_MEMORY = "CWL_MAX_MEMORY";
+    
+    /** Config key for the directory CWL executions run in. */
+    public static final String CWL_SCRATCH_DIR = "CWL_SCRATCH_DIR";
+    
+    /** Config key for the maximum size of the scratch directory in megabytes. */
+    public static final String CWL_SCRATCH_QUOTA = "CWL_SCRATCH_QUOTA";
+    
+    /** Config key for the depth up to which subfolders of the CWL directories are scanned. */
+    public static final String CWL_SCAN_DEPTH = "CWL_SCAN_DEPTH";
+    
+    /** Config key for the glob patterns of the CWL files to register. */
+    public static final String CWL_SCAN_INCLUDE = "CWL_SCAN_INCLUDE";
+    
+    /** Config key for the glob patterns of the files and folders to skip when scanning the CWL directories. */
+    public static final String CWL_SCAN_EXCLUDE = "CWL_SCAN_EXCLUDE";
+    
+    /** Config key for enabling packing of tools before they are passed to the cwl-runner. */
+    public static final String CWL_PACK_ENABLED = "CWL_PACK_ENABLED";
+    
+    /** Config key for the command packing a tool into a single document. */
+    public static final String CWL_PACK_COMMAND = "CWL_PACK_COMMAND";
+    
+    /** Default command packing a tool into a single document, the tool path is appended. */
+    public static final String DEFAULT_PACK_COMMAND = "cwltool --pack";
+    
+    /** Default depth up to which subfolders of the CWL directories are scanned. */
+    public static final int DEFAULT_SCAN_DEPTH = 5;
+    
+    /** Default glob patterns of the CWL files to register. */
+    public static final String DEFAULT_SCAN_INCLUDE = "*.cwl";
+    
+    /** Separator of the glob patterns in the include and exclude preferences. */
+    public static final String PATTERN_SEPARATOR = ";";
+    
+    /** Execution mode spawning a new cwl-runner process for every execution. */
+    public static final String EXECUTION_MODE_PROCESS = "process";
+    
+    /** Execution mode sending jobs to a pool of warm cwl-runner workers. */
+    public static final String EXECUTION_MODE_POOL = "pool";
+    
+    /** Default maximum number of warm cwl-runner workers. */
+    public static final int DEFAULT_WORKER_POOL_SIZE = 2;
+    
+    /** Default maximum size of the result cache in megabytes. */
+    public static final int DEFAULT_CACHE_MAX_SIZE = 10240;
+    
+    private static final String DEFAULT_CACHE_DIR_NAME = "result-cache";
+    
+    private static final String DEFAULT_SCRATCH_DIR_NAME = "knime-cwl";
+    
     /**
      * Reads the currently configured CWL executable path from the preferences.
      * @return the configured path to the cwl-runner executable
@@ -90,6 +170,177 @@ public final class Preferences {
                 .getString(Activator.PLUGIN_ID, CWL_EXTRA_ARGS, "", null);
     }
     
+    /**
+     * Reads the arguments passed to the cwl-runner in addition to the extra arguments when a batch is executed.
+     * @return the arguments for batch executions
+     */
+    public static String getBatchArgs() {
+        return Platform.getPreferencesService()
+                .getString(Activator.PLUGIN_ID, CWL_BATCH_ARGS, DEFAULT_BATCH_ARGS, null);
+    }
+    
+    /**
+     * Reads the number of cores concurrent CWL executions may reserve from the preferences.
+     * @return the maximum number of cores, by default the number of available processors
+     */
+    public static int getMaxCores() {
+        return Math.max(1, Platform.getPreferencesService()
+                .getInt(Activator.PLUGIN_ID, CWL_MAX_CORES, Runtime.getRuntime().availableProcessors(), null));
+    }
+    
+    /**
+     * Reads the memory concurrent CWL executions may reserve from the preferences.
+     * @return the maximum memory in megabytes or 0 if memory is not limited
+     */
+    public static long getMaxMemory() {
+        return Math.max(0, Platform.getPreferencesService()
+                .getInt(Activator.PLUGIN_ID, CWL_MAX_MEMORY, 0, null));
+    }
+    
+    /**
+     * Reads the directory CWL executions run in from the preferences.
+     * @return the configured scratch directory or a directory in the system's temporary directory
+     *          if none is configured
+     */
+    public static File getScratchDir() {
+        String dir = Platform.getPreferencesService()
+                .getString(Activator.PLUGIN_ID, CWL_SCRATCH_DIR, "", null);
+        if (dir.trim().isEmpty()) {
+            return new File(System.getProperty("java.io.tmpdir"), DEFAULT_SCRATCH_DIR_NAME);
+        }
+        return new File(dir);
+    }
+    
+    /**
+     * Reads the maximum size of the scratch directory from the preferences.
+     * @return the maximum size of the scratch directory in bytes or 0 if its size is not limited
+     */
+    public static long getScratchQuota() {
+        return Math.max(0, Platform.getPreferencesService()
+                .getInt(Activator.PLUGIN_ID, CWL_SCRATCH_QUOTA, 0, null)) * 1024L * 1024L;
+    }
+    
+    /**
+     * Reads the currently configured execution mode from the preferences.
+     * @return either {@link #EXECUTION_MODE_PROCESS} or {@link #EXECUTION_MODE_POOL}
+     */
+    public static String getExecutionMode() {
+        return Platform.getPreferencesService()
+                .getString(Activator.PLUGIN_ID, CWL_EXECUTION_MODE, EXECUTION_MODE_PROCESS, null);
+    }
+    
+    /**
+     * Reads the command for starting a warm cwl-runner worker from the preferences.
+     * @return the configured worker command or an empty string if the bundled worker should be used
+     */
+    public static String getWorkerCommand() {
+        return Platform.getPreferencesService()
+                .getString(Activator.PLUGIN_ID, CWL_WORKER_COMMAND, "", null);
+    }
+    
+    /**
+     * Reads the maximum number of warm cwl-runner workers from the preferences.
+     * @return the maximum number of workers kept alive at the same time
+     */
+    public static int getWorkerPoolSize() {
+        return Math.max(1, Platform.getPreferencesService()
+                .getInt(Activator.PLUGIN_ID, CWL_WORKER_POOL_SIZE, DEFAULT_WORKER_POOL_SIZE, null));
+    }
+    
+    /**
+     * Reads from the preferences whether results of CWL executions are cached.
+     * @return true if the result cache is enabled
+     */
+    public static boolean isCacheEnabled() {
+        return Platform.getPreferencesService()
+                .getBoolean(Activator.PLUGIN_ID, CWL_CACHE_ENABLED, false, null);
+    }
+    
+    /**
+     * Reads the directory of the result cache from the preferences.
+     * @return the configured cache directory or a directory in the plugin's state location if none is configured
+     */
+    public static File getCacheDir() {
+        String dir = Platform.getPreferencesService()
+                .getString(Activator.PLUGIN_ID, CWL_CACHE_DIR, "", null);
+        if (dir.trim().isEmpty()) {
+            return new File(Activator.getDefault().getStateLocation().toFile(), DEFAULT_CACHE_DIR_NAME);
+        }
+        return new File(dir);
+    }
+    
+    /**
+     * Reads the maximum size of the result cache from the preferences.
+     * @return the maximum size of the result cache in bytes
+     */
+    public static long getCacheMaxSize() {
+        return Platform.getPreferencesService()
+                .getInt(Activator.PLUGIN_ID, CWL_CACHE_MAX_SIZE, DEFAULT_CACHE_MAX_SIZE, null) * 1024L * 1024L;
+    }
+    
+    /**
+     * Reads from the preferences whether tools are packed before they are passed to the cwl-runner.
+     * @return true if tools are executed from their packed version
+     */
+    public static boolean isPackEnabled() {
+        return Platform.getPreferencesService()
+                .getBoolean(Activator.PLUGIN_ID, CWL_PACK_ENABLED, false, null);
+    }
+    
+    /**
+     * Reads the command packing a tool into a single document from the preferences.
+     * @return the configured command, which gets the tool path as last argument and writes the packed tool to
+     *          its standard output
+     */
+    public static String getPackCommand() {
+        return Platform.getPreferencesService()
+                .getString(Activator.PLUGIN_ID, CWL_PACK_COMMAND, DEFAULT_PACK_COMMAND, null);
+    }
+    
+    /**
+     * Reads the depth up to which subfolders of the CWL directories are scanned from the preferences.
+     * @return the maximum depth, 0 if only the CWL directories themselves are scanned
+     */
+    public static int getScanDepth() {
+        return Math.max(0, Platform.getPreferencesService()
+                .getInt(Activator.PLUGIN_ID, CWL_SCAN_DEPTH, DEFAULT_SCAN_DEPTH, null));
+    }
+    
+    /**
+     * Reads the glob patterns of the CWL files to register from the preferences.
+     * @return the patterns, matched against the file name or, if they contain a slash, the path relative to
+     *          the CWL directory
+     */
+    public static String[] getScanIncludes() {
+        return splitPatterns(Platform.getPreferencesService()
+                .getString(Activator.PLUGIN_ID, CWL_SCAN_INCLUDE, DEFAULT_SCAN_INCLUDE, null));
+    }
+    
+    /**
+     * Reads the glob patterns of the files and folders to skip when scanning the CWL directories from the
+     * preferences.
+     * @return the patterns, matched like the include patterns
+     */
+    public static String[] getScanExcludes() {
+        return splitPatterns(Platform.getPreferencesService()
+                .getString(Activator.PLUGIN_ID, CWL_SCAN_EXCLUDE, "", null));
+    }
+    
+    /**
+     * Checks whether a preference determines which CWL files are registered.
+     * @param key the config key of the preference
+     * @return true if the CWL directories have to be scanned again when the preference changes
+     */
+    public static boolean isScanPreference(final String key) {
+        return CWL_DIR_PATH.equals(key) || CWL_SCAN_DEPTH.equals(key)
+                || CWL_SCAN_INCLUDE.equals(key) || CWL_SCAN_EXCLUDE.equals(key);
+    }
+    
+    private static String[] splitPatterns(final String patterns) {
+        return Arrays.stream(patterns.split(PATTERN_SEPARATOR))
+                .map(String::trim).filter(p -> !p.isEmpty()).toArray(String[]::new);
+    }
+    
     /**
      * Reads the currently configured CWL paths from the preferences.
      * @return an array of paths that are configured for reading CWL files from
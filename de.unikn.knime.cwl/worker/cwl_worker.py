@@ -0,0 +1,86 @@
+#!/usr/bin/env python3
+"""Warm cwl-runner worker for the KNIME CWL nodes.
+
+Keeps cwltool loaded in a single interpreter and executes the jobs it
+receives on standard input. Every request and every response is one line
+of JSON:
+
+    request:  {"tool": ..., "job": ..., "cwd": ..., "args": [...]}
+    response: {"exitCode": ..., "output": {...} | null}
+
+While a job runs, every line cwltool logs is sent as {"progress": ...}.
+The worker announces itself with {"ready": true} once cwltool is imported.
+"""
+import io
+import json
+import os
+import sys
+
+import cwltool.main
+
+
+class ProgressStream(io.TextIOBase):
+    """Log stream that forwards every complete line to the protocol channel.
+
+    Nothing is kept in memory apart from an incomplete last line.
+    """
+
+    def __init__(self, channel):
+        super().__init__()
+        self._channel = channel
+        self._pending = ""
+
+    def write(self, s):
+        self._pending += s
+        while "\n" in self._pending:
+            line, self._pending = self._pending.split("\n", 1)
+            send(self._channel, {"progress": line})
+        return len(s)
+
+    def flush_pending(self):
+        if self._pending:
+            send(self._channel, {"progress": self._pending})
+            self._pending = ""
+
+
+def send(channel, message):
+    channel.write(json.dumps(message) + "\n")
+    channel.flush()
+
+
+def run(request, channel):
+    stdout = io.StringIO()
+    stderr = ProgressStream(channel)
+    argsl = list(request.get("args", [])) + [request["tool"], request["job"]]
+    cwd = os.getcwd()
+    try:
+        os.chdir(request["cwd"])
+        exit_code = cwltool.main.main(argsl=argsl, stdout=stdout, stderr=stderr)
+    except SystemExit as e:
+        exit_code = e.code if isinstance(e.code, int) else 1
+    except Exception as e:  # pylint: disable=broad-except
+        stderr.write("%s\n" % e)
+        exit_code = 1
+    finally:
+        os.chdir(cwd)
+        stderr.flush_pending()
+    try:
+        output = json.loads(stdout.getvalue())
+    except ValueError:
+        output = None
+    return {"exitCode": exit_code, "output": output}
+
+
+def main():
+    # The protocol channel is the real stdout, everything else goes to stderr
+    channel = sys.stdout
+    sys.stdout = sys.stderr
+    send(channel, {"ready": True})
+    for line in sys.stdin:
+        if not line.strip():
+            continue
+        send(channel, run(json.loads(line), channel))
+
+
+if __name__ == "__main__":
+    main()
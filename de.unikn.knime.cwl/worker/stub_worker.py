@@ -0,0 +1,49 @@
+#!/usr/bin/env python3
+"""Stand-in for cwl_worker.py that does not need cwltool.
+
+Speaks the same line-based JSON protocol but does not run the tool: the
+job's inputs are echoed back as outputs. Configure it as worker command
+("python3 /path/to/stub_worker.py") to exercise the worker pool without
+a CWL runner installed.
+"""
+import json
+import sys
+
+
+def read_job(path):
+    with open(path) as f:
+        content = f.read()
+    # Batches write the job as a single JSON object
+    try:
+        job = json.loads(content)
+        if isinstance(job, dict):
+            return job
+    except ValueError:
+        pass
+    # The job file written by the KNIME nodes has one "key: <json>" pair per line
+    job = {}
+    for line in content.splitlines():
+        if ":" not in line:
+            continue
+        key, value = line.split(":", 1)
+        job[key.strip()] = json.loads(value)
+    return job
+
+
+def main():
+    sys.stdout.write(json.dumps({"ready": True}) + "\n")
+    sys.stdout.flush()
+    for line in sys.stdin:
+        if not line.strip():
+            continue
+        request = json.loads(line)
+        try:
+            response = {"exitCode": 0, "output": read_job(request["job"]), "log": ""}
+        except (IOError, ValueError) as e:
+            response = {"exitCode": 1, "output": None, "log": str(e)}
+        sys.stdout.write(json.dumps(response) + "\n")
+        sys.stdout.flush()
+
+
+if __name__ == "__main__":
+    main()